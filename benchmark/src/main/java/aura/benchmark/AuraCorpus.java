@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import aura.FormBodyCodec;
+
+/**
+ * Synthetic Aura traffic for the benchmarks.
+ *
+ * Messages look like what a Lightning or Experience Cloud page sends: boxcars of
+ * actions against the usual controllers, nested params with ids, record fields
+ * and the odd non-ASCII string, and responses whose returnValues are lists of
+ * records. Everything is generated from a fixed seed, so runs are comparable.
+ */
+public class AuraCorpus {
+	public static final long SEED = 0x5eed;
+
+	static final String[] DESCRIPTORS = {
+		"aura://ApexActionController/ACTION$execute",
+		"aura://RecordUiController/ACTION$getRecordWithFields",
+		"serviceComponent://ui.force.components.controllers.hostConfig.HostConfigController/ACTION$getConfigData",
+		"serviceComponent://ui.force.components.controllers.recordGlobalValueProvider.RecordGvpController/ACTION$getRecord",
+		"serviceComponent://ui.search.components.forcesearch.scopedresultsdatasource.ScopedResultsDataSourceController/ACTION$getLookupItems",
+		"serviceComponent://ui.communities.components.aura.components.forceCommunity.navigationMenu.NavigationMenuDataProviderController/ACTION$getNavigationMenu",
+		"apex://CommunityLoginController/ACTION$login",
+	};
+
+	private static final String[] WORDS = {
+		"Account", "Contact", "Opportunity", "Case", "Name", "Owner", "Status", "Amount",
+		"Région", "Größe", "São Paulo", "東京", "a&b=c", "50%", "x+y", "quote\"d", "line\nbreak",
+	};
+
+	private static final JsonFactory FACTORY = new JsonFactory();
+
+	private final Random random;
+
+	public AuraCorpus() {
+		this(SEED);
+	}
+
+	public AuraCorpus(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param actions number of actions in the boxcar
+	 * @param depth nesting depth of each action's params
+	 * @return the JSON of the message parameter
+	 */
+	public byte[] messageJson(int actions, int depth) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(actions * 256);
+		JsonGenerator gen = FACTORY.createGenerator(out);
+		gen.writeStartObject();
+		gen.writeArrayFieldStart("actions");
+		for (int i = 0; i < actions; i++) {
+			gen.writeStartObject();
+			gen.writeStringField("id", (100 + i) + ";a");
+			gen.writeStringField("descriptor", DESCRIPTORS[random.nextInt(DESCRIPTORS.length)]);
+			gen.writeStringField("callingDescriptor", "UNKNOWN");
+			gen.writeObjectFieldStart("params");
+			writeParams(gen, depth);
+			gen.writeEndObject();
+			if (random.nextBoolean()) {
+				gen.writeStringField("version", "58.0");
+			}
+			gen.writeEndObject();
+		}
+		gen.writeEndArray();
+		gen.writeEndObject();
+		gen.close();
+		return out.toByteArray();
+	}
+
+	private void writeParams(JsonGenerator gen, int depth) throws IOException {
+		gen.writeStringField("recordId", recordId());
+		gen.writeStringField("mode", WORDS[random.nextInt(WORDS.length)]);
+		gen.writeNumberField("pageSize", 25 + random.nextInt(75));
+		gen.writeBooleanField("includeLayout", random.nextBoolean());
+		gen.writeArrayFieldStart("fields");
+		int fields = 1 + random.nextInt(8);
+		for (int i = 0; i < fields; i++) {
+			gen.writeString(WORDS[random.nextInt(8)] + "." + WORDS[random.nextInt(WORDS.length)]);
+		}
+		gen.writeEndArray();
+		if (depth > 1) {
+			gen.writeObjectFieldStart("params");
+			writeParams(gen, depth - 1);
+			gen.writeEndObject();
+		}
+	}
+
+	/**
+	 * A complete HTTP request posting a message, the way the Aura framework sends
+	 * it: form encoded, with aura.context, aura.pageURI and aura.token.
+	 */
+	public byte[] formRequest(int actions, int depth) throws IOException {
+		byte[] message = FormBodyCodec.encode(messageJson(actions, depth));
+		byte[] context = FormBodyCodec.encode(contextJson());
+		StringBuilder body = new StringBuilder(message.length + context.length + 512);
+		body.append("message=").append(new String(message, StandardCharsets.US_ASCII));
+		body.append("&aura.context=").append(new String(context, StandardCharsets.US_ASCII));
+		body.append("&aura.pageURI=%2Fs%2Fdetail%2F").append(recordId());
+		body.append("&aura.token=").append("eyJub25jZSI6Ik").append(Long.toHexString(random.nextLong()));
+		byte[] bodyBytes = body.toString().getBytes(StandardCharsets.US_ASCII);
+
+		String headers = "POST /s/sfsites/aura?r=" + random.nextInt(100) + "&aura.RecordUi.getRecordWithFields=1 HTTP/1.1\r\n"
+				+ "Host: example.my.site.com\r\n"
+				+ "User-Agent: Mozilla/5.0\r\n"
+				+ "Accept: */*\r\n"
+				+ "Content-Type: application/x-www-form-urlencoded;charset=UTF-8\r\n"
+				+ "Content-Length: " + bodyBytes.length + "\r\n"
+				+ "Connection: close\r\n\r\n";
+		byte[] head = headers.getBytes(StandardCharsets.US_ASCII);
+		byte[] request = new byte[head.length + bodyBytes.length];
+		System.arraycopy(head, 0, request, 0, head.length);
+		System.arraycopy(bodyBytes, 0, request, head.length, bodyBytes.length);
+		return request;
+	}
+
+	public byte[] contextJson() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+		JsonGenerator gen = FACTORY.createGenerator(out);
+		gen.writeStartObject();
+		gen.writeStringField("mode", "PROD");
+		gen.writeStringField("fwuid", Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong()));
+		gen.writeStringField("app", "siteforce:communityApp");
+		gen.writeObjectFieldStart("loaded");
+		for (int i = 0; i < 6; i++) {
+			gen.writeStringField("COMPONENT@markup://forceCommunity:component" + i, Long.toHexString(random.nextLong()));
+		}
+		gen.writeEndObject();
+		gen.writeArrayFieldStart("dn");
+		gen.writeEndArray();
+		gen.writeStringField("globals", "{}");
+		gen.writeBooleanField("uad", false);
+		gen.writeEndObject();
+		gen.close();
+		return out.toByteArray();
+	}
+
+	/**
+	 * A response body of roughly targetBytes, including the while(1); guard, with
+	 * the record lists spread over the given number of actions.
+	 */
+	public byte[] responseBody(int targetBytes, int actions) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(targetBytes + 4096);
+		out.write("while(1);\n".getBytes(StandardCharsets.US_ASCII));
+		JsonGenerator gen = FACTORY.createGenerator(out);
+		gen.writeStartObject();
+		gen.writeArrayFieldStart("actions");
+		int perAction = Math.max(1, targetBytes / actions);
+		for (int i = 0; i < actions; i++) {
+			gen.writeStartObject();
+			gen.writeStringField("id", (100 + i) + ";a");
+			gen.writeStringField("state", "SUCCESS");
+			gen.writeObjectFieldStart("returnValue");
+			gen.writeNumberField("totalSize", random.nextInt(10000));
+			gen.writeArrayFieldStart("records");
+			gen.flush();
+			long stop = out.size() + perAction - 512L;
+			do {
+				writeRecord(gen);
+				gen.flush();
+			} while (out.size() < stop);
+			gen.writeEndArray();
+			gen.writeEndObject();
+			gen.writeArrayFieldStart("error");
+			gen.writeEndArray();
+			gen.writeEndObject();
+		}
+		gen.writeEndArray();
+		gen.writeObjectFieldStart("context");
+		gen.writeStringField("mode", "PROD");
+		gen.writeStringField("app", "siteforce:communityApp");
+		gen.writeEndObject();
+		gen.writeObjectFieldStart("perfSummary");
+		gen.writeNumberField("version", 2);
+		gen.writeEndObject();
+		gen.writeEndObject();
+		gen.close();
+		return out.toByteArray();
+	}
+
+	private void writeRecord(JsonGenerator gen) throws IOException {
+		gen.writeStartObject();
+		gen.writeStringField("Id", recordId());
+		gen.writeStringField("Name", WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(100000));
+		gen.writeNumberField("Amount", random.nextInt(1000000) / 100.0);
+		gen.writeBooleanField("IsClosed", random.nextBoolean());
+		gen.writeNullField("ParentId");
+		gen.writeObjectFieldStart("Owner");
+		gen.writeStringField("Id", recordId());
+		gen.writeStringField("Name", WORDS[random.nextInt(WORDS.length)]);
+		gen.writeEndObject();
+		gen.writeObjectFieldStart("attributes");
+		gen.writeStringField("type", WORDS[random.nextInt(4)]);
+		gen.writeEndObject();
+		gen.writeEndObject();
+	}
+
+	private String recordId() {
+		StringBuilder id = new StringBuilder("001");
+		String chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+		for (int i = 0; i < 15; i++) {
+			id.append(chars.charAt(random.nextInt(chars.length())));
+		}
+		return id.toString();
+	}
+}
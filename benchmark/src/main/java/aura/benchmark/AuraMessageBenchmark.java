@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import aura.ActionRequest;
+import aura.AuraMessage;
+import aura.FormBodyCodec;
+import aura.JsonCodec;
+
+/**
+ * Request side: decoding and parsing a boxcar, editing one action and writing
+ * the message back, and rendering the params of every action.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AuraMessageBenchmark {
+
+	@Param({ "1", "10", "100", "500", "1000" })
+	public int actions;
+
+	@Param({ "3" })
+	public int depth;
+
+	private byte[] request;
+	private byte[] json;
+	private String jsonString;
+	private AuraMessage parsed;
+	/** a copy of parsed with the params of its first action changed */
+	private AuraMessage edited;
+
+	@Setup
+	public void setup() throws IOException {
+		AuraCorpus corpus = new AuraCorpus();
+		this.request = corpus.formRequest(actions, depth);
+		FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+		this.json = FormBodyCodec.decode(request, params.getValueStart(FormBodyCodec.MESSAGE),
+				params.getValueEnd(FormBodyCodec.MESSAGE));
+		this.jsonString = new String(json, StandardCharsets.UTF_8);
+		this.parsed = new AuraMessage(json);
+		this.edited = parsed.copy();
+		editFirst(edited);
+		// fullWrite writes the tree directly, so it needs every action's params in it
+		for (ActionRequest action : edited.getActionList()) {
+			action.getParams();
+		}
+	}
+
+	private static void editFirst(AuraMessage message) {
+		ActionRequest first = message.actionMap.values().iterator().next();
+		ObjectNode params = first.getParams().deepCopy();
+		params.put("recordId", "001000000000000AAA");
+		first.updateParams(params);
+	}
+
+	@Benchmark
+	public AuraMessage parseBytes() throws IOException {
+		return new AuraMessage(json);
+	}
+
+	@Benchmark
+	public AuraMessage parseString() throws IOException {
+		return new AuraMessage(jsonString);
+	}
+
+	/**
+	 * What the Aura Actions tab does for a new request: find the message, decode it and parse it.
+	 */
+	@Benchmark
+	public AuraMessage decodeAndParse() throws IOException {
+		FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+		return new AuraMessage(FormBodyCodec.decode(request, params.getValueStart(FormBodyCodec.MESSAGE),
+				params.getValueEnd(FormBodyCodec.MESSAGE)));
+	}
+
+	@Benchmark
+	public AuraMessage copy() {
+		return parsed.copy();
+	}
+
+	/**
+	 * Copy the parsed message, change the params of its first action and write the
+	 * whole request back. Subtract {@link #copy()} for the edit itself.
+	 */
+	@Benchmark
+	public byte[] editOneAndReserialize() throws IOException {
+		AuraMessage message = parsed.copy();
+		editFirst(message);
+		byte[] updated = message.getAuraRequestBytes();
+		FormBodyCodec.AuraParams found = FormBodyCodec.scan(request);
+		return FormBodyCodec.replaceValue(request, found.getValueStart(FormBodyCodec.MESSAGE),
+				found.getValueEnd(FormBodyCodec.MESSAGE), updated);
+	}
+
+	/**
+	 * Write a message with one edited action, rewriting only that action and
+	 * copying the bytes of the others.
+	 */
+	@Benchmark
+	public byte[] incrementalWrite() throws IOException {
+		return edited.getAuraRequestBytes();
+	}
+
+	/**
+	 * Write the same edited message as {@link #incrementalWrite()} from its whole
+	 * tree, as getAuraRequest did for any edit.
+	 */
+	@Benchmark
+	public byte[] fullWrite() throws IOException {
+		return JsonCodec.COMPACT_WRITER.writeValueAsBytes(edited.auraMessage);
+	}
+
+	/**
+	 * Build the descriptor fields of every action, as the constructor does.
+	 */
+	@Benchmark
+	public void parseDescriptors(Blackhole bh) {
+		for (ActionRequest action : parsed.actionMap.values()) {
+			bh.consume(new ActionRequest(action.root, parsed));
+		}
+	}
+
+	/**
+	 * Pretty-print the params of every action, as the action tabs do.
+	 */
+	@Benchmark
+	public void renderParams(Blackhole bh) throws IOException {
+		for (ActionRequest action : parsed.actionMap.values()) {
+			bh.consume(action.getParamString());
+		}
+	}
+}
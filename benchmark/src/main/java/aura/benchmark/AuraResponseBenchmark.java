@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import aura.ActionResponse;
+import aura.AuraResponse;
+
+/**
+ * Response side, from 1 KB to 50 MB: the streaming parse the Aura Actions tab
+ * uses, the original whole-tree parse, and parsing plus rendering every
+ * returnValue as text.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+@State(Scope.Benchmark)
+public class AuraResponseBenchmark {
+
+	@Param({ "1", "64", "1024", "51200" })
+	public int sizeKb;
+
+	@Param({ "4" })
+	public int actions;
+
+	private byte[] body;
+	private String bodyString;
+
+	@Setup
+	public void setup() throws IOException {
+		this.body = new AuraCorpus().responseBody(sizeKb * 1024, actions);
+		this.bodyString = new String(body, StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public AuraResponse streamingParse() throws IOException {
+		return new AuraResponse(body, 0, body.length);
+	}
+
+	@Benchmark
+	public AuraResponse treeParse() throws IOException {
+		return new AuraResponse(bodyString);
+	}
+
+	@Benchmark
+	public void parseAndRender(Blackhole bh) throws IOException {
+		AuraResponse response = new AuraResponse(body, 0, body.length);
+		for (ActionResponse action : response.responseActionMap.values()) {
+			bh.consume(action.getResponseString());
+		}
+	}
+}
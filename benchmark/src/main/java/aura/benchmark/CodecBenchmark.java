@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import aura.FormBodyCodec;
+import aura.ui.Utils;
+
+/**
+ * Form encoding of the message parameter: the String based Utils helpers, the
+ * JDK URLEncoder/URLDecoder they used to wrap, and the byte level codec.
+ * Run with -prof gc to compare allocation per operation.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+
+	/** number of actions in the encoded message, about 0.5 KB each */
+	@Param({ "1", "100", "2000" })
+	public int actions;
+
+	private byte[] request;
+	private int valueStart;
+	private int valueEnd;
+	private byte[] json;
+	private String encoded;
+	private String decoded;
+
+	@Setup
+	public void setup() throws IOException {
+		AuraCorpus corpus = new AuraCorpus();
+		this.request = corpus.formRequest(actions, 2);
+		FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+		this.valueStart = params.getValueStart(FormBodyCodec.MESSAGE);
+		this.valueEnd = params.getValueEnd(FormBodyCodec.MESSAGE);
+		this.encoded = new String(request, valueStart, valueEnd - valueStart, StandardCharsets.US_ASCII);
+		this.json = FormBodyCodec.decode(request, valueStart, valueEnd);
+		this.decoded = new String(json, StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String utilsDecode() {
+		return Utils.urlDecode(encoded);
+	}
+
+	@Benchmark
+	public String utilsEncode() {
+		return Utils.urlEncode(decoded);
+	}
+
+	@Benchmark
+	public String jdkDecode() throws IOException {
+		return URLDecoder.decode(encoded, "UTF-8");
+	}
+
+	@Benchmark
+	public String jdkEncode() throws IOException {
+		return URLEncoder.encode(decoded, "UTF-8");
+	}
+
+	@Benchmark
+	public FormBodyCodec.AuraParams scan() {
+		return FormBodyCodec.scan(request);
+	}
+
+	@Benchmark
+	public byte[] bytesDecode() {
+		return FormBodyCodec.decode(request, valueStart, valueEnd);
+	}
+
+	@Benchmark
+	public byte[] bytesEncode() {
+		return FormBodyCodec.encode(json);
+	}
+
+	/**
+	 * Write the message back into the request, with Content-Length fixed up.
+	 */
+	@Benchmark
+	public byte[] replaceValue() {
+		return FormBodyCodec.replaceValue(request, valueStart, valueEnd, json);
+	}
+}
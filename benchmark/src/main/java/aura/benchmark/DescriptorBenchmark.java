@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import aura.Descriptor;
+
+/**
+ * Descriptor parsing over a proxy-history-sized stream of actions: 100k
+ * descriptors drawn from a few hundred distinct ones. Compares the cached
+ * {@link Descriptor} with the substring parsing ActionRequest used to do for
+ * every action. Run with -prof gc for the allocation difference.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DescriptorBenchmark {
+
+	@Param({ "300" })
+	public int distinct;
+
+	@Param({ "100000" })
+	public int actions;
+
+	private String[] history;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(AuraCorpus.SEED);
+		String[] descriptors = new String[distinct];
+		for (int i = 0; i < distinct; i++) {
+			String base = AuraCorpus.DESCRIPTORS[i % AuraCorpus.DESCRIPTORS.length];
+			descriptors[i] = base + i;
+		}
+		this.history = new String[actions];
+		for (int i = 0; i < actions; i++) {
+			// a fresh String per action, as each parsed message has its own
+			this.history[i] = new String(descriptors[random.nextInt(distinct)].toCharArray());
+		}
+	}
+
+	@Benchmark
+	public void cached(Blackhole bh) {
+		for (String descriptor : history) {
+			Descriptor parsed = Descriptor.of(descriptor);
+			bh.consume(parsed.controller);
+			bh.consume(parsed.shortController);
+			bh.consume(parsed.method);
+		}
+	}
+
+	@Benchmark
+	public void substrings(Blackhole bh) {
+		for (String descriptor : history) {
+			int controllerStart = descriptor.indexOf("//") + 2;
+			int methodIndex = descriptor.indexOf('/', controllerStart);
+			int methodStart = descriptor.indexOf('$', methodIndex) + 1;
+			bh.consume(descriptor.substring(controllerStart, methodIndex));
+			bh.consume(descriptor.substring(methodStart));
+			int shortStart = descriptor.lastIndexOf('.', methodIndex);
+			bh.consume(shortStart == -1 ? descriptor.substring(controllerStart, methodIndex)
+					: descriptor.substring(shortStart + 1, methodIndex));
+		}
+	}
+}
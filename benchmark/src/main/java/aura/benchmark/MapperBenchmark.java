@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import aura.JsonCodec;
+
+/**
+ * A full parse/render cycle of a request: parse the message, pretty-print the
+ * params of every action and write the message back. Once with the shared
+ * {@link JsonCodec} readers and writers, once with an ObjectMapper per object
+ * and per call, as the message, each action and each action panel used to
+ * have. Run with -prof gc to compare allocation per operation.
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapperBenchmark {
+
+	@Param({ "1", "10", "300" })
+	public int actions;
+
+	private byte[] json;
+
+	@Setup
+	public void setup() throws IOException {
+		this.json = new AuraCorpus().messageJson(actions, 3);
+	}
+
+	@Benchmark
+	public void sharedCodec(Blackhole bh) throws IOException {
+		JsonNode message = JsonCodec.READER.readTree(json);
+		for (JsonNode action : message.get("actions")) {
+			bh.consume(JsonCodec.PRETTY_WRITER.writeValueAsString(action.get("params")));
+		}
+		bh.consume(JsonCodec.COMPACT_WRITER.writeValueAsBytes(message));
+	}
+
+	@Benchmark
+	public void mapperPerCall(Blackhole bh) throws IOException {
+		JsonNode message = new ObjectMapper().readTree(json);
+		for (JsonNode action : message.get("actions")) {
+			// one mapper for the action, one for its panel
+			bh.consume(new ObjectMapper());
+			ObjectMapper panelMapper = new ObjectMapper();
+			bh.consume(panelMapper.writerWithDefaultPrettyPrinter().writeValueAsString(action.get("params")));
+		}
+		bh.consume(new ObjectMapper().writeValueAsBytes(message));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.benchmark;
+
+import java.util.Locale;
+
+import aura.AuraMessage;
+import aura.AuraResponse;
+
+/**
+ * Memory regression check: how much heap the parsed model behind one open
+ * Aura editor retains, as a multiple of the JSON it was parsed from. It runs
+ * without Burp, so the text the editors hold is not included.
+ *
+ * Not a JMH benchmark. Run it on its own, with a fixed heap so GC is predictable:
+ *
+ * <pre>
+ * java -Xmx1g -cp target/benchmarks.jar aura.benchmark.RetainedHeap
+ * </pre>
+ *
+ * Exits with status 1 if any model retains more than its budget, so it can
+ * gate a build.
+ */
+public class RetainedHeap {
+	/** an AuraMessage keeps its decoded JSON and a tree of each action without its params */
+	static final double MESSAGE_BUDGET = 2.5;
+	/** an AuraResponse references the body and only keeps offsets for each returnValue */
+	static final double RESPONSE_BUDGET = 1.5;
+	private static final int COPIES = 20;
+
+	public static void main(String[] args) throws Exception {
+		boolean ok = true;
+		AuraCorpus corpus = new AuraCorpus();
+		for (int actions : new int[] { 10, 100, 1000 }) {
+			final byte[] json = corpus.messageJson(actions, 4);
+			long retained = retainedPerCopy(new Model() {
+				@Override
+				public Object build() throws Exception {
+					return new AuraMessage(json.clone());
+				}
+			});
+			ok &= report("AuraMessage, " + actions + " actions", json.length, retained, MESSAGE_BUDGET);
+		}
+		for (int sizeKb : new int[] { 64, 1024, 16 * 1024 }) {
+			final byte[] body = corpus.responseBody(sizeKb * 1024, 10);
+			long retained = retainedPerCopy(new Model() {
+				@Override
+				public Object build() throws Exception {
+					byte[] copy = body.clone();
+					return new AuraResponse(copy, 0, copy.length);
+				}
+			});
+			ok &= report("AuraResponse, " + sizeKb + " KB", body.length, retained, RESPONSE_BUDGET);
+		}
+		if (!ok) {
+			System.exit(1);
+		}
+	}
+
+	private interface Model {
+		Object build() throws Exception;
+	}
+
+	private static long retainedPerCopy(Model model) throws Exception {
+		model.build(); // warm up, load classes and fill the descriptor cache
+		long before = usedAfterGc();
+		Object[] held = new Object[COPIES];
+		for (int i = 0; i < COPIES; i++) {
+			held[i] = model.build();
+		}
+		long after = usedAfterGc();
+		if (held[COPIES - 1] == null) {
+			throw new IllegalStateException();
+		}
+		return (after - before) / COPIES;
+	}
+
+	private static long usedAfterGc() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			Thread.sleep(50);
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	private static boolean report(String name, int sourceBytes, long retained, double budget) {
+		double ratio = retained / (double) sourceBytes;
+		boolean ok = ratio <= budget;
+		System.out.println(String.format(Locale.ROOT, "%-32s %10d bytes source %12d bytes retained %6.2fx (budget %.1fx)%s",
+				name, sourceBytes, retained, ratio, budget, ok ? "" : "  OVER BUDGET"));
+		return ok;
+	}
+}
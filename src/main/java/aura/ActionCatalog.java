@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide, deduplicated catalog of the action descriptors an application
+ * is known to have, whether or not they were ever called, e.g. as found by the
+ * {@link DescriptorScanner} in the framework and component definitions.
+ *
+ * Entries are {@link Descriptor} instances, so the catalog splits descriptors
+ * into controller and method the same way {@link ActionRequest} does. They are
+ * deduped by their raw string and parsed outside the shared Descriptor cache:
+ * a bundle can hold thousands of descriptors that never show up in traffic.
+ */
+public class ActionCatalog {
+	public static final int DEFAULT_MAX_DESCRIPTORS = 50000;
+	private static final ActionCatalog INSTANCE = new ActionCatalog(DEFAULT_MAX_DESCRIPTORS);
+
+	private final int maxDescriptors;
+	private final ConcurrentHashMap<String, Descriptor> descriptors = new ConcurrentHashMap<String, Descriptor>();
+	private final AtomicLong scannedBytes = new AtomicLong();
+	private final AtomicLong scannedResponses = new AtomicLong();
+
+	public ActionCatalog(int maxDescriptors) {
+		this.maxDescriptors = maxDescriptors;
+	}
+
+	public static ActionCatalog getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return true if the descriptor was not in the catalog yet
+	 */
+	public boolean add(String descriptor) {
+		if (this.descriptors.containsKey(descriptor) || this.descriptors.size() >= this.maxDescriptors) {
+			// known, or far more than any real application: stop growing
+			return false;
+		}
+		return this.descriptors.putIfAbsent(descriptor, Descriptor.parse(descriptor)) == null;
+	}
+
+	/**
+	 * Scan JavaScript or JSON for descriptors and add them.
+	 *
+	 * @return the number of descriptors that were new
+	 */
+	public int addAll(byte[] content, int offset, int length) {
+		final int[] added = new int[1];
+		DescriptorScanner.getInstance().scan(content, offset, length, new DescriptorScanner.Sink() {
+			@Override
+			public void found(String descriptor) {
+				if (add(descriptor)) {
+					added[0]++;
+				}
+			}
+		});
+		this.scannedBytes.addAndGet(length);
+		this.scannedResponses.incrementAndGet();
+		return added[0];
+	}
+
+	/**
+	 * @param scheme e.g. apex, or null for all
+	 * @return the distinct controllers, sorted
+	 */
+	public List<String> getControllers(String scheme) {
+		TreeSet<String> controllers = new TreeSet<String>();
+		for (Descriptor descriptor : this.descriptors.values()) {
+			if (scheme == null || scheme.equals(descriptor.scheme)) {
+				controllers.add(descriptor.controller);
+			}
+		}
+		return new ArrayList<String>(controllers);
+	}
+
+	/**
+	 * @param scheme e.g. apex, or null for all
+	 * @return the methods of the controller, sorted
+	 */
+	public List<String> getMethods(String scheme, String controller) {
+		TreeSet<String> methods = new TreeSet<String>();
+		for (Descriptor descriptor : this.descriptors.values()) {
+			if ((scheme == null || scheme.equals(descriptor.scheme)) && descriptor.controller.equals(controller)) {
+				methods.add(descriptor.method);
+			}
+		}
+		return new ArrayList<String>(methods);
+	}
+
+	public List<Descriptor> getDescriptors() {
+		return Collections.unmodifiableList(new ArrayList<Descriptor>(this.descriptors.values()));
+	}
+
+	public int size() {
+		return this.descriptors.size();
+	}
+
+	public long getScannedBytes() {
+		return this.scannedBytes.get();
+	}
+
+	public long getScannedResponses() {
+		return this.scannedResponses.get();
+	}
+
+	public void clear() {
+		this.descriptors.clear();
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Process-wide store linking the actions of an Aura request to the actions of
+ * its response, so either half can be shown next to a summary of the other
+ * without parsing it again.
+ *
+ * Messages are keyed by {@link #messageKey(String, int, byte[])}, a hash of
+ * where the request was sent, its request line and its body, and actions by
+ * their id. When the same request is sent again the latest response wins. The
+ * store keeps at most a fixed number of messages and forgets the oldest first.
+ */
+public class ActionCorrelation {
+	public static final int DEFAULT_MAX_MESSAGES = 20000;
+	private static final ActionCorrelation INSTANCE = new ActionCorrelation(DEFAULT_MAX_MESSAGES);
+
+	private final int maxMessages;
+	private final ConcurrentHashMap<Long, Map<String, Summary>> messages = new ConcurrentHashMap<Long, Map<String, Summary>>();
+	private final ConcurrentLinkedQueue<Long> order = new ConcurrentLinkedQueue<Long>();
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong evicted = new AtomicLong();
+
+	/**
+	 * Both halves of one action, reduced to what is worth showing next to the other half.
+	 */
+	public static class Summary {
+		public final String actionId;
+		/** null if the request had no descriptor */
+		public final Descriptor descriptor;
+		/** hash of the compact params JSON, to tell apart actions that only differ in params */
+		public final long paramHash;
+		/** null if the response had no such action */
+		public final String state;
+		public final int errorCount;
+		/** size of the raw returnValue JSON, -1 if not known */
+		public final int returnValueSize;
+
+		public Summary(String actionId, Descriptor descriptor, long paramHash, String state, int errorCount, int returnValueSize) {
+			this.actionId = actionId;
+			this.descriptor = descriptor;
+			this.paramHash = paramHash;
+			this.state = state;
+			this.errorCount = errorCount;
+			this.returnValueSize = returnValueSize;
+		}
+
+		public String describeRequest() {
+			String action = this.descriptor == null ? "unknown action"
+					: this.descriptor.shortController + "." + this.descriptor.method;
+			return action + ", params #" + String.format("%016x", this.paramHash).substring(0, 8);
+		}
+
+		public String describeResponse() {
+			if (this.state == null) {
+				return "no response for this action";
+			}
+			StringBuilder text = new StringBuilder(this.state);
+			if (this.errorCount > 0) {
+				text.append(", ").append(this.errorCount).append(this.errorCount == 1 ? " error" : " errors");
+			}
+			if (this.returnValueSize >= 0) {
+				text.append(", returnValue ").append(formatSize(this.returnValueSize));
+			}
+			return text.toString();
+		}
+	}
+
+	public ActionCorrelation(int maxMessages) {
+		this.maxMessages = maxMessages;
+	}
+
+	/**
+	 * @return the key of a request, so the same body sent to another host or
+	 * endpoint is kept apart
+	 */
+	public static long messageKey(String host, int port, byte[] request) {
+		byte[] service = (host + ":" + port).getBytes(StandardCharsets.UTF_8);
+		long h = ParseCache.hash(service, 0, service.length);
+		h = ParseCache.hash(h, request, 0, AuraDetector.lineEnd(request, 0));
+		int bodyOffset = AuraDetector.getBodyOffset(request);
+		return ParseCache.hash(h, request, bodyOffset, request.length - bodyOffset);
+	}
+
+	public static ActionCorrelation getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Record a request and its response.
+	 *
+	 * @param messageKey the hash of the request body
+	 * @return the summaries recorded, by action id
+	 */
+	public Map<String, Summary> put(long messageKey, AuraMessage request, AuraResponse response) {
+		Map<String, Summary> actions = new HashMap<String, Summary>(request.actionMap.size() * 2);
+		for (ActionRequest action : request.actionMap.values()) {
+			ActionResponse actionResponse = response == null ? null : response.responseActionMap.get(action.id);
+			String state = null;
+			int errorCount = 0;
+			int returnValueSize = -1;
+			if (actionResponse != null) {
+				state = actionResponse.state == null ? "(no state)" : actionResponse.state;
+				errorCount = actionResponse.error == null ? 0 : actionResponse.error.size();
+				returnValueSize = actionResponse.getReturnValueLength();
+			}
+			actions.put(action.id, new Summary(action.id, action.getParsedDescriptor(), paramHash(action),
+					state, errorCount, returnValueSize));
+		}
+		Map<String, Summary> recorded = Collections.unmodifiableMap(actions);
+		put(messageKey, recorded);
+		return recorded;
+	}
+
+	/**
+	 * Record summaries made earlier, e.g. read back from an {@link ActionLog}.
+	 */
+	public void put(long messageKey, Map<String, Summary> actions) {
+		if (this.messages.put(messageKey, actions) == null) {
+			this.order.add(messageKey);
+			if (this.size.incrementAndGet() > this.maxMessages) {
+				Long oldest = this.order.poll();
+				if (oldest != null && this.messages.remove(oldest) != null) {
+					this.size.decrementAndGet();
+					this.evicted.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Record the messages last appended to the log, as many as the store
+	 * keeps. The records before them are not read. A message appended again
+	 * replaces what was read before, as it does when recorded again.
+	 *
+	 * @return the number of messages read
+	 */
+	public int load(ActionLog log) throws IOException {
+		final int[] loaded = new int[1];
+		final long[] messageKey = new long[1];
+		final Map<String, Summary> actions = new HashMap<String, Summary>();
+		log.forEach(log.tailStart(this.maxMessages), new ActionLog.Visitor() {
+			@Override
+			public void visit(ActionLog.Entry entry) {
+				if (entry.first && !actions.isEmpty()) {
+					put(messageKey[0], Collections.unmodifiableMap(new HashMap<String, Summary>(actions)));
+					actions.clear();
+					loaded[0]++;
+				}
+				messageKey[0] = entry.messageKey;
+				actions.put(entry.summary.actionId, entry.summary);
+			}
+		});
+		if (!actions.isEmpty()) {
+			put(messageKey[0], Collections.unmodifiableMap(new HashMap<String, Summary>(actions)));
+			loaded[0]++;
+		}
+		return loaded[0];
+	}
+
+	/**
+	 * @return the summaries of the message's actions by id, or null if the message was not recorded
+	 */
+	public Map<String, Summary> get(long messageKey) {
+		return this.messages.get(messageKey);
+	}
+
+	public int getMaxMessages() {
+		return this.maxMessages;
+	}
+
+	public int getMessageCount() {
+		return this.size.get();
+	}
+
+	/**
+	 * @return the number of actions of all the messages recorded
+	 */
+	public int getActionCount() {
+		int actions = 0;
+		for (Map<String, Summary> message : this.messages.values()) {
+			actions += message.size();
+		}
+		return actions;
+	}
+
+	public long getEvicted() {
+		return this.evicted.get();
+	}
+
+	public void clear() {
+		this.messages.clear();
+		this.order.clear();
+		this.size.set(0);
+	}
+
+	private static long paramHash(ActionRequest action) {
+		ObjectNode params = action.readParams();
+		if (params == null) {
+			return 0;
+		}
+		try {
+			byte[] bytes = JsonCodec.COMPACT_WRITER.writeValueAsBytes(params);
+			return ParseCache.hash(bytes, 0, bytes.length);
+		} catch (JsonProcessingException e) {
+			return 0;
+		}
+	}
+
+	static String formatSize(int bytes) {
+		if (bytes < 1024) {
+			return bytes + " B";
+		}
+		if (bytes < 1024 * 1024) {
+			return String.format("%.1f KB", bytes / 1024.0);
+		}
+		return String.format("%.1f MB", bytes / (1024.0 * 1024));
+	}
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * In-memory inverted index over the actions of many Aura requests.
+ *
+ * Every action is a document. Its controller, method and param keys (at any
+ * depth) are terms. Each distinct term string is stored once, in the term
+ * dictionary. Each term maps to a growable int[] of document ids, which stays
+ * sorted because ids are handed out in order. A query ORs the postings of the
+ * matching terms per field and ANDs the fields, which takes milliseconds even
+ * with hundreds of thousands of actions.
+ *
+ * Messages are identified by a key, e.g. a hash of the request, and a message
+ * is only indexed once.
+ *
+ * Memory is bounded: when the maximum number of documents is reached, the
+ * oldest half of them is dropped, with the terms and URLs only they used. Each
+ * field holds at most {@link #MAX_TERMS} live terms, past which its new terms
+ * are not indexed until an eviction makes room, so a flood of param keys
+ * doesn't stop controllers and methods from being indexed. Repeated URLs are
+ * stored once.
+ */
+public class ActionIndex {
+	public static final int DEFAULT_MAX_DOCS = 1000000;
+	public static final int MAX_TERMS = 200000;
+	private static final int MAX_KEY_DEPTH = 4;
+
+	private static final byte CONTROLLER = 0;
+	private static final byte METHOD = 1;
+	private static final byte PARAM = 2;
+
+	private final int maxDocs;
+
+	// term dictionary, one map per field
+	private final List<Map<String, Integer>> termIds = new ArrayList<Map<String, Integer>>(3);
+	private String[] terms = new String[1024];
+	private String[] lowerTerms = new String[1024];
+	private byte[] termFields = new byte[1024];
+	private int[][] postings = new int[1024][];
+	private int[] postingSizes = new int[1024];
+	private int termCount = 0;
+
+	// documents, docs [0, docBase) have been evicted
+	private int docBase = 0;
+	private int docCount = 0;
+	private int[] docMessage = new int[1024];
+	private int[] docController = new int[1024];
+	private int[] docMethod = new int[1024];
+	private String[] docActionId = new String[1024];
+
+	// messages, by the slot stored in docMessage, slots [0, messageBase) have been evicted
+	private int messageBase = 0;
+	private int messageCount = 0;
+	private long[] messageKeys = new long[256];
+	private int[] messageRefs = new int[256];
+	private String[] messageUrls = new String[256];
+	private final Map<Long, Integer> messageSlots = new HashMap<Long, Integer>();
+	private final Map<String, String> urlPool = new HashMap<String, String>();
+
+	private long evicted = 0;
+
+	/**
+	 * One action in a query result.
+	 */
+	public static class Hit {
+		public final int messageRef;
+		public final String url;
+		public final String actionId;
+		public final String controller;
+		public final String method;
+
+		Hit(int messageRef, String url, String actionId, String controller, String method) {
+			this.messageRef = messageRef;
+			this.url = url;
+			this.actionId = actionId;
+			this.controller = controller;
+			this.method = method;
+		}
+	}
+
+	public ActionIndex() {
+		this(DEFAULT_MAX_DOCS);
+	}
+
+	public ActionIndex(int maxDocs) {
+		this.maxDocs = maxDocs;
+		for (int field = CONTROLLER; field <= PARAM; field++) {
+			this.termIds.add(new HashMap<String, Integer>());
+		}
+	}
+
+	/**
+	 * Index every action of a parsed message, unless a message with the same key is indexed already.
+	 *
+	 * @param messageKey what identifies the message, e.g. a hash of the request
+	 * @param messageRef the number the message is known by in Burp, e.g. its proxy history number
+	 * @param url the request URL, for display
+	 * @return false if the message was indexed already
+	 */
+	public synchronized boolean add(long messageKey, int messageRef, String url, AuraMessage message) {
+		if (messageSlots.containsKey(messageKey)) {
+			return false;
+		}
+		if (message.actionMap.isEmpty()) {
+			return true;
+		}
+		if (docCount - docBase + message.actionMap.size() > maxDocs) {
+			evictOldestHalf();
+		}
+		int slot = addMessage(messageKey, messageRef, url);
+		List<String> keys = new ArrayList<String>();
+		for (ActionRequest action : message.actionMap.values()) {
+			int doc = docCount++;
+			ensureDocCapacity(doc - docBase + 1);
+			int local = doc - docBase;
+			docMessage[local] = slot;
+			docActionId[local] = action.id;
+			docController[local] = addPosting(CONTROLLER, action.calledController, doc);
+			docMethod[local] = addPosting(METHOD, action.calledMethod, doc);
+
+			keys.clear();
+			collectKeys(action.readParams(), 0, keys);
+			for (String key : keys) {
+				addPosting(PARAM, key, doc);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Find the actions matching all the given criteria. Each criterion is a
+	 * case-insensitive substring of the controller, method or a param key. Null
+	 * or empty criteria match everything.
+	 *
+	 * @param limit maximum number of hits returned, the newest first
+	 */
+	public synchronized List<Hit> query(String controller, String method, String paramKey, int limit) {
+		BitSet matches = null;
+		matches = restrict(matches, CONTROLLER, controller);
+		matches = restrict(matches, METHOD, method);
+		matches = restrict(matches, PARAM, paramKey);
+		int live = docCount - docBase;
+		if (matches == null) {
+			matches = new BitSet(live);
+			matches.set(0, live);
+		}
+
+		List<Hit> hits = new ArrayList<Hit>(Math.min(limit, matches.cardinality()));
+		for (int local = matches.previousSetBit(live - 1); local >= 0 && hits.size() < limit; local = matches.previousSetBit(local - 1)) {
+			int slot = docMessage[local];
+			hits.add(new Hit(messageRefs[slot], messageUrls[slot], docActionId[local],
+					term(docController[local]), term(docMethod[local])));
+		}
+		return hits;
+	}
+
+	public synchronized boolean contains(long messageKey) {
+		return messageSlots.containsKey(messageKey);
+	}
+
+	/**
+	 * Change the number a message indexed earlier is shown with.
+	 *
+	 * @return false if there is no message with the key
+	 */
+	public synchronized boolean setMessageRef(long messageKey, int messageRef) {
+		Integer slot = messageSlots.get(messageKey);
+		if (slot == null) {
+			return false;
+		}
+		messageRefs[slot - messageBase] = messageRef;
+		return true;
+	}
+
+	public synchronized int getDocumentCount() {
+		return docCount - docBase;
+	}
+
+	public synchronized int getMessageCount() {
+		return messageCount;
+	}
+
+	public synchronized int getTermCount() {
+		return termCount;
+	}
+
+	/**
+	 * @return number of actions dropped to keep the index within its bounds
+	 */
+	public synchronized long getEvicted() {
+		return evicted;
+	}
+
+	public synchronized void clear() {
+		for (Map<String, Integer> ids : termIds) {
+			ids.clear();
+		}
+		Arrays.fill(terms, 0, termCount, null);
+		Arrays.fill(lowerTerms, 0, termCount, null);
+		Arrays.fill(postings, 0, termCount, null);
+		termCount = 0;
+		docBase = docCount;
+		messageBase += messageCount;
+		messageCount = 0;
+		messageSlots.clear();
+		urlPool.clear();
+		Arrays.fill(messageUrls, null);
+		Arrays.fill(docActionId, null);
+	}
+
+	/**
+	 * @return the documents whose field has a term containing text, ANDed with matches
+	 */
+	private BitSet restrict(BitSet matches, byte field, String text) {
+		if (text == null || text.trim().isEmpty()) {
+			return matches;
+		}
+		String needle = text.trim().toLowerCase(Locale.ROOT);
+		BitSet found = new BitSet(docCount - docBase);
+		for (int term = 0; term < termCount; term++) {
+			if (termFields[term] != field || !lowerTerms[term].contains(needle)) {
+				continue;
+			}
+			int[] docs = postings[term];
+			for (int i = 0, size = postingSizes[term]; i < size; i++) {
+				found.set(docs[i] - docBase);
+			}
+		}
+		if (matches != null) {
+			found.and(matches);
+		}
+		return found;
+	}
+
+	private String term(int id) {
+		return id < 0 ? null : terms[id];
+	}
+
+	private int addMessage(long messageKey, int messageRef, String url) {
+		if (messageCount == messageRefs.length) {
+			messageKeys = Arrays.copyOf(messageKeys, messageCount * 2);
+			messageRefs = Arrays.copyOf(messageRefs, messageCount * 2);
+			messageUrls = Arrays.copyOf(messageUrls, messageCount * 2);
+		}
+		String pooled = urlPool.get(url);
+		if (pooled == null && url != null && urlPool.size() < MAX_TERMS) {
+			urlPool.put(url, url);
+			pooled = url;
+		}
+		messageKeys[messageCount] = messageKey;
+		messageRefs[messageCount] = messageRef;
+		messageUrls[messageCount] = pooled == null ? url : pooled;
+		messageSlots.put(messageKey, messageBase + messageCount);
+		return messageCount++;
+	}
+
+	/**
+	 * @return the id of the term, or -1 if it is null or the field has no room for new terms
+	 */
+	private int addPosting(byte field, String value, int doc) {
+		if (value == null) {
+			return -1;
+		}
+		Map<String, Integer> ids = termIds.get(field);
+		Integer id = ids.get(value);
+		if (id == null) {
+			if (ids.size() == MAX_TERMS) {
+				return -1;
+			}
+			if (termCount == terms.length) {
+				int capacity = termCount * 2;
+				terms = Arrays.copyOf(terms, capacity);
+				lowerTerms = Arrays.copyOf(lowerTerms, capacity);
+				termFields = Arrays.copyOf(termFields, capacity);
+				postings = Arrays.copyOf(postings, capacity);
+				postingSizes = Arrays.copyOf(postingSizes, capacity);
+			}
+			id = termCount++;
+			terms[id] = value;
+			lowerTerms[id] = value.toLowerCase(Locale.ROOT);
+			termFields[id] = field;
+			postings[id] = new int[4];
+			postingSizes[id] = 0;
+			ids.put(value, id);
+		}
+		int[] docs = postings[id];
+		int size = postingSizes[id];
+		if (size > 0 && docs[size - 1] == doc) {
+			return id; // same key twice in one action
+		}
+		if (size == docs.length) {
+			docs = postings[id] = Arrays.copyOf(docs, size * 2);
+		}
+		docs[size] = doc;
+		postingSizes[id] = size + 1;
+		return id;
+	}
+
+	private static void collectKeys(JsonNode node, int depth, List<String> keys) {
+		if (node == null || depth >= MAX_KEY_DEPTH) {
+			return;
+		}
+		if (node.isObject()) {
+			Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				keys.add(field.getKey());
+				collectKeys(field.getValue(), depth + 1, keys);
+			}
+		} else if (node.isArray()) {
+			for (JsonNode element : node) {
+				collectKeys(element, depth + 1, keys);
+			}
+		}
+	}
+
+	private void ensureDocCapacity(int live) {
+		if (live <= docMessage.length) {
+			return;
+		}
+		int capacity = Math.max(live, docMessage.length * 2);
+		docMessage = Arrays.copyOf(docMessage, capacity);
+		docController = Arrays.copyOf(docController, capacity);
+		docMethod = Arrays.copyOf(docMethod, capacity);
+		docActionId = Arrays.copyOf(docActionId, capacity);
+	}
+
+	/**
+	 * Drop the oldest half of the documents, and the messages only they referred to.
+	 */
+	private void evictOldestHalf() {
+		int live = docCount - docBase;
+		int drop = live / 2;
+		if (drop == 0) {
+			return;
+		}
+		int newBase = docBase + drop;
+		for (int term = 0; term < termCount; term++) {
+			int[] docs = postings[term];
+			int size = postingSizes[term];
+			int cut = Arrays.binarySearch(docs, 0, size, newBase);
+			if (cut < 0) {
+				cut = -cut - 1;
+			}
+			if (cut > 0) {
+				System.arraycopy(docs, cut, docs, 0, size - cut);
+				postingSizes[term] = size - cut;
+			}
+		}
+
+		int firstSlot = docMessage[drop];
+		int keep = live - drop;
+		System.arraycopy(docMessage, drop, docMessage, 0, keep);
+		System.arraycopy(docController, drop, docController, 0, keep);
+		System.arraycopy(docMethod, drop, docMethod, 0, keep);
+		System.arraycopy(docActionId, drop, docActionId, 0, keep);
+		Arrays.fill(docActionId, keep, live, null);
+		for (int i = 0; i < keep; i++) {
+			docMessage[i] -= firstSlot;
+		}
+
+		int keptMessages = messageCount - firstSlot;
+		for (int i = 0; i < firstSlot; i++) {
+			messageSlots.remove(messageKeys[i]);
+		}
+		System.arraycopy(messageKeys, firstSlot, messageKeys, 0, keptMessages);
+		System.arraycopy(messageRefs, firstSlot, messageRefs, 0, keptMessages);
+		System.arraycopy(messageUrls, firstSlot, messageUrls, 0, keptMessages);
+		Arrays.fill(messageUrls, keptMessages, messageCount, null);
+		messageBase += firstSlot;
+		messageCount = keptMessages;
+
+		docBase = newBase;
+		evicted += drop;
+		pruneTerms(keep);
+		urlPool.clear();
+		for (int i = 0; i < messageCount; i++) {
+			String url = messageUrls[i];
+			if (url != null && urlPool.size() < MAX_TERMS) {
+				urlPool.put(url, url);
+			}
+		}
+	}
+
+	/**
+	 * Drop the terms no live document has, renumbering the others.
+	 *
+	 * @param live the number of live documents
+	 */
+	private void pruneTerms(int live) {
+		int[] newIds = new int[termCount];
+		int kept = 0;
+		for (int term = 0; term < termCount; term++) {
+			if (postingSizes[term] == 0) {
+				termIds.get(termFields[term]).remove(terms[term]);
+				newIds[term] = -1;
+				continue;
+			}
+			newIds[term] = kept;
+			if (kept != term) {
+				terms[kept] = terms[term];
+				lowerTerms[kept] = lowerTerms[term];
+				termFields[kept] = termFields[term];
+				postings[kept] = postings[term];
+				postingSizes[kept] = postingSizes[term];
+				termIds.get(termFields[kept]).put(terms[kept], kept);
+			}
+			kept++;
+		}
+		Arrays.fill(terms, kept, termCount, null);
+		Arrays.fill(lowerTerms, kept, termCount, null);
+		Arrays.fill(postings, kept, termCount, null);
+		termCount = kept;
+		for (int i = 0; i < live; i++) {
+			if (docController[i] >= 0) {
+				docController[i] = newIds[docController[i]];
+			}
+			if (docMethod[i] >= 0) {
+				docMethod[i] = newIds[docMethod[i]];
+			}
+		}
+	}
+}
@@ -0,0 +1,607 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of {@link ActionCorrelation.Summary} records, so what was
+ * learnt about Aura traffic survives a restart without reparsing any message.
+ *
+ * The log (actions.log) is a header followed by records, each its payload
+ * length, the CRC32 of the payload and the payload. The offset of every
+ * record is kept in a memory-mapped index (actions.idx), which is a header
+ * with the record count followed by one long per record.
+ *
+ * Records are written to the log before the index points at them. On
+ * opening, the last indexed records are checked, and records past them are
+ * scanned and indexed, so only the tail is read however long the log is. The
+ * first record that is cut off or fails its CRC ends the log, which is
+ * truncated there. Either file may be deleted: a missing index is rebuilt
+ * from the log.
+ *
+ * The index lets a reader start at any record: {@link #tailStart(int)} finds
+ * where the most recent messages start, so loading reads only those.
+ * {@link #compact(int)} rewrites the log with only the latest append of each
+ * message.
+ *
+ * Only one Burp instance can use a directory at a time: it holds a lock on
+ * actions.lock for as long as the log is open.
+ */
+public class ActionLog {
+	public static final String LOG_FILE = "actions.log";
+	public static final String INDEX_FILE = "actions.idx";
+	public static final String LOCK_FILE = "actions.lock";
+	public static final String DEFAULT_STORE = "default";
+
+	private static final int LOG_MAGIC = 0x4c424c31; // LBL1
+	private static final int INDEX_MAGIC = 0x4c424931; // LBI1
+	private static final int LOG_HEADER = 8;
+	private static final int INDEX_HEADER = 16;
+	private static final int RECORD_HEADER = 8;
+	private static final int MAX_PAYLOAD = 64 * 1024;
+	// a record has at most three strings, and 32 bytes of everything else
+	private static final int MAX_STRING = (MAX_PAYLOAD - 32) / 3;
+	private static final int INITIAL_INDEX_CAPACITY = 64 * 1024;
+	private static final int READ_BUFFER = 1024 * 1024;
+
+	private static final int HAS_DESCRIPTOR = 1;
+	private static final int HAS_STATE = 2;
+	private static final int FIRST = 4;
+
+	// the directories open in this JVM, which a file lock doesn't keep out
+	private static final Set<File> OPEN_DIRECTORIES = new HashSet<File>();
+
+	private final File directory;
+	private RandomAccessFile lockFile;
+	private FileLock lock;
+	private RandomAccessFile logFile;
+	private FileChannel log;
+	private RandomAccessFile indexFile;
+	private FileChannel index;
+	private MappedByteBuffer indexMap;
+	private int count;
+	private long logEnd;
+	private long truncated;
+
+	// reused by append, which is synchronized
+	private final ByteArrayOutputStream payload = new ByteArrayOutputStream(256);
+	private final DataOutputStream payloadOut = new DataOutputStream(this.payload);
+	private final CRC32 crc = new CRC32();
+
+	/**
+	 * One record: an action of the message with the given key.
+	 */
+	public static class Entry {
+		public final long messageKey;
+		/** true for the first action of each {@link ActionLog#append(long, Collection)} */
+		public final boolean first;
+		public final ActionCorrelation.Summary summary;
+
+		Entry(long messageKey, boolean first, ActionCorrelation.Summary summary) {
+			this.messageKey = messageKey;
+			this.first = first;
+			this.summary = summary;
+		}
+	}
+
+	public interface Visitor {
+		void visit(Entry entry);
+	}
+
+	/**
+	 * Open the log in the directory, creating both files if they don't exist
+	 * and recovering from a crash if the last write was cut off.
+	 *
+	 * @throws IOException also if another Burp instance has the directory open
+	 */
+	public ActionLog(File directory) throws IOException {
+		this.directory = directory;
+		lock();
+		try {
+			open();
+		} catch (IOException e) {
+			unlock();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param store a name for the history, e.g. of an engagement, which keeps it
+	 *        apart from others. Letters, digits, '.', '-' and '_' are kept, the
+	 *        rest replaced with '_'.
+	 * @return ~/.lightningburp/store
+	 */
+	public static File getDefaultDirectory(String store) {
+		String name = store.trim().replaceAll("[^A-Za-z0-9._-]", "_");
+		if (name.isEmpty() || name.matches("\\.+")) {
+			name = DEFAULT_STORE;
+		}
+		return new File(new File(System.getProperty("user.home"), ".lightningburp"), name);
+	}
+
+	/**
+	 * Append the actions of a message, with a single write.
+	 */
+	public synchronized void append(long messageKey, Collection<ActionCorrelation.Summary> actions) throws IOException {
+		if (actions.isEmpty()) {
+			return;
+		}
+		if (this.log == null) {
+			throw new IOException(this.directory + " is closed");
+		}
+		ByteArrayOutputStream records = new ByteArrayOutputStream(actions.size() * 128);
+		long[] offsets = new long[actions.size()];
+		int i = 0;
+		for (ActionCorrelation.Summary summary : actions) {
+			offsets[i] = this.logEnd + records.size();
+			writeRecord(records, messageKey, i == 0, summary);
+			i++;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(records.toByteArray());
+		long position = this.logEnd;
+		while (buffer.hasRemaining()) {
+			position += this.log.write(buffer, position);
+		}
+		this.logEnd = position;
+		for (long offset : offsets) {
+			addToIndex(offset);
+		}
+	}
+
+	/**
+	 * Find where the latest appends of the most recently appended messages
+	 * start, going back through the index from the end. Only the flags and
+	 * message key of each record on the way are read.
+	 *
+	 * @return the number of the first record to read for at most maxMessages
+	 *         messages, 0 if the log holds no more than that
+	 */
+	public synchronized int tailStart(int maxMessages) throws IOException {
+		Set<Long> messages = new HashSet<Long>();
+		// the log is read backwards a block at a time
+		ByteBuffer block = null;
+		long blockStart = 0;
+		for (int i = this.count - 1; i >= 0; i--) {
+			long start = offsetOf(i) + RECORD_HEADER;
+			if (block == null || start < blockStart) {
+				long blockEnd = start + 9;
+				blockStart = Math.max(LOG_HEADER, blockEnd - READ_BUFFER);
+				block = readFully(blockStart, (int) (blockEnd - blockStart));
+			}
+			int at = (int) (start - blockStart);
+			if ((block.get(at) & FIRST) != 0 && messages.add(block.getLong(at + 1)) && messages.size() == maxMessages) {
+				return i;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Visit every record, the oldest first, reading the log sequentially.
+	 */
+	public void forEach(Visitor visitor) throws IOException {
+		forEach(0, visitor);
+	}
+
+	/**
+	 * Visit the records from the given one on, reading the log sequentially
+	 * from where the index says it starts.
+	 */
+	public synchronized void forEach(int from, Visitor visitor) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER);
+		long position = from < this.count ? offsetOf(from) : this.logEnd;
+		buffer.limit(0);
+		for (int i = from; i < this.count; i++) {
+			if (buffer.remaining() < RECORD_HEADER || buffer.remaining() < RECORD_HEADER + buffer.getInt(buffer.position())) {
+				position = fill(buffer, position);
+			}
+			int length = buffer.getInt();
+			buffer.getInt(); // checked when the record was indexed
+			ByteBuffer record = buffer.slice();
+			record.limit(length);
+			buffer.position(buffer.position() + length);
+			visitor.visit(readEntry(record));
+		}
+	}
+
+	/**
+	 * Rewrite the log with only the latest append of each message, and at most
+	 * the given number of messages, the most recently appended ones.
+	 *
+	 * @return the number of records dropped
+	 */
+	public synchronized int compact(int maxMessages) throws IOException {
+		// first pass: where each append starts, and the last append of each message
+		final BitSet starts = new BitSet(this.count);
+		final Map<Long, Integer> lastStart = new HashMap<Long, Integer>();
+		forEach(new Visitor() {
+			int i = 0;
+
+			@Override
+			public void visit(Entry entry) {
+				if (entry.first) {
+					starts.set(i);
+					lastStart.put(entry.messageKey, i);
+				}
+				i++;
+			}
+		});
+		List<Integer> kept = new ArrayList<Integer>(lastStart.values());
+		Collections.sort(kept);
+		final BitSet keep = new BitSet(this.count);
+		for (int start : kept.subList(Math.max(0, kept.size() - maxMessages), kept.size())) {
+			int end = starts.nextSetBit(start + 1);
+			keep.set(start, end == -1 ? this.count : end);
+		}
+		int dropped = this.count - keep.cardinality();
+		if (dropped == 0) {
+			return 0;
+		}
+
+		File compactLog = new File(this.directory, LOG_FILE + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(compactLog, "rw");
+		try {
+			out.setLength(0);
+			out.writeInt(LOG_MAGIC);
+			out.writeInt(0);
+			final RandomAccessFile target = out;
+			final ByteArrayOutputStream records = new ByteArrayOutputStream(READ_BUFFER);
+			// second pass: copy the kept records, in their order
+			forEach(new Visitor() {
+				int i = 0;
+
+				@Override
+				public void visit(Entry entry) {
+					try {
+						if (keep.get(i++)) {
+							writeRecord(records, entry.messageKey, entry.first, entry.summary);
+							if (records.size() >= READ_BUFFER) {
+								target.write(records.toByteArray());
+								records.reset();
+							}
+						}
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+			});
+			out.write(records.toByteArray());
+			out.getFD().sync();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			out.close();
+		}
+
+		// without a valid index the log is scanned on open, so a crash between
+		// the steps leaves either the old or the new log, each readable. The
+		// index is invalidated through the mapping rather than deleted, which
+		// Windows refuses while the file is mapped.
+		this.indexMap.putInt(0, 0);
+		this.indexMap.putLong(8, 0);
+		this.indexMap.force();
+		closeFiles();
+		try {
+			Files.move(compactLog.toPath(), new File(this.directory, LOG_FILE).toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			// the old log, rescanned, if the move failed
+			open();
+		}
+		return dropped;
+	}
+
+	public synchronized int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return the size of the log in bytes
+	 */
+	public synchronized long getLogBytes() {
+		return this.logEnd;
+	}
+
+	/**
+	 * @return the bytes cut off the end of the log when it was opened, e.g. after a crash
+	 */
+	public synchronized long getTruncatedBytes() {
+		return this.truncated;
+	}
+
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Flush both files to disk, close them and release the directory.
+	 */
+	public synchronized void close() throws IOException {
+		try {
+			closeFiles();
+		} finally {
+			unlock();
+		}
+	}
+
+	private void lock() throws IOException {
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create " + this.directory);
+		}
+		File key = this.directory.getCanonicalFile();
+		synchronized (OPEN_DIRECTORIES) {
+			if (!OPEN_DIRECTORIES.add(key)) {
+				// checked before opening the lock file: closing it would release the lock
+				throw new IOException(this.directory + " is already open");
+			}
+		}
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(new File(this.directory, LOCK_FILE), "rw");
+			this.lock = file.getChannel().tryLock();
+		} catch (OverlappingFileLockException e) {
+			// held through another class loader, keep the file open so its lock stays
+			file = null;
+		} finally {
+			if (this.lock == null) {
+				synchronized (OPEN_DIRECTORIES) {
+					OPEN_DIRECTORIES.remove(key);
+				}
+				if (file != null) {
+					file.close();
+				}
+			}
+		}
+		if (this.lock == null) {
+			throw new IOException(this.directory + " is in use by another Burp instance");
+		}
+		this.lockFile = file;
+	}
+
+	private void unlock() throws IOException {
+		if (this.lockFile == null) {
+			return;
+		}
+		try {
+			this.lock.release();
+		} finally {
+			this.lock = null;
+			this.lockFile.close();
+			this.lockFile = null;
+			synchronized (OPEN_DIRECTORIES) {
+				OPEN_DIRECTORIES.remove(this.directory.getCanonicalFile());
+			}
+		}
+	}
+
+	private void closeFiles() throws IOException {
+		if (this.log == null) {
+			return;
+		}
+		try {
+			this.indexMap.force();
+			if (this.log.isOpen()) { // closed if the writing thread was interrupted
+				this.log.force(false);
+			}
+		} finally {
+			this.indexMap = null;
+			this.index = null;
+			this.log = null;
+			try {
+				this.indexFile.close();
+			} finally {
+				this.logFile.close();
+			}
+		}
+	}
+
+	private void open() throws IOException {
+		new File(this.directory, LOG_FILE + ".tmp").delete(); // an interrupted compaction
+
+		this.logFile = new RandomAccessFile(new File(this.directory, LOG_FILE), "rw");
+		this.log = this.logFile.getChannel();
+		long logLength = this.log.size();
+		if (logLength < LOG_HEADER || readFully(0, 4).getInt() != LOG_MAGIC) {
+			// new, or not a log at all: start over
+			ByteBuffer header = ByteBuffer.allocate(LOG_HEADER);
+			header.putInt(LOG_MAGIC).putInt(0).flip();
+			this.log.truncate(0);
+			this.log.write(header, 0);
+			logLength = LOG_HEADER;
+		}
+
+		this.indexFile = new RandomAccessFile(new File(this.directory, INDEX_FILE), "rw");
+		this.index = this.indexFile.getChannel();
+		long indexLength = this.index.size();
+		int capacity = (int) Math.max(INITIAL_INDEX_CAPACITY, (indexLength - INDEX_HEADER) / 8);
+		this.indexMap = this.index.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + 8L * capacity);
+		this.count = 0;
+		if (indexLength >= INDEX_HEADER && this.indexMap.getInt(0) == INDEX_MAGIC) {
+			this.count = (int) Math.min(this.indexMap.getLong(8), capacity);
+		} else {
+			this.indexMap.putInt(0, INDEX_MAGIC);
+		}
+
+		// the index may be ahead of what reached the log: drop the entries that
+		// don't point at a whole, valid record
+		while (this.count > 0 && recordEnd(offsetOf(this.count - 1), logLength) == -1) {
+			this.count--;
+		}
+		this.indexMap.putLong(8, this.count);
+
+		// and the log ahead of the index: index the records after the last one
+		long position = this.count == 0 ? LOG_HEADER : recordEnd(offsetOf(this.count - 1), logLength);
+		long end;
+		while ((end = recordEnd(position, logLength)) != -1) {
+			addToIndex(position);
+			position = end;
+		}
+		this.truncated = logLength - position;
+		if (this.truncated > 0) {
+			this.log.truncate(position);
+		}
+		this.logEnd = position;
+	}
+
+	/**
+	 * @return the end of the record at the offset, or -1 if it is cut off or corrupt
+	 */
+	private long recordEnd(long offset, long logLength) throws IOException {
+		if (offset < LOG_HEADER || offset + RECORD_HEADER > logLength) {
+			return -1;
+		}
+		ByteBuffer header = readFully(offset, RECORD_HEADER);
+		int length = header.getInt();
+		int checksum = header.getInt();
+		if (length < 0 || length > MAX_PAYLOAD || offset + RECORD_HEADER + length > logLength) {
+			return -1;
+		}
+		ByteBuffer record = readFully(offset + RECORD_HEADER, length);
+		this.crc.reset();
+		this.crc.update(record.array(), 0, length);
+		return (int) this.crc.getValue() == checksum ? offset + RECORD_HEADER + length : -1;
+	}
+
+	private long offsetOf(int i) {
+		return this.indexMap.getLong(INDEX_HEADER + 8 * i);
+	}
+
+	private void addToIndex(long offset) throws IOException {
+		if (INDEX_HEADER + 8L * (this.count + 1) > this.indexMap.capacity()) {
+			this.indexMap = this.index.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + 2L * (this.indexMap.capacity() - INDEX_HEADER));
+		}
+		this.indexMap.putLong(INDEX_HEADER + 8 * this.count, offset);
+		this.count++;
+		this.indexMap.putLong(8, this.count);
+	}
+
+	private void writeRecord(ByteArrayOutputStream out, long messageKey, boolean first, ActionCorrelation.Summary summary)
+			throws IOException {
+		this.payload.reset();
+		DataOutputStream data = this.payloadOut;
+		int flags = (summary.descriptor == null ? 0 : HAS_DESCRIPTOR) | (summary.state == null ? 0 : HAS_STATE)
+				| (first ? FIRST : 0);
+		data.writeByte(flags);
+		data.writeLong(messageKey);
+		writeString(data, summary.actionId);
+		if (summary.descriptor != null) {
+			writeString(data, summary.descriptor.descriptor);
+		}
+		data.writeLong(summary.paramHash);
+		if (summary.state != null) {
+			writeString(data, summary.state);
+		}
+		data.writeInt(summary.errorCount);
+		data.writeInt(summary.returnValueSize);
+		data.flush();
+
+		byte[] bytes = this.payload.toByteArray();
+		this.crc.reset();
+		this.crc.update(bytes, 0, bytes.length);
+		ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+		header.putInt(bytes.length).putInt((int) this.crc.getValue());
+		out.write(header.array());
+		out.write(bytes);
+	}
+
+	private static Entry readEntry(ByteBuffer record) {
+		int flags = record.get();
+		long messageKey = record.getLong();
+		String actionId = readString(record);
+		Descriptor descriptor = (flags & HAS_DESCRIPTOR) == 0 ? null : Descriptor.of(readString(record));
+		long paramHash = record.getLong();
+		String state = (flags & HAS_STATE) == 0 ? null : readString(record);
+		int errorCount = record.getInt();
+		int returnValueSize = record.getInt();
+		return new Entry(messageKey, (flags & FIRST) != 0, new ActionCorrelation.Summary(actionId, descriptor, paramHash, state, errorCount, returnValueSize));
+	}
+
+	/**
+	 * Strings are their UTF-8 length as an unsigned short, then the bytes, cut
+	 * at a character boundary so the record stays within {@link #MAX_PAYLOAD},
+	 * which the reader takes for corruption past it.
+	 */
+	private static void writeString(DataOutputStream data, String text) throws IOException {
+		byte[] bytes = text == null ? new byte[0] : text.getBytes(StandardCharsets.UTF_8);
+		int length = bytes.length;
+		if (length > MAX_STRING) {
+			length = MAX_STRING;
+			while (length > 0 && (bytes[length] & 0xc0) == 0x80) {
+				length--;
+			}
+		}
+		data.writeShort(length);
+		data.write(bytes, 0, length);
+	}
+
+	private static String readString(ByteBuffer record) {
+		int length = record.getShort() & 0xffff;
+		String text;
+		if (record.hasArray()) {
+			text = new String(record.array(), record.arrayOffset() + record.position(), length, StandardCharsets.UTF_8);
+		} else {
+			byte[] bytes = new byte[length];
+			record.duplicate().get(bytes);
+			text = new String(bytes, StandardCharsets.UTF_8);
+		}
+		record.position(record.position() + length);
+		return text;
+	}
+
+	private ByteBuffer readFully(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (this.log.read(buffer, position + buffer.position()) == -1) {
+				throw new IOException("Unexpected end of " + LOG_FILE);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Move what is left in the buffer to its start and read more of the log after it.
+	 *
+	 * @return the log position after what was read
+	 */
+	private long fill(ByteBuffer buffer, long position) throws IOException {
+		buffer.compact();
+		while (buffer.hasRemaining() && position < this.logEnd) {
+			int read = this.log.read(buffer, position);
+			if (read == -1) {
+				break;
+			}
+			position += read;
+		}
+		buffer.flip();
+		return position;
+	}
+}
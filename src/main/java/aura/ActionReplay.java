@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.codemagi.burp.BaseExtender;
+
+/**
+ * Replays the actions of one boxcarred Aura request one at a time, each in a
+ * request of its own that keeps the original aura.context, aura.token and
+ * headers.
+ *
+ * The requests go out concurrently on a bounded pool, so a boxcar takes about
+ * as long as its slowest action rather than the sum of all of them. An optional
+ * limit on requests per second paces them. How a request is sent is up to the
+ * {@link Sender}, so the engine runs the same against Burp or a plain socket.
+ */
+public class ActionReplay {
+	public static final int DEFAULT_THREADS = 32;
+	/** requests per second, 0 for no limit; the pool size already bounds the load */
+	public static final int DEFAULT_RATE = 0;
+	private static final int QUEUE_CAPACITY = 10000;
+	private static final int IDLE_SECONDS = 30;
+
+	private final ThreadPoolExecutor pool;
+	private final Object pacing = new Object();
+	private volatile long intervalNanos;
+	private long nextSlot = 0;
+
+	/**
+	 * Sends one complete HTTP request and returns the complete response.
+	 */
+	public interface Sender {
+		byte[] send(byte[] request) throws IOException;
+	}
+
+	/**
+	 * Told about each action as it completes, on a pool thread.
+	 */
+	public interface Listener {
+		void completed(Run run, Result result);
+
+		/**
+		 * Called once, after the last action completed or was cancelled.
+		 */
+		void finished(Run run);
+	}
+
+	/**
+	 * One action of the boxcar and the request that sends it alone.
+	 */
+	public static class Action {
+		public final int index;
+		public final String actionId;
+		/** null if the action had no descriptor */
+		public final Descriptor descriptor;
+		public final byte[] request;
+
+		Action(int index, String actionId, Descriptor descriptor, byte[] request) {
+			this.index = index;
+			this.actionId = actionId;
+			this.descriptor = descriptor;
+			this.request = request;
+		}
+	}
+
+	/**
+	 * The outcome of one replayed action.
+	 */
+	public static class Result {
+		public final Action action;
+		/** null if nothing came back */
+		public final byte[] response;
+		/** -1 if there was no status line */
+		public final int statusCode;
+		/** the state of the action in the response, null if not found */
+		public final String state;
+		public final long latencyNanos;
+		/** null on success */
+		public final String error;
+
+		Result(Action action, byte[] response, int statusCode, String state, long latencyNanos, String error) {
+			this.action = action;
+			this.response = response;
+			this.statusCode = statusCode;
+			this.state = state;
+			this.latencyNanos = latencyNanos;
+			this.error = error;
+		}
+
+		public int getResponseBodyLength() {
+			return this.response == null ? -1 : this.response.length - AuraDetector.getBodyOffset(this.response);
+		}
+	}
+
+	/**
+	 * A replay in progress.
+	 */
+	public static class Run {
+		public final List<Action> actions;
+		private final long startNanos = System.nanoTime();
+		private final AtomicInteger remaining;
+		private volatile long elapsedNanos = -1;
+		private volatile boolean cancelled = false;
+
+		Run(List<Action> actions) {
+			this.actions = actions;
+			this.remaining = new AtomicInteger(actions.size());
+		}
+
+		/**
+		 * Skip the actions that haven't been sent yet.
+		 */
+		public void cancel() {
+			this.cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return this.cancelled;
+		}
+
+		public int getCompleted() {
+			return this.actions.size() - this.remaining.get();
+		}
+
+		/**
+		 * @return the time from start to the last completed action, -1 while running
+		 */
+		public long getElapsedNanos() {
+			return this.elapsedNanos;
+		}
+	}
+
+	public ActionReplay(int threads, int ratePerSecond) {
+		this.pool = new ThreadPoolExecutor(threads, threads, IDLE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, "lightning-replay-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.pool.allowCoreThreadTimeOut(true);
+		setRate(ratePerSecond);
+	}
+
+	/**
+	 * Change the number of concurrent requests. Applies to actions not started yet.
+	 */
+	public void setThreads(int threads) {
+		threads = Math.max(1, threads);
+		if (threads > this.pool.getMaximumPoolSize()) {
+			this.pool.setMaximumPoolSize(threads);
+			this.pool.setCorePoolSize(threads);
+		} else {
+			this.pool.setCorePoolSize(threads);
+			this.pool.setMaximumPoolSize(threads);
+		}
+	}
+
+	public int getThreads() {
+		return this.pool.getMaximumPoolSize();
+	}
+
+	/**
+	 * @param ratePerSecond the most requests to start per second, 0 for no limit
+	 */
+	public void setRate(int ratePerSecond) {
+		this.intervalNanos = ratePerSecond <= 0 ? 0 : TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+	}
+
+	/**
+	 * Split a boxcarred request into one request per action. Each keeps every
+	 * byte of the original except the message parameter and Content-Length.
+	 *
+	 * @throws IOException if the request has no parsable message
+	 */
+	public static List<Action> split(byte[] request) throws IOException {
+		FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+		int start = params.getValueStart(FormBodyCodec.MESSAGE);
+		if (start == -1) {
+			throw new IOException("No message parameter in the request body");
+		}
+		int end = params.getValueEnd(FormBodyCodec.MESSAGE);
+		AuraMessage message = new AuraMessage(FormBodyCodec.decode(request, start, end));
+		List<Action> actions = new ArrayList<Action>(message.getActionList().size());
+		for (ActionRequest action : message.getActionList()) {
+			byte[] single = FormBodyCodec.replaceValue(request, start, end, message.getSingleActionBytes(action));
+			actions.add(new Action(actions.size(), action.id, action.getParsedDescriptor(), single));
+		}
+		return Collections.unmodifiableList(actions);
+	}
+
+	/**
+	 * Split the request and queue each action. Returns straight away.
+	 *
+	 * @throws IOException if the request has no parsable message
+	 */
+	public Run replay(byte[] request, Sender sender, Listener listener) throws IOException {
+		return replay(split(request), sender, listener);
+	}
+
+	public Run replay(List<Action> actions, final Sender sender, final Listener listener) {
+		final Run run = new Run(actions);
+		if (actions.isEmpty()) {
+			run.elapsedNanos = 0;
+			listener.finished(run);
+			return run;
+		}
+		for (final Action action : actions) {
+			try {
+				this.pool.execute(new Runnable() {
+					@Override
+					public void run() {
+						complete(run, send(run, action, sender), listener);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				complete(run, new Result(action, null, -1, null, 0, "Not sent, too many actions queued"), listener);
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Stop the pool, e.g. when the extension is unloaded. Queued actions are discarded.
+	 */
+	public void shutdown() {
+		this.pool.shutdownNow();
+	}
+
+	private Result send(Run run, Action action, Sender sender) {
+		if (run.isCancelled()) {
+			return new Result(action, null, -1, null, 0, "Cancelled");
+		}
+		try {
+			awaitSlot();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return new Result(action, null, -1, null, 0, "Cancelled");
+		}
+		// the run may have been cancelled while this action waited for its slot
+		if (run.isCancelled()) {
+			return new Result(action, null, -1, null, 0, "Cancelled");
+		}
+		long start = System.nanoTime();
+		byte[] response;
+		try {
+			response = sender.send(action.request);
+		} catch (IOException e) {
+			return new Result(action, null, -1, null, System.nanoTime() - start, e.toString());
+		} catch (RuntimeException e) {
+			BaseExtender.printStackTrace(e);
+			return new Result(action, null, -1, null, System.nanoTime() - start, e.toString());
+		}
+		long latency = System.nanoTime() - start;
+		if (response == null) {
+			return new Result(action, null, -1, null, latency, "No response");
+		}
+		return new Result(action, response, statusCode(response), actionState(response, action.actionId), latency, null);
+	}
+
+	private void complete(Run run, Result result, Listener listener) {
+		try {
+			listener.completed(run, result);
+		} catch (RuntimeException e) {
+			BaseExtender.printStackTrace(e);
+		}
+		if (run.remaining.decrementAndGet() == 0) {
+			run.elapsedNanos = System.nanoTime() - run.startNanos;
+			listener.finished(run);
+		}
+	}
+
+	/**
+	 * Wait for the next free slot under the rate limit. Slots are handed out in
+	 * order, one interval apart, so a burst is spread out instead of rejected.
+	 */
+	private void awaitSlot() throws InterruptedException {
+		long interval = this.intervalNanos;
+		if (interval == 0) {
+			return;
+		}
+		long wait;
+		synchronized (this.pacing) {
+			long now = System.nanoTime();
+			long slot = Math.max(this.nextSlot, now);
+			this.nextSlot = slot + interval;
+			wait = slot - now;
+		}
+		if (wait > 0) {
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+
+	/**
+	 * @return the code from an HTTP/1.x status line, -1 if there is none
+	 */
+	static int statusCode(byte[] response) {
+		int i = 0;
+		while (i < response.length && response[i] != ' ') {
+			i++;
+		}
+		int code = 0;
+		int digits = 0;
+		for (i++; i < response.length && digits < 3; i++, digits++) {
+			if (response[i] < '0' || response[i] > '9') {
+				return -1;
+			}
+			code = code * 10 + (response[i] - '0');
+		}
+		return digits == 3 ? code : -1;
+	}
+
+	private static String actionState(byte[] response, String actionId) {
+		if (!AuraDetector.isAuraResponse(response)) {
+			return null;
+		}
+		int offset = AuraDetector.getBodyOffset(response);
+		try {
+			AuraResponse parsed = new AuraResponse(response, offset, response.length - offset);
+			ActionResponse action = parsed.responseActionMap.get(actionId);
+			if (action == null && parsed.responseActionMap.size() == 1) {
+				action = parsed.responseActionMap.values().iterator().next();
+			}
+			return action == null ? null : action.state;
+		} catch (IOException e) {
+			// not a parsable Aura response, the status code will have to do
+			return null;
+		}
+	}
+}
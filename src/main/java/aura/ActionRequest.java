@@ -10,7 +10,6 @@ import com.codemagi.burp.BaseExtender;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 //TODO perhaps just parse each request directly into this, not this special descriptor thing.
@@ -32,10 +31,17 @@ public class ActionRequest {
 	public String calledController;
 	public String shortController;
 	public String calledMethod;
-	private ObjectMapper mapper = new ObjectMapper();
+	private Descriptor parsedDescriptor;
 	
 	// Actual object
 	public ObjectNode root;
+	
+	// position in the parent's actions array, and whether it changed since parsing
+	int index = -1;
+	boolean edited = false;
+	// the span of the params in the parent's source while they are not parsed yet
+	int paramsStart = -1;
+	int paramsEnd = -1;
 
 	public ActionRequest(ObjectNode node, AuraMessage parent){
 		this.root = node;
@@ -46,15 +52,14 @@ public class ActionRequest {
 		this.parent = parent;
 		
 		if(node.hasNonNull("descriptor")){
-			this.parseDescriptor();
-			this.descriptor = node.get("descriptor").asText();
+			this.setDescriptor(Descriptor.of(node.get("descriptor").asText()));
 		}
 		
 		if(node.hasNonNull("callingDescriptor")){
 			this.callingDescriptor = node.get("callingDescriptor").asText();
 		}
 		
-		if(node.hasNonNull("params")){
+		if(node.hasNonNull("params") && !node.get("params").isMissingNode()){
 			this.params = (ObjectNode)node.get("params");
 		}
 		
@@ -63,58 +68,62 @@ public class ActionRequest {
 		}
 	}
 	
-	private void parseDescriptor(){
-		String descriptor = this.root.get("descriptor").asText();
-		int controllerStart = descriptor.indexOf("//")+2; // 2 chars, need to add an extra one
-		int methodIndex = descriptor.indexOf('/',controllerStart);
-		int methodStart = descriptor.indexOf('$',methodIndex)+1;
-		
-		this.calledController = (String) descriptor.subSequence(controllerStart, methodIndex);
-		this.calledMethod = (String) descriptor.subSequence(methodStart, descriptor.length());
-		
-		int shortStart = descriptor.lastIndexOf(".",methodIndex);
-		if(shortStart == -1){
-			this.shortController = this.calledController;
-		} else {
-			shortStart++;
-			this.shortController = descriptor.substring(shortStart,methodIndex);
-		}
+	private void setDescriptor(Descriptor parsed){
+		this.parsedDescriptor = parsed;
+		this.descriptor = parsed.descriptor;
+		this.calledController = parsed.controller;
+		this.shortController = parsed.shortController;
+		this.calledMethod = parsed.method;
+	}
 
+	/**
+	 * @return the parsed descriptor, shared with every other action calling the same method
+	 */
+	public Descriptor getParsedDescriptor(){
+		return this.parsedDescriptor;
 	}
 
-	public ObjectNode getParams(){
+	/**
+	 * @return the params, parsed from the parent's source on first use and kept
+	 * in the tree so they can be edited in place
+	 */
+	public synchronized ObjectNode getParams(){
+		if(isDeferred()){
+			this.params = this.parent.parseParams(this.paramsStart, this.paramsEnd);
+			this.root.replace("params", this.params);
+		}
 		return (ObjectNode)this.root.get("params");
 	}
 	
+	/**
+	 * @return the params without keeping them in the tree if they were not parsed
+	 * yet, for callers that only read them
+	 */
+	public synchronized ObjectNode readParams(){
+		if(isDeferred()){
+			return this.parent.parseParams(this.paramsStart, this.paramsEnd);
+		}
+		return (ObjectNode)this.root.get("params");
+	}
+	
+	private boolean isDeferred(){
+		JsonNode current = this.root.get("params");
+		return this.paramsStart != -1 && current != null && current.isMissingNode();
+	}
+	
 	public void updateParams(ObjectNode newParams){
 		this.root.replace("params", newParams);
 		this.parent.updateActionRequest(this.id,this);
 	}
 	
 	public void updateController(String controllerName){
-		this.calledController = controllerName;
-		int controllerStart = this.descriptor.indexOf("//")+2;
-		String serviceCmpStr = this.descriptor.substring(0, controllerStart);
-		this.descriptor = serviceCmpStr + controllerName + "/ACTION$" + this.calledMethod;
-		
-		int methodIndex = this.descriptor.indexOf('/',controllerStart);
-		int shortStart = this.descriptor.lastIndexOf(".", methodIndex);
-		if (shortStart == -1){
-			this.shortController = this.calledController;
-		} else {
-			shortStart++;
-			this.shortController = this.descriptor.substring(shortStart,methodIndex);
-		}
-		
-		this.root.put("descriptor", descriptor);
+		this.setDescriptor(this.parsedDescriptor.withController(controllerName));
+		this.root.put("descriptor", this.descriptor);
 		this.parent.updateActionRequest(this.id, this);
 	}
 	
 	public void updateMethod(String methodName){
-		this.calledMethod = methodName;
-		int methodStart = this.descriptor.indexOf('$')+1;
-		this.descriptor = this.descriptor.substring(0, methodStart) + methodName;
-		
+		this.setDescriptor(this.parsedDescriptor.withMethod(methodName));
 		this.root.put("descriptor", this.descriptor);
 		this.parent.updateActionRequest(this.id,this);
 	}
@@ -122,16 +131,16 @@ public class ActionRequest {
 	public String getActionString(){
 		String minifiedParamStr = "";
 		try {
-			minifiedParamStr = mapper.writer().writeValueAsString(this.root.get("params"));
+			minifiedParamStr = JsonCodec.COMPACT_WRITER.writeValueAsString(this.readParams());
 		} catch (JsonProcessingException e) {
 			// TODO Auto-generated catch block
 			BaseExtender.printStackTrace(e);
-			return this.root.get("params").asText();
+			return this.readParams().asText();
 		}
 		return minifiedParamStr;	
 	}
 	
 	public String getParamString() throws JsonProcessingException{
-		return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(this.params);
+		return JsonCodec.PRETTY_WRITER.writeValueAsString(this.readParams());
 	}
 }
@@ -6,10 +6,10 @@
  */
 package aura;
 
+import java.io.IOException;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
@@ -19,10 +19,14 @@ public class ActionResponse {
 	@JsonProperty
 	public String state;
 	@JsonProperty
-	public JsonNode returnValue; // UGH can be Array or Object
+	private JsonNode returnValue; // UGH can be Array or Object
 	@JsonProperty
 	public ArrayNode error;
-	private ObjectMapper mapper = new ObjectMapper();
+
+	// set while returnValue is still an unparsed byte range of the response
+	private byte[] source;
+	private int returnValueOffset;
+	private int returnValueLength = -1;
 	
 	public ActionResponse(ObjectNode action){
 		if(action.hasNonNull("id")){
@@ -39,7 +43,103 @@ public class ActionResponse {
 		}
 	}
 	
-	public String getResponseString() throws JsonProcessingException{
-		return mapper.writerWithDefaultPrettyPrinter().writeValueAsString(returnValue);
+	public ActionResponse(String id, String state, ArrayNode error, JsonNode returnValue){
+		this.id = id;
+		this.state = state;
+		this.error = error;
+		this.returnValue = returnValue;
+	}
+
+	/**
+	 * Lazy variant: returnValue is the JSON in source[offset, offset+length) and
+	 * is only parsed by the first call to {@link #getReturnValue()}.
+	 */
+	public ActionResponse(String id, String state, ArrayNode error, byte[] source, int offset, int length){
+		this(id, state, error, null);
+		this.source = source;
+		this.returnValueOffset = offset;
+		this.returnValueLength = length;
+	}
+
+	public synchronized JsonNode getReturnValue() throws IOException{
+		if(this.source != null){
+			this.returnValue = JsonCodec.LENIENT_READER.readTree(this.source, this.returnValueOffset, this.returnValueLength);
+			this.source = null;
+		}
+		return this.returnValue;
+	}
+
+	/**
+	 * @return the size in bytes of the raw returnValue JSON, or -1 if it is not known
+	 */
+	public int getReturnValueLength(){
+		return this.returnValueLength;
+	}
+
+	/**
+	 * @return true if neither returnValue has been parsed yet and their JSON is
+	 * byte for byte the same, which is much cheaper to find out than by parsing
+	 */
+	public boolean rawReturnValueEquals(ActionResponse other){
+		byte[] source = getSource();
+		byte[] otherSource = other.getSource();
+		if(source == null || otherSource == null || this.returnValueLength != other.returnValueLength){
+			return false;
+		}
+		for(int i = 0; i < this.returnValueLength; i++){
+			if(source[this.returnValueOffset + i] != otherSource[other.returnValueOffset + i]){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private synchronized byte[] getSource(){
+		return this.source;
+	}
+
+	/**
+	 * Reads raw returnValue JSON, see {@link ActionResponse#readRaw(RawReader)}.
+	 */
+	public interface RawReader<T> {
+		T read(byte[] json, int offset, int length) throws IOException;
+	}
+
+	/**
+	 * Hand the raw returnValue JSON to the reader without parsing it. If it has
+	 * been parsed already, the reader gets the tree written back compactly.
+	 */
+	public <T> T readRaw(RawReader<T> reader) throws IOException{
+		byte[] source;
+		JsonNode parsed;
+		synchronized(this){
+			source = this.source;
+			parsed = this.returnValue;
+		}
+		if(source != null){
+			return reader.read(source, this.returnValueOffset, this.returnValueLength);
+		}
+		byte[] json = JsonCodec.COMPACT_WRITER.writeValueAsBytes(parsed);
+		return reader.read(json, 0, json.length);
+	}
+
+	/**
+	 * @return a pager over the pretty-printed returnValue, reading the response
+	 * bytes if it has not been parsed yet, and parsing them only to jump to a path
+	 */
+	public synchronized JsonPager getPager() throws IOException{
+		if(this.source != null){
+			return JsonPager.of(this.source, this.returnValueOffset, this.returnValueLength, true, new JsonPager.TreeSource() {
+				@Override
+				public JsonNode getTree() throws IOException {
+					return getReturnValue();
+				}
+			});
+		}
+		return JsonPager.of(this.returnValue);
+	}
+
+	public String getResponseString() throws IOException{
+		return JsonCodec.PRETTY_WRITER.writeValueAsString(getReturnValue());
 	}
 }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+/**
+ * Byte-level checks deciding whether a raw HTTP message is Aura traffic.
+ *
+ * Burp calls isEnabled on every editor tab each time a message is selected, so
+ * these methods only scan the bytes in place: nothing is decoded, copied or parsed.
+ */
+public class AuraDetector {
+	public static final String AURA_INDICATOR = "aura.token";
+	public static final String AURA_RESPONSE_START = "while(1)";
+	private static final String AURA_PATH = "/aura";
+	/** Lightning application bundles, e.g. /s/sfsites/l/{...}/app.js */
+	private static final String LIGHTNING_PATH = "/l/";
+	private static final String SCRIPT_CONTENT_TYPE = "javascript";
+	private static final String CONTENT_TYPE = "Content-Type";
+	private static final String FORM_CONTENT_TYPE = "x-www-form-urlencoded";
+	private static final String JSON_CONTENT_TYPE = "json";
+
+	private AuraDetector() {
+	}
+
+	/**
+	 * @param content a raw HTTP request
+	 * @param checkEndpoint also require the request path to contain "/aura"
+	 * @return true if the request carries an aura.token parameter (and targets an Aura endpoint)
+	 */
+	public static boolean isAuraRequest(byte[] content, boolean checkEndpoint) {
+		if (content == null || content.length == 0) {
+			return false;
+		}
+		if (checkEndpoint && !isAuraEndpoint(content)) {
+			return false;
+		}
+		return hasParameter(content, AURA_INDICATOR);
+	}
+
+	/**
+	 * @param content a raw HTTP response
+	 * @return true if the response is JSON and its body starts with while(1)
+	 */
+	public static boolean isAuraResponse(byte[] content) {
+		if (content == null || content.length == 0) {
+			return false;
+		}
+		int bodyOffset = getBodyOffset(content);
+		int contentType = findHeaderValue(content, bodyOffset, CONTENT_TYPE);
+		if (contentType == -1 || indexOfIgnoreCase(content, contentType, lineEnd(content, contentType), JSON_CONTENT_TYPE) == -1) {
+			return false;
+		}
+		return regionMatches(content, bodyOffset, content.length, AURA_RESPONSE_START);
+	}
+
+	/**
+	 * @return true if the request path (without the query string) contains "/aura"
+	 */
+	public static boolean isAuraEndpoint(byte[] content) {
+		return pathContains(content, AURA_PATH);
+	}
+
+	/**
+	 * @return true if the request is for an Aura endpoint or framework file, or a Lightning application bundle
+	 */
+	public static boolean isAuraResource(byte[] content) {
+		return pathContains(content, AURA_PATH) || pathContains(content, LIGHTNING_PATH);
+	}
+
+	/**
+	 * @param content a raw HTTP response
+	 * @return true if the response is JavaScript or JSON
+	 */
+	public static boolean isScriptOrJson(byte[] content) {
+		if (content == null || content.length == 0) {
+			return false;
+		}
+		int bodyOffset = getBodyOffset(content);
+		int contentType = findHeaderValue(content, bodyOffset, CONTENT_TYPE);
+		if (contentType == -1) {
+			return false;
+		}
+		int end = lineEnd(content, contentType);
+		return indexOfIgnoreCase(content, contentType, end, SCRIPT_CONTENT_TYPE) != -1
+				|| indexOfIgnoreCase(content, contentType, end, JSON_CONTENT_TYPE) != -1;
+	}
+
+	private static boolean pathContains(byte[] content, String needle) {
+		int targetStart = indexOf(content, 0, lineEnd(content, 0), (byte) ' ');
+		if (targetStart == -1) {
+			return false;
+		}
+		targetStart++;
+		int targetEnd = indexOf(content, targetStart, lineEnd(content, 0), (byte) ' ');
+		if (targetEnd == -1) {
+			targetEnd = lineEnd(content, 0);
+		}
+		int pathStart = targetStart;
+		// absolute-form targets (proxy requests) carry the scheme and host first
+		int scheme = indexOf(content, targetStart, targetEnd, (byte) ':');
+		if (scheme != -1 && scheme + 2 < targetEnd && content[scheme + 1] == '/' && content[scheme + 2] == '/') {
+			pathStart = indexOf(content, scheme + 3, targetEnd, (byte) '/');
+			if (pathStart == -1) {
+				return false;
+			}
+		}
+		int pathEnd = indexOf(content, pathStart, targetEnd, (byte) '?');
+		if (pathEnd == -1) {
+			pathEnd = targetEnd;
+		}
+		return indexOf(content, pathStart, pathEnd, needle) != -1;
+	}
+
+	/**
+	 * Look for a parameter in the query string and, for form-encoded requests, in the body.
+	 *
+	 * @param content a raw HTTP request
+	 * @param name the (unencoded, ASCII) parameter name
+	 * @return true if the parameter is present
+	 */
+	public static boolean hasParameter(byte[] content, String name) {
+		if (content == null || content.length == 0) {
+			return false;
+		}
+		int firstLineEnd = lineEnd(content, 0);
+		int query = indexOf(content, 0, firstLineEnd, (byte) '?');
+		if (query != -1) {
+			int queryEnd = indexOf(content, query, firstLineEnd, (byte) ' ');
+			if (findParameter(content, query + 1, queryEnd == -1 ? firstLineEnd : queryEnd, name) != -1) {
+				return true;
+			}
+		}
+		int bodyOffset = getBodyOffset(content);
+		if (bodyOffset >= content.length) {
+			return false;
+		}
+		int contentType = findHeaderValue(content, bodyOffset, CONTENT_TYPE);
+		if (contentType != -1 && indexOfIgnoreCase(content, contentType, lineEnd(content, contentType), FORM_CONTENT_TYPE) == -1) {
+			return false;
+		}
+		return findParameter(content, bodyOffset, content.length, name) != -1;
+	}
+
+	/**
+	 * Find a name=value pair in an &amp;-separated region.
+	 *
+	 * @return the offset of the parameter name, or -1
+	 */
+	public static int findParameter(byte[] content, int start, int end, String name) {
+		int pos = start;
+		while (pos < end) {
+			int pairEnd = indexOf(content, pos, end, (byte) '&');
+			if (pairEnd == -1) {
+				pairEnd = end;
+			}
+			if (regionMatches(content, pos, pairEnd, name)) {
+				int after = pos + name.length();
+				if (after == pairEnd || content[after] == '=') {
+					return pos;
+				}
+			}
+			pos = pairEnd + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the offset of the first body byte, or content.length if there is no body
+	 */
+	public static int getBodyOffset(byte[] content) {
+		for (int i = 0; i < content.length; i++) {
+			if (content[i] != '\n') {
+				continue;
+			}
+			if (i + 1 < content.length && content[i + 1] == '\n') {
+				return i + 2;
+			}
+			if (i + 2 < content.length && content[i + 1] == '\r' && content[i + 2] == '\n') {
+				return i + 3;
+			}
+		}
+		return content.length;
+	}
+
+	/**
+	 * @return the offset of the (left-trimmed) value of the named header, or -1
+	 */
+	public static int findHeaderValue(byte[] content, int bodyOffset, String name) {
+		int pos = lineEnd(content, 0) + 1;
+		while (pos < bodyOffset) {
+			int end = lineEnd(content, pos);
+			if (end - pos > name.length() && content[pos + name.length()] == ':'
+					&& regionMatchesIgnoreCase(content, pos, name)) {
+				int value = pos + name.length() + 1;
+				while (value < end && (content[value] == ' ' || content[value] == '\t')) {
+					value++;
+				}
+				return value;
+			}
+			pos = end + 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the offset of the next CR or LF at or after start, or content.length
+	 */
+	public static int lineEnd(byte[] content, int start) {
+		for (int i = start; i < content.length; i++) {
+			if (content[i] == '\r' || content[i] == '\n') {
+				return i;
+			}
+		}
+		return content.length;
+	}
+
+	private static int indexOf(byte[] content, int start, int end, byte b) {
+		for (int i = start; i < end; i++) {
+			if (content[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOf(byte[] content, int start, int end, String needle) {
+		for (int i = start; i <= end - needle.length(); i++) {
+			if (regionMatches(content, i, end, needle)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static int indexOfIgnoreCase(byte[] content, int start, int end, String needle) {
+		for (int i = start; i <= end - needle.length(); i++) {
+			if (regionMatchesIgnoreCase(content, i, needle)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean regionMatches(byte[] content, int start, int end, String expected) {
+		if (end - start < expected.length()) {
+			return false;
+		}
+		for (int i = 0; i < expected.length(); i++) {
+			if (content[start + i] != expected.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean regionMatchesIgnoreCase(byte[] content, int start, String expected) {
+		if (content.length - start < expected.length()) {
+			return false;
+		}
+		for (int i = 0; i < expected.length(); i++) {
+			if (toLower(content[start + i]) != toLower((byte) expected.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static byte toLower(byte b) {
+		return (b >= 'A' && b <= 'Z') ? (byte) (b + ('a' - 'A')) : b;
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Compares the actions of two Aura messages, e.g. the same page loaded as two
+ * users for an access control check.
+ *
+ * Actions are paired by id, or where the ids differ (as they do across
+ * sessions) by descriptor, in order. For each pair the params, state, error and
+ * returnValue are compared with {@link JsonDiff}, so the report lists only the
+ * paths that changed. returnValues that are byte for byte the same are not
+ * parsed at all.
+ */
+public class AuraDiff {
+
+	/**
+	 * One action as seen in one message: the request half, the response half, or both.
+	 */
+	private static class Side {
+		final String id;
+		/** null if only the response was seen */
+		final ActionRequest request;
+		/** null if there was no response for the action */
+		final ActionResponse response;
+
+		Side(String id, ActionRequest request, ActionResponse response) {
+			this.id = id;
+			this.request = request;
+			this.response = response;
+		}
+
+		String getDescriptor() {
+			return this.request == null ? null : this.request.descriptor;
+		}
+
+		String getPairingKey() {
+			return this.request == null ? "" : this.request.descriptor;
+		}
+
+		String describe() {
+			Descriptor descriptor = this.request == null ? null : this.request.getParsedDescriptor();
+			return this.id + (descriptor == null ? "" : " " + descriptor.shortController + "." + descriptor.method);
+		}
+	}
+
+	private AuraDiff() {
+	}
+
+	/**
+	 * Either half of either side may be null, e.g. to compare responses only.
+	 *
+	 * @return a report with the changes of every pair of actions that differ,
+	 *         and the actions only one side has
+	 */
+	public static ObjectNode diff(AuraMessage beforeRequest, AuraResponse beforeResponse, AuraMessage afterRequest,
+			AuraResponse afterResponse) throws IOException {
+		List<Side> before = sides(beforeRequest, beforeResponse);
+		List<Side> after = sides(afterRequest, afterResponse);
+
+		// pair by id first
+		List<Side[]> pairs = new ArrayList<Side[]>();
+		Map<String, Side> afterById = new HashMap<String, Side>();
+		for (Side side : after) {
+			afterById.put(side.id, side);
+		}
+		List<Side> unpairedBefore = new ArrayList<Side>();
+		for (Side side : before) {
+			Side other = afterById.get(side.id);
+			if (other != null && sameDescriptor(side, other)) {
+				pairs.add(new Side[] { side, other });
+				afterById.remove(side.id);
+			} else {
+				unpairedBefore.add(side);
+			}
+		}
+		// then by descriptor, in the order the actions appear; responses without
+		// their request have no descriptor and are simply paired in order
+		Map<String, ArrayDeque<Side>> afterByDescriptor = new HashMap<String, ArrayDeque<Side>>();
+		for (Side side : after) {
+			if (afterById.containsKey(side.id)) {
+				ArrayDeque<Side> queue = afterByDescriptor.get(side.getPairingKey());
+				if (queue == null) {
+					queue = new ArrayDeque<Side>();
+					afterByDescriptor.put(side.getPairingKey(), queue);
+				}
+				queue.add(side);
+			}
+		}
+		ArrayNode onlyBefore = JsonNodeFactory.instance.arrayNode();
+		for (Side side : unpairedBefore) {
+			ArrayDeque<Side> queue = afterByDescriptor.get(side.getPairingKey());
+			Side other = queue == null ? null : queue.poll();
+			if (other == null) {
+				onlyBefore.add(side.describe());
+			} else {
+				pairs.add(new Side[] { side, other });
+				afterById.remove(other.id);
+			}
+		}
+		ArrayNode onlyAfter = JsonNodeFactory.instance.arrayNode();
+		for (Side side : after) {
+			if (afterById.containsKey(side.id)) {
+				onlyAfter.add(side.describe());
+			}
+		}
+
+		ArrayNode changed = JsonNodeFactory.instance.arrayNode();
+		for (Side[] pair : pairs) {
+			ObjectNode changes = compare(pair[0], pair[1]);
+			if (changes.size() > 0) {
+				ObjectNode entry = changed.addObject();
+				entry.put(JsonDiff.BEFORE, pair[0].describe());
+				entry.put(JsonDiff.AFTER, pair[1].describe());
+				entry.set("changes", changes);
+			}
+		}
+
+		ObjectNode report = JsonNodeFactory.instance.objectNode();
+		report.put("summary", changed.size() + " of " + pairs.size() + " paired actions differ, " + onlyBefore.size()
+				+ " only before, " + onlyAfter.size() + " only after");
+		report.set("changed", changed);
+		report.set("onlyBefore", onlyBefore);
+		report.set("onlyAfter", onlyAfter);
+		return report;
+	}
+
+	private static ObjectNode compare(Side before, Side after) throws IOException {
+		ObjectNode changes = JsonNodeFactory.instance.objectNode();
+		if (before.request != null && after.request != null) {
+			JsonDiff.diff("/params", before.request.readParams(), after.request.readParams(), changes);
+		}
+		if (before.response != null || after.response != null) {
+			JsonDiff.diff("/state", state(before.response), state(after.response), changes);
+			JsonDiff.diff("/error", before.response == null ? null : before.response.error,
+					after.response == null ? null : after.response.error, changes);
+			// most returnValues are the same for both users, skip parsing those
+			if (before.response == null || after.response == null
+					|| !before.response.rawReturnValueEquals(after.response)) {
+				JsonDiff.diff("/returnValue", returnValue(before.response), returnValue(after.response), changes);
+			}
+		}
+		return changes;
+	}
+
+	private static List<Side> sides(AuraMessage request, AuraResponse response) {
+		List<Side> sides = new ArrayList<Side>();
+		Map<String, ActionResponse> responses = response == null ? new HashMap<String, ActionResponse>()
+				: new HashMap<String, ActionResponse>(response.responseActionMap);
+		if (request != null) {
+			for (ActionRequest action : request.getActionList()) {
+				sides.add(new Side(action.id, action, responses.remove(action.id)));
+			}
+		}
+		if (response != null) {
+			// responses to actions the request didn't have, e.g. when only responses are compared
+			for (ActionResponse action : response.responseActionMap.values()) {
+				if (responses.containsKey(action.id)) {
+					sides.add(new Side(action.id, null, action));
+				}
+			}
+		}
+		return sides;
+	}
+
+	private static boolean sameDescriptor(Side before, Side after) {
+		return before.getDescriptor() == null || after.getDescriptor() == null
+				|| before.getDescriptor().equals(after.getDescriptor());
+	}
+
+	private static JsonNode state(ActionResponse response) {
+		return response == null || response.state == null ? null : TextNode.valueOf(response.state);
+	}
+
+	private static JsonNode returnValue(ActionResponse response) throws IOException {
+		return response == null ? null : response.getReturnValue();
+	}
+}
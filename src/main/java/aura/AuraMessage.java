@@ -6,31 +6,145 @@
  */
 package aura;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.MissingNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class AuraMessage {
-	private ObjectMapper mapper = new ObjectMapper();
 	public ArrayNode actions;
-	public Map<String,ActionRequest> actionMap = new HashMap<String,ActionRequest>();
+	public Map<String,ActionRequest> actionMap = new LinkedHashMap<String,ActionRequest>();
 	public ObjectNode auraMessage;
 	private boolean edited = false;
+	private List<ActionRequest> actionList = new ArrayList<ActionRequest>();
+	
+	// the JSON this message was parsed from, and the span of each action in it,
+	// so that unchanged actions can be written back byte for byte
+	private byte[] source;
+	private int[] actionStarts;
+	private int[] actionEnds;
+	// the span of the params object of each action, -1 if it was parsed with the action
+	private int[] paramsStarts;
+	private int[] paramsEnds;
 	
 	public AuraMessage(){
 	}
 	
 	public AuraMessage(String jsonString) throws JsonProcessingException, IOException {
-		JsonNode parsedNode = mapper.readTree(jsonString);
-		this.auraMessage = (ObjectNode)parsedNode;
+		this((ObjectNode)JsonCodec.READER.readTree(jsonString));
+	}
+
+	/**
+	 * Wrap an already parsed message. The node is used (and edited) in place.
+	 */
+	public AuraMessage(ObjectNode parsedNode) {
+		init(parsedNode);
+	}
+	
+	/**
+	 * Parse a message from its (URL-decoded) JSON, remembering where each action
+	 * starts and ends so that {@link #getAuraRequestBytes()} only has to rewrite
+	 * the actions that were edited.
+	 * 
+	 * The params of each action are only skipped over: the message keeps a
+	 * placeholder and their span, and {@link ActionRequest#getParams()} parses
+	 * them from these bytes when they are first asked for.
+	 */
+	public AuraMessage(byte[] json) throws JsonProcessingException, IOException {
+		Stats.Timer timer = Stats.start(Stats.Metric.MESSAGE_PARSE);
+		List<int[]> spans = new ArrayList<int[]>();
+		List<int[]> paramSpans = new ArrayList<int[]>();
+		ObjectNode root = JsonNodeFactory.instance.objectNode();
+		JsonParser parser = JsonCodec.getFactory().createParser(json);
+		try {
+			if(parser.nextToken() != JsonToken.START_OBJECT){
+				throw new JsonParseException(parser, "Aura message is not a JSON object");
+			}
+			while(parser.nextToken() == JsonToken.FIELD_NAME){
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if("actions".equals(field) && value == JsonToken.START_ARRAY){
+					ArrayNode actionArray = root.putArray(field);
+					while(parser.nextToken() != JsonToken.END_ARRAY){
+						int start = (int)parser.getTokenLocation().getByteOffset();
+						if(parser.currentToken() != JsonToken.START_OBJECT){
+							actionArray.add(JsonCodec.READER.<JsonNode>readTree(parser));
+							spans.add(null);
+							paramSpans.add(null);
+							continue;
+						}
+						ObjectNode action = actionArray.addObject();
+						int[] paramSpan = null;
+						while(parser.nextToken() == JsonToken.FIELD_NAME){
+							String name = parser.getCurrentName();
+							if(parser.nextToken() == JsonToken.START_OBJECT && "params".equals(name)){
+								int paramsStart = (int)parser.getTokenLocation().getByteOffset();
+								parser.skipChildren();
+								paramSpan = new int[]{paramsStart, (int)parser.getTokenLocation().getByteOffset() + 1};
+								action.set(name, MissingNode.getInstance());
+							} else {
+								if("params".equals(name)){
+									paramSpan = null;
+								}
+								action.set(name, JsonCodec.READER.<JsonNode>readTree(parser));
+							}
+						}
+						// the parser is left on the closing brace of the action
+						spans.add(new int[]{start, (int)parser.getTokenLocation().getByteOffset() + 1});
+						paramSpans.add(paramSpan);
+					}
+				} else {
+					root.set(field, JsonCodec.READER.<JsonNode>readTree(parser));
+				}
+			}
+		} finally {
+			parser.close();
+		}
+		
+		this.source = json;
+		this.actionStarts = new int[spans.size()];
+		this.actionEnds = new int[spans.size()];
+		this.paramsStarts = new int[spans.size()];
+		this.paramsEnds = new int[spans.size()];
+		for(int i = 0; i < spans.size(); i++){
+			int[] span = spans.get(i);
+			this.actionStarts[i] = span == null ? -1 : span[0];
+			this.actionEnds[i] = span == null ? -1 : span[1];
+			int[] paramSpan = paramSpans.get(i);
+			this.paramsStarts[i] = paramSpan == null ? -1 : paramSpan[0];
+			this.paramsEnds[i] = paramSpan == null ? -1 : paramSpan[1];
+		}
+		init(root);
+		Stats.stop(timer, json.length);
+	}
+	
+	private AuraMessage(ObjectNode parsedNode, AuraMessage original) {
+		this.source = original.source;
+		this.actionStarts = original.actionStarts;
+		this.actionEnds = original.actionEnds;
+		this.paramsStarts = original.paramsStarts;
+		this.paramsEnds = original.paramsEnds;
+		init(parsedNode);
+	}
+	
+	private void init(ObjectNode parsedNode) {
+		this.auraMessage = parsedNode;
 
 		if(this.auraMessage.has("actions")){
 			this.actions = (ArrayNode)this.auraMessage.get("actions");
@@ -39,14 +153,48 @@ public class AuraMessage {
 			while(iter.hasNext()){
 				ObjectNode next = (ObjectNode)iter.next();	
 				ActionRequest nextAction = new ActionRequest(next,this);
+				nextAction.index = actionList.size();
+				if(this.paramsStarts != null && nextAction.index < this.paramsStarts.length){
+					nextAction.paramsStart = this.paramsStarts[nextAction.index];
+					nextAction.paramsEnd = this.paramsEnds[nextAction.index];
+				}
+				actionList.add(nextAction);
 				actionMap.put(nextAction.id, nextAction);
 			}
 		}
 	}
+	
+	/**
+	 * @return an unedited, independent copy sharing only the (immutable) source bytes
+	 */
+	public AuraMessage copy() {
+		return new AuraMessage(this.auraMessage.deepCopy(), this);
+	}
+	
+	/**
+	 * Parse the params of an action from the source bytes.
+	 */
+	ObjectNode parseParams(int start, int end) {
+		try {
+			return (ObjectNode)JsonCodec.READER.readTree(this.source, start, end - start);
+		} catch (IOException e) {
+			// these bytes were parsed once already
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	/**
+	 * Parse the params that were not asked for yet, before writing the whole tree.
+	 */
+	private void parseAllParams() {
+		for(ActionRequest next : this.actionList){
+			next.getParams();
+		}
+	}
 
 	@Deprecated
 	public void parseRequest(String jsonString) throws JsonProcessingException, IOException{
-		JsonNode parsedNode = mapper.readTree(jsonString);
+		JsonNode parsedNode = JsonCodec.READER.readTree(jsonString);
 		this.auraMessage = (ObjectNode)parsedNode;
 
 		if(this.auraMessage.has("actions")){
@@ -63,31 +211,101 @@ public class AuraMessage {
 	
 	public void updateActionRequest(String id, ActionRequest newActionRequest){
 		this.edited = true;
+		newActionRequest.edited = true;
 		actionMap.put(id, newActionRequest);
 	}
 	
 	public void parseResponse(String jsonString) throws JsonProcessingException, IOException{
-		ObjectMapper om = new ObjectMapper();
-		om.readTree(jsonString);
+		JsonCodec.READER.readTree(jsonString);
 	}
 
 	public String getAuraRequest() throws JsonProcessingException{
-		if(this.edited){
-			JsonNodeFactory factory = JsonNodeFactory.instance;
-			ArrayNode newActions = new ArrayNode(factory);
-			Iterator<String> actionIter = this.actionMap.keySet().iterator();
-			while(actionIter.hasNext()){
-				ActionRequest nextAr = this.actionMap.get(actionIter.next());
-				newActions.add(nextAr.root);
+		return new String(getAuraRequestBytes(), StandardCharsets.UTF_8);
+	}
+	
+	/**
+	 * Serialize the message. Actions are edited in place in the actions array, so
+	 * their original order is kept.
+	 * 
+	 * If the message was parsed from bytes, an unedited message is returned as is
+	 * and an edited one is the original bytes with only the edited actions
+	 * rewritten, keeping the formatting of everything else.
+	 */
+	public byte[] getAuraRequestBytes() throws JsonProcessingException{
+		if(this.source == null || this.actions == null || this.actions.size() != this.actionStarts.length){
+			parseAllParams();
+			return JsonCodec.COMPACT_WRITER.writeValueAsBytes(this.auraMessage);
+		}
+		if(!this.edited){
+			return this.source;
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream(this.source.length + 256);
+		int pos = 0;
+		for(ActionRequest next : this.actionList){
+			if(!next.edited){
+				continue;
 			}
-			this.auraMessage.replace("actions", newActions);
+			int start = this.actionStarts[next.index];
+			if(start == -1 || next.root != this.actions.get(next.index)){
+				// the actions were restructured, the spans no longer apply
+				parseAllParams();
+				return JsonCodec.COMPACT_WRITER.writeValueAsBytes(this.auraMessage);
+			}
+			out.write(this.source, pos, start - pos);
+			next.getParams();
+			byte[] action = JsonCodec.COMPACT_WRITER.writeValueAsBytes(next.root);
+			out.write(action, 0, action.length);
+			pos = this.actionEnds[next.index];
 		}
-		return mapper.writer().writeValueAsString(this.auraMessage);
+		out.write(this.source, pos, this.source.length - pos);
+		return out.toByteArray();
 	}
 	
+	/**
+	 * Serialize a message holding only the given action, e.g. to send it on its
+	 * own. If the message was parsed from bytes and the action is unedited, the
+	 * action and everything around the actions array are copied byte for byte.
+	 */
+	public byte[] getSingleActionBytes(ActionRequest action) throws JsonProcessingException{
+		int count = this.actionStarts == null ? 0 : this.actionStarts.length;
+		if(this.source != null && !action.edited && count > 0 && this.actions.size() == count
+				&& action.index >= 0 && action.root == this.actions.get(action.index)
+				&& this.actionStarts[0] != -1 && this.actionEnds[count - 1] != -1 && this.actionStarts[action.index] != -1){
+			int prefixEnd = this.actionStarts[0];
+			int suffixStart = this.actionEnds[count - 1];
+			int start = this.actionStarts[action.index];
+			int length = this.actionEnds[action.index] - start;
+			byte[] out = new byte[prefixEnd + length + this.source.length - suffixStart];
+			System.arraycopy(this.source, 0, out, 0, prefixEnd);
+			System.arraycopy(this.source, start, out, prefixEnd, length);
+			System.arraycopy(this.source, suffixStart, out, prefixEnd + length, this.source.length - suffixStart);
+			return out;
+		}
+		// a shallow copy of the message with a one-action array, nothing is edited in place
+		action.getParams();
+		ObjectNode single = JsonNodeFactory.instance.objectNode();
+		Iterator<Map.Entry<String, JsonNode>> fields = this.auraMessage.fields();
+		while(fields.hasNext()){
+			Map.Entry<String, JsonNode> field = fields.next();
+			if("actions".equals(field.getKey())){
+				single.putArray("actions").add(action.root);
+			} else {
+				single.set(field.getKey(), field.getValue());
+			}
+		}
+		return JsonCodec.COMPACT_WRITER.writeValueAsBytes(single);
+	}
+
+	/**
+	 * @return the actions in the order they appear in the message
+	 */
+	public List<ActionRequest> getActionList(){
+		return Collections.unmodifiableList(this.actionList);
+	}
+
 	public ObjectNode parseParamString(String jsonString) throws JsonProcessingException, IOException{
-		ObjectMapper om = new ObjectMapper();
-		ObjectNode res = (ObjectNode)om.readTree(jsonString);
+		ObjectNode res = (ObjectNode)JsonCodec.READER.readTree(jsonString);
 		return res;
 	}
 	
@@ -7,22 +7,30 @@
 package aura;
 
 import java.io.IOException;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
 public class AuraResponse {
-	private ObjectMapper mapper = new ObjectMapper();
 	public ArrayNode actions;
-	public Map<String, ActionResponse> responseActionMap = new HashMap<String,ActionResponse>();
+	public Map<String, ActionResponse> responseActionMap = new LinkedHashMap<String,ActionResponse>();
 	public ObjectNode auraResponse;
 	
+	// set when the streaming parse hit an error, see getUnparsed()
+	private byte[] unparsed;
+	private int unparsedOffset;
+	private int unparsedEnd;
+	private String parseError;
+	
 	public AuraResponse(){
 		
 	}
@@ -31,7 +39,7 @@ public class AuraResponse {
 		// skip past the while(1);
 		jsonString = jsonString.substring(jsonString.indexOf(';')+1,jsonString.length());
 		
-		JsonNode result = mapper.readTree(jsonString);
+		JsonNode result = JsonCodec.READER.readTree(jsonString);
 		this.auraResponse = (ObjectNode)result;
 		if(result.hasNonNull("actions")){
 			this.actions = (ArrayNode)result.get("actions");
@@ -44,4 +52,208 @@ public class AuraResponse {
 		}
 		
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Streaming parse of a response body, straight from the message bytes.
+	 *
+	 * Only the id, state and error of each action are read here. Every returnValue
+	 * is skipped over and recorded as a byte range of content, to be turned into a
+	 * tree by {@link ActionResponse#getReturnValue()} when it is first needed. The
+	 * context, events and other top-level members are skipped entirely, so actions
+	 * and auraResponse stay null in this mode.
+	 *
+	 * The parse is lenient: function literals are read as strings (see
+	 * {@link FunctionLiterals}) and comments, single quotes and the like are
+	 * accepted. If part of the actions array still can't be parsed, the actions
+	 * read so far are kept, parsing resumes at the next action, and the raw text
+	 * from the first error on is available from {@link #getUnparsed()}.
+	 *
+	 * @param content buffer holding the response body, referenced (not copied)
+	 * @param offset start of the body, including any while(1); prefix
+	 * @param length length of the body
+	 */
+	public AuraResponse(byte[] content, int offset, int length) throws JsonProcessingException, IOException{
+		Stats.Timer timer = Stats.start(Stats.Metric.RESPONSE_PARSE);
+		int start = skipPrefix(content, offset, offset + length);
+		int end = offset + length;
+		byte[] quoted = FunctionLiterals.quote(content, start, end);
+		if(quoted != null){
+			content = quoted;
+			start = 0;
+			end = quoted.length;
+		}
+		JsonParser parser = JsonCodec.getLenientFactory().createParser(content, start, end - start);
+		boolean actionsDone = false;
+		try {
+			if(parser.nextToken() != JsonToken.START_OBJECT){
+				throw new JsonParseException(parser, "Aura response is not a JSON object");
+			}
+			while(parser.nextToken() == JsonToken.FIELD_NAME){
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if("actions".equals(field) && value == JsonToken.START_ARRAY){
+					while(parser.nextToken() == JsonToken.START_OBJECT){
+						ActionResponse nextActionResponse = readAction(parser, content, start);
+						responseActionMap.put(nextActionResponse.id, nextActionResponse);
+					}
+					actionsDone = true;
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} catch(JsonProcessingException e){
+			long errorOffset = e.getLocation() == null ? -1 : e.getLocation().getByteOffset();
+			this.unparsed = content;
+			this.unparsedOffset = errorOffset < 0 ? start : start + (int)errorOffset;
+			this.unparsedEnd = end;
+			this.parseError = e.getOriginalMessage();
+			if(!actionsDone){
+				// the error is reported just past the character that broke the parse
+				resync(content, Math.max(start, this.unparsedOffset - 1), end);
+			}
+			if(responseActionMap.isEmpty()){
+				throw e;
+			}
+		} finally {
+			parser.close();
+			Stats.stop(timer, length);
+		}
+	}
+
+	/**
+	 * @return the raw text from the point where parsing first failed, or null if the whole body parsed
+	 */
+	public byte[] getUnparsed(){
+		if(this.unparsed == null){
+			return null;
+		}
+		return Arrays.copyOfRange(this.unparsed, this.unparsedOffset, this.unparsedEnd);
+	}
+
+	/**
+	 * @return the parser message for the first error, or null if the whole body parsed
+	 */
+	public String getParseError(){
+		return this.parseError;
+	}
+
+	/**
+	 * Pick up the actions after a syntax error: try each following {"id" object,
+	 * keeping the ones that parse and look like actions. A candidate that parses
+	 * is skipped as a whole, one that fails is skipped up to where it broke, so
+	 * each byte is parsed at most once more and this stays linear.
+	 */
+	private void resync(byte[] content, int from, int end) throws IOException{
+		int pos = nextActionStart(content, from, end);
+		while(pos != -1){
+			int next = pos + 1;
+			JsonParser parser = JsonCodec.getLenientFactory().createParser(content, pos, end - pos);
+			try {
+				parser.nextToken();
+				ActionResponse action = readAction(parser, content, pos);
+				next = pos + (int)parser.getTokenLocation().getByteOffset() + 1;
+				if(action.id != null && isActionState(action.state) && !responseActionMap.containsKey(action.id)){
+					responseActionMap.put(action.id, action);
+				}
+			} catch(JsonProcessingException e){
+				// not a well-formed action either. The parser stops just past the
+				// character that broke it, which may be where the next action starts
+				next = pos + Math.max(1, (int)parser.getCurrentLocation().getByteOffset() - 1);
+			} finally {
+				parser.close();
+			}
+			pos = nextActionStart(content, next, end);
+		}
+	}
+
+	private static int nextActionStart(byte[] content, int from, int end){
+		for(int pos = from; pos < end; pos++){
+			if(content[pos] != '{'){
+				continue;
+			}
+			int key = pos + 1;
+			while(key < end && Character.isWhitespace(content[key])){
+				key++;
+			}
+			if(key + 4 <= end && content[key] == '"' && content[key + 1] == 'i' && content[key + 2] == 'd' && content[key + 3] == '"'){
+				return pos;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean isActionState(String state){
+		return "SUCCESS".equals(state) || "ERROR".equals(state) || "INCOMPLETE".equals(state)
+				|| "ABORTED".equals(state) || "NEW".equals(state) || "RUNNING".equals(state);
+	}
+
+	private static ActionResponse readAction(JsonParser parser, byte[] content, int start) throws IOException{
+		String id = null;
+		String state = null;
+		ArrayNode error = null;
+		JsonNode returnValue = null;
+		int returnValueOffset = -1;
+		int returnValueLength = 0;
+
+		while(parser.nextToken() == JsonToken.FIELD_NAME){
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if("id".equals(field) && value.isScalarValue()){
+				id = parser.getValueAsString();
+			} else if("state".equals(field) && value.isScalarValue()){
+				state = parser.getValueAsString();
+			} else if("error".equals(field) && value == JsonToken.START_ARRAY){
+				error = JsonCodec.READER.readTree(parser);
+			} else if("returnValue".equals(field) && value.isStructStart()){
+				returnValueOffset = start + (int)parser.getTokenLocation().getByteOffset();
+				parser.skipChildren();
+				returnValueLength = start + (int)parser.getTokenLocation().getByteOffset() + 1 - returnValueOffset;
+			} else if("returnValue".equals(field) && value != JsonToken.VALUE_NULL){
+				// scalars are cheap, no point in deferring them
+				returnValue = JsonCodec.READER.readTree(parser);
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		if(returnValueOffset != -1){
+			return new ActionResponse(id, state, error, content, returnValueOffset, returnValueLength);
+		}
+		return new ActionResponse(id, state, error, returnValue);
+	}
+
+	/**
+	 * @return the offset just past a leading while(1); guard, or offset if there is none
+	 */
+	static int skipPrefix(byte[] content, int offset, int end){
+		int pos = offset;
+		while(pos < end && Character.isWhitespace(content[pos])){
+			pos++;
+		}
+		String guard = AuraDetector.AURA_RESPONSE_START;
+		if(end - pos < guard.length()){
+			return offset;
+		}
+		for(int i = 0; i < guard.length(); i++){
+			if(content[pos + i] != guard.charAt(i)){
+				return offset;
+			}
+		}
+		pos += guard.length();
+		while(pos < end && content[pos] != ';' && content[pos] != '{'){
+			pos++;
+		}
+		if(pos < end && content[pos] == ';'){
+			pos++;
+		}
+		// error payloads are while(1);\n*/{...}/*ERROR*/, the trailing comment is never read
+		int afterGuard = pos;
+		while(pos < end && Character.isWhitespace(content[pos])){
+			pos++;
+		}
+		if(pos + 1 < end && content[pos] == '*' && content[pos + 1] == '/'){
+			return pos + 2;
+		}
+		return afterGuard;
+	}
+}
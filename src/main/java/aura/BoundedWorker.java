@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codemagi.burp.BaseExtender;
+
+/**
+ * A single background thread with a bounded queue, for work handed off from
+ * Burp's proxy and HTTP threads. {@link #offer(Runnable)} never blocks the
+ * caller: when the queue is full the task is dropped and counted.
+ */
+public class BoundedWorker {
+	private final BlockingQueue<Runnable> queue;
+	private final AtomicLong processed = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private final Thread thread;
+
+	public BoundedWorker(String name, int capacity) {
+		this.queue = new ArrayBlockingQueue<Runnable>(capacity);
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				work();
+			}
+		}, name);
+		this.thread.setDaemon(true);
+		this.thread.start();
+	}
+
+	/**
+	 * Queue a task without waiting.
+	 *
+	 * @return false if the queue was full and the task was dropped
+	 */
+	public boolean offer(Runnable task) {
+		if (queue.offer(task)) {
+			return true;
+		}
+		dropped.incrementAndGet();
+		return false;
+	}
+
+	public long getProcessed() {
+		return processed.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public int getQueued() {
+		return queue.size();
+	}
+
+	/**
+	 * Stop the thread, e.g. when the extension is unloaded. Queued tasks are discarded.
+	 */
+	public void shutdown() {
+		queue.clear();
+		thread.interrupt();
+	}
+
+	private void work() {
+		while (!Thread.currentThread().isInterrupted()) {
+			Runnable task;
+			try {
+				task = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			try {
+				task.run();
+			} catch (RuntimeException e) {
+				BaseExtender.printStackTrace(e);
+			}
+			processed.incrementAndGet();
+		}
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Process-wide store of the aura.context values seen in a session.
+ *
+ * The context is nearly the same in every request of a session, so each
+ * distinct value is decoded, parsed and pretty-printed once. Values are looked
+ * up by a fingerprint of the raw, still URL-encoded bytes, which costs one pass
+ * over the value and no allocation. The store keeps the most recently used
+ * contexts. The contexts sent to each host are {@link #record recorded} in
+ * traffic order, so the Aura Context tab can show what changed since the
+ * context sent before the one it shows, whatever order messages are viewed in.
+ */
+public class ContextStore {
+	public static final int DEFAULT_MAX_CONTEXTS = 64;
+	private static final ContextStore INSTANCE = new ContextStore(DEFAULT_MAX_CONTEXTS);
+
+	private final int maxContexts;
+	private final LinkedHashMap<Long, Context> contexts;
+	// for each host, the context sent last, and the one sent before each of its contexts
+	private final Map<String, Context> latest = new HashMap<String, Context>();
+	private final Map<String, Map<Long, Context>> previous = new HashMap<String, Map<Long, Context>>();
+
+	/**
+	 * One distinct aura.context value.
+	 */
+	public static class Context {
+		public final long fingerprint;
+		public final int encodedLength;
+		public final JsonNode tree;
+		private byte[] pretty;
+		private int prettyIndent;
+		private int prettyMaxMb;
+		private Context diffedAgainst;
+		private byte[] diff;
+
+		private Context(long fingerprint, int encodedLength, JsonNode tree) {
+			this.fingerprint = fingerprint;
+			this.encodedLength = encodedLength;
+			this.tree = tree;
+		}
+
+		/**
+		 * @return the pretty-printed context, rendered again only if the printer settings changed
+		 */
+		public synchronized byte[] getPretty() throws IOException {
+			if (this.pretty == null || this.prettyIndent != JsonPrinter.getIndent()
+					|| this.prettyMaxMb != JsonPrinter.getMaxMb()) {
+				this.prettyIndent = JsonPrinter.getIndent();
+				this.prettyMaxMb = JsonPrinter.getMaxMb();
+				this.pretty = JsonPrinter.print(this.tree);
+			}
+			return this.pretty;
+		}
+
+		/**
+		 * @return the pretty-printed {@link JsonDiff} from the earlier context to this one
+		 */
+		public synchronized byte[] getChangesSince(Context earlier) throws IOException {
+			if (this.diff == null || this.diffedAgainst != earlier) {
+				this.diff = JsonPrinter.print(JsonDiff.diff(earlier.tree, this.tree));
+				this.diffedAgainst = earlier;
+			}
+			return this.diff;
+		}
+	}
+
+	public ContextStore(int maxContexts) {
+		this.maxContexts = maxContexts;
+		this.contexts = createLru();
+	}
+
+	private LinkedHashMap<Long, Context> createLru() {
+		return new LinkedHashMap<Long, Context>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Context> eldest) {
+				return size() > maxContexts;
+			}
+		};
+	}
+
+	public static ContextStore getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @param start start of the URL-encoded value
+	 * @param end end of the URL-encoded value
+	 */
+	public static long fingerprint(byte[] content, int start, int end) {
+		return ParseCache.hash(content, start, end - start);
+	}
+
+	/**
+	 * Look up a URL-encoded context value, decoding and parsing it only if it
+	 * hasn't been seen before.
+	 *
+	 * @throws IOException if the value is not valid JSON
+	 */
+	public Context get(byte[] content, int start, int end) throws IOException {
+		long fingerprint = fingerprint(content, start, end);
+		Context context;
+		synchronized (this) {
+			context = this.contexts.get(fingerprint);
+		}
+		if (context == null || context.encodedLength != end - start) {
+			JsonNode tree = JsonCodec.READER.readTree(FormBodyCodec.decode(content, start, end));
+			context = new Context(fingerprint, end - start, tree);
+			synchronized (this) {
+				this.contexts.put(fingerprint, context);
+			}
+		}
+		return context;
+	}
+
+	/**
+	 * Record a context value sent to the host, in the order requests are sent.
+	 *
+	 * @throws IOException if the value is not valid JSON
+	 */
+	public void record(String host, byte[] content, int start, int end) throws IOException {
+		Context context = get(content, start, end);
+		synchronized (this) {
+			Context current = this.latest.put(host, context);
+			if (current != null && current.fingerprint != context.fingerprint) {
+				Map<Long, Context> before = this.previous.get(host);
+				if (before == null) {
+					before = createLru();
+					this.previous.put(host, before);
+				}
+				before.put(context.fingerprint, current);
+			}
+		}
+	}
+
+	/**
+	 * @return the context sent to the host before the given one, the last time
+	 *         it was sent, or null if none was recorded
+	 */
+	public synchronized Context getPrevious(String host, Context context) {
+		Map<Long, Context> before = this.previous.get(host);
+		return before == null ? null : before.get(context.fingerprint);
+	}
+
+	public synchronized int size() {
+		return this.contexts.size();
+	}
+
+	public synchronized void clear() {
+		this.contexts.clear();
+		this.latest.clear();
+		this.previous.clear();
+	}
+}
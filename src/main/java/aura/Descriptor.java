@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An action descriptor such as
+ * serviceComponent://ui.force.components.controllers.hostConfig.HostConfigController/ACTION$getConfigData,
+ * split into its controller and method.
+ *
+ * Instances are immutable and come from a process-wide cache keyed by the raw
+ * string. Real traffic only has a few hundred distinct descriptors, so each is
+ * parsed once and every action using it shares the same strings.
+ */
+public final class Descriptor {
+	static final int MAX_CACHED = 4096;
+	private static final ConcurrentHashMap<String, Descriptor> CACHE = new ConcurrentHashMap<String, Descriptor>();
+
+	/** the full descriptor */
+	public final String descriptor;
+	/** e.g. serviceComponent or apex, empty if there is none */
+	public final String scheme;
+	/** e.g. ui.force.components.controllers.hostConfig.HostConfigController or ApexActionController */
+	public final String controller;
+	/** the controller without its package, e.g. HostConfigController */
+	public final String shortController;
+	/** e.g. getConfigData */
+	public final String method;
+
+	private Descriptor(String descriptor) {
+		this.descriptor = descriptor;
+		int controllerStart = descriptor.indexOf("//") + 2; // 2 chars, need to add an extra one
+		if (controllerStart == 1) {
+			controllerStart = 0;
+		}
+		int schemeEnd = descriptor.indexOf(':');
+		this.scheme = schemeEnd == -1 || schemeEnd >= controllerStart ? "" : descriptor.substring(0, schemeEnd);
+		int methodIndex = descriptor.indexOf('/', controllerStart);
+		if (methodIndex == -1) {
+			// not controller/ACTION$method, keep what there is
+			this.controller = descriptor.substring(controllerStart);
+			this.method = "";
+			methodIndex = descriptor.length();
+		} else {
+			int methodStart = descriptor.indexOf('$', methodIndex) + 1;
+			this.controller = descriptor.substring(controllerStart, methodIndex);
+			this.method = methodStart == 0 ? "" : descriptor.substring(methodStart);
+		}
+
+		int shortStart = descriptor.lastIndexOf('.', methodIndex);
+		if (shortStart < controllerStart) {
+			this.shortController = this.controller;
+		} else {
+			this.shortController = descriptor.substring(shortStart + 1, methodIndex);
+		}
+	}
+
+	/**
+	 * @return the cached descriptor for the string, parsing it the first time it is seen
+	 */
+	public static Descriptor of(String descriptor) {
+		Descriptor cached = CACHE.get(descriptor);
+		if (cached != null) {
+			return cached;
+		}
+		if (CACHE.size() >= MAX_CACHED) {
+			// more distinct descriptors than any real application has, start over rather than grow
+			CACHE.clear();
+		}
+		Descriptor parsed = new Descriptor(descriptor);
+		Descriptor raced = CACHE.putIfAbsent(descriptor, parsed);
+		return raced == null ? parsed : raced;
+	}
+
+	/**
+	 * @return the descriptor parsed without going through the cache, for bulk
+	 *         sources that would otherwise push out the descriptors seen in traffic
+	 */
+	static Descriptor parse(String descriptor) {
+		return new Descriptor(descriptor);
+	}
+
+	/**
+	 * @return the descriptor of the same method on another controller
+	 */
+	public Descriptor withController(String controllerName) {
+		int controllerStart = this.descriptor.indexOf("//") + 2;
+		if (controllerStart == 1) {
+			controllerStart = 0;
+		}
+		return of(this.descriptor.substring(0, controllerStart) + controllerName + "/ACTION$" + this.method);
+	}
+
+	/**
+	 * @return the descriptor of another method on the same controller
+	 */
+	public Descriptor withMethod(String methodName) {
+		int methodStart = this.descriptor.indexOf('$') + 1;
+		return of(this.descriptor.substring(0, methodStart) + methodName);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		return other instanceof Descriptor && ((Descriptor) other).descriptor.equals(this.descriptor);
+	}
+
+	@Override
+	public int hashCode() {
+		return this.descriptor.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return this.descriptor;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Finds action descriptors such as serviceComponent://ui.force.Foo/ACTION$bar
+ * and apex://MyController/ACTION$doThing in JavaScript and JSON, e.g. the
+ * framework bundles and componentDefs an Aura application downloads.
+ *
+ * All scheme prefixes, plain and with JSON-escaped slashes, are matched in a
+ * single pass by an Aho-Corasick automaton compiled to a state table, so each
+ * byte costs one table lookup whatever the number of patterns. The rest of a
+ * descriptor is only read where a prefix matched, at most a fixed number of
+ * bytes, and scanning resumes after it, so the scan stays linear in the input.
+ */
+public class DescriptorScanner {
+	public static final String[] SCHEMES = { "serviceComponent", "apex", "aura" };
+	/** longest controller or method name read after a prefix */
+	static final int MAX_NAME = 256;
+	private static final byte[] ACTION = "ACTION$".getBytes(StandardCharsets.US_ASCII);
+	private static final DescriptorScanner INSTANCE = new DescriptorScanner(SCHEMES);
+
+	/**
+	 * The automaton as one table: the entry for state s and byte b is at s * 256 + b
+	 * and holds the offset of the next state's row, complemented if a prefix ends there.
+	 */
+	private final int[] table;
+	/** for each state, the scheme of the prefix that ends there, or null */
+	private final String[] matches;
+
+	/**
+	 * Receives each descriptor found, in order, as its raw string. The same
+	 * descriptor is reported every time it occurs, so the sink should dedupe
+	 * before parsing it.
+	 */
+	public interface Sink {
+		void found(String descriptor);
+	}
+
+	public DescriptorScanner(String[] schemes) {
+		List<byte[]> patterns = new ArrayList<byte[]>();
+		List<String> patternSchemes = new ArrayList<String>();
+		for (String scheme : schemes) {
+			patterns.add((scheme + "://").getBytes(StandardCharsets.US_ASCII));
+			patternSchemes.add(scheme);
+			patterns.add((scheme + ":\\/\\/").getBytes(StandardCharsets.US_ASCII));
+			patternSchemes.add(scheme);
+		}
+
+		// the trie
+		List<int[]> trie = new ArrayList<int[]>();
+		List<String> ends = new ArrayList<String>();
+		trie.add(newState());
+		ends.add(null);
+		for (int p = 0; p < patterns.size(); p++) {
+			int state = 0;
+			for (byte b : patterns.get(p)) {
+				int next = trie.get(state)[b & 0xff];
+				if (next == -1) {
+					next = trie.size();
+					trie.add(newState());
+					ends.add(null);
+					trie.get(state)[b & 0xff] = next;
+				}
+				state = next;
+			}
+			ends.set(state, patternSchemes.get(p));
+		}
+
+		// breadth first, turn failure links into direct transitions
+		int[] failure = new int[trie.size()];
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		for (int b = 0; b < 256; b++) {
+			int next = trie.get(0)[b];
+			if (next == -1) {
+				trie.get(0)[b] = 0;
+			} else {
+				failure[next] = 0;
+				queue.add(next);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.remove();
+			if (ends.get(state) == null) {
+				// no pattern here is a suffix of another, but keep the automaton general
+				ends.set(state, ends.get(failure[state]));
+			}
+			for (int b = 0; b < 256; b++) {
+				int next = trie.get(state)[b];
+				if (next == -1) {
+					trie.get(state)[b] = trie.get(failure[state])[b];
+				} else {
+					failure[next] = trie.get(failure[state])[b];
+					queue.add(next);
+				}
+			}
+		}
+		this.table = new int[trie.size() * 256];
+		for (int state = 0; state < trie.size(); state++) {
+			for (int b = 0; b < 256; b++) {
+				int next = trie.get(state)[b];
+				this.table[state * 256 + b] = ends.get(next) == null ? next * 256 : ~(next * 256);
+			}
+		}
+		this.matches = ends.toArray(new String[ends.size()]);
+	}
+
+	public static DescriptorScanner getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * @return the number of descriptors found
+	 */
+	public int scan(byte[] content, int offset, int length, Sink sink) {
+		int[] table = this.table;
+		StringBuilder descriptor = new StringBuilder(64);
+		int found = 0;
+		int row = 0;
+		int end = offset + length;
+		int i = offset;
+		while (i < end) {
+			row = table[row + (content[i++] & 0xff)];
+			if (row >= 0) {
+				continue;
+			}
+			row = ~row;
+			int descriptorEnd = readDescriptor(content, i, end, this.matches[row / 256], descriptor, sink);
+			if (descriptorEnd != -1) {
+				found++;
+				i = descriptorEnd;
+				row = 0;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Read controller/ACTION$method after a scheme prefix.
+	 *
+	 * @return the offset after the method, or -1 if this is not an action descriptor
+	 */
+	private static int readDescriptor(byte[] content, int start, int end, String scheme, StringBuilder descriptor,
+			Sink sink) {
+		int controllerEnd = readName(content, start, end, true);
+		if (controllerEnd == start) {
+			return -1;
+		}
+		int pos = controllerEnd;
+		if (pos + 1 < end && content[pos] == '\\' && content[pos + 1] == '/') {
+			pos += 2;
+		} else if (pos < end && content[pos] == '/') {
+			pos++;
+		} else {
+			return -1;
+		}
+		if (end - pos < ACTION.length) {
+			return -1;
+		}
+		for (int i = 0; i < ACTION.length; i++) {
+			if (content[pos + i] != ACTION[i]) {
+				return -1;
+			}
+		}
+		int methodStart = pos + ACTION.length;
+		int methodEnd = readName(content, methodStart, end, false);
+		if (methodEnd == methodStart) {
+			return -1;
+		}
+		// the names are ASCII, one string for the whole descriptor
+		descriptor.setLength(0);
+		descriptor.append(scheme).append("://");
+		appendAscii(descriptor, content, start, controllerEnd);
+		descriptor.append("/ACTION$");
+		appendAscii(descriptor, content, methodStart, methodEnd);
+		sink.found(descriptor.toString());
+		return methodEnd;
+	}
+
+	private static void appendAscii(StringBuilder out, byte[] content, int start, int end) {
+		for (int i = start; i < end; i++) {
+			out.append((char) content[i]);
+		}
+	}
+
+	/**
+	 * @return the end of the identifier starting at start, start if there is none or it is too long
+	 */
+	private static int readName(byte[] content, int start, int end, boolean dots) {
+		int limit = Math.min(end, start + MAX_NAME + 1);
+		int i = start;
+		while (i < limit) {
+			byte b = content[i];
+			if ((b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_'
+					|| (dots && b == '.')) {
+				i++;
+			} else {
+				break;
+			}
+		}
+		return i - start > MAX_NAME ? start : i;
+	}
+
+	private static int[] newState() {
+		int[] state = new int[256];
+		Arrays.fill(state, -1);
+		return state;
+	}
+}
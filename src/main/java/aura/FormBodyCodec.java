@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+/**
+ * Byte-level codec for application/x-www-form-urlencoded Aura request bodies.
+ *
+ * Finds the message, aura.context and aura.token values in one scan of the raw
+ * request, decodes percent-escapes straight into bytes that Jackson reads
+ * directly, and encodes replacement values straight into the new request.
+ * Encoding and decoding follow java.net.URLEncoder/URLDecoder with UTF-8.
+ *
+ * Only the body is scanned, although {@link AuraDetector#isAuraRequest(byte[], boolean)}
+ * also accepts parameters in the query string. The editor tabs fall back to
+ * Burp's parameter helpers for a message that isn't in the body. The code that
+ * works on traffic in the background (ProxyIndexer, CorrelationListener,
+ * RewriteEngine, ParamTemplate, ActionReplay and the Aura Diff) skips or
+ * rejects such requests. Aura clients POST the message in the body.
+ */
+public class FormBodyCodec {
+	public static final String MESSAGE = "message";
+	public static final String CONTEXT = "aura.context";
+	public static final String TOKEN = "aura.token";
+
+	private static final String[] AURA_PARAMS = { MESSAGE, CONTEXT, TOKEN };
+	private static final String CONTENT_LENGTH = "Content-Length";
+	private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+	private FormBodyCodec() {
+	}
+
+	/**
+	 * Raw (still encoded) value ranges of the Aura parameters in a request.
+	 */
+	public static class AuraParams {
+		private final int[] valueStarts = { -1, -1, -1 };
+		private final int[] valueEnds = new int[AURA_PARAMS.length];
+
+		/**
+		 * @return true if the body has the parameter, which must be one of the Aura parameters
+		 */
+		public boolean has(String name) {
+			return getValueStart(name) != -1;
+		}
+
+		/**
+		 * @return the offset of the first encoded value byte, or -1 if absent
+		 */
+		public int getValueStart(String name) {
+			int slot = slot(name);
+			return slot == -1 ? -1 : valueStarts[slot];
+		}
+
+		/**
+		 * @return the offset just past the last encoded value byte
+		 */
+		public int getValueEnd(String name) {
+			int slot = slot(name);
+			return slot == -1 ? -1 : valueEnds[slot];
+		}
+
+		private static int slot(String name) {
+			for (int i = 0; i < AURA_PARAMS.length; i++) {
+				if (AURA_PARAMS[i].equals(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * Locate the message, aura.context and aura.token values in the request body in a single pass.
+	 */
+	public static AuraParams scan(byte[] content) {
+		AuraParams params = new AuraParams();
+		int pos = AuraDetector.getBodyOffset(content);
+		while (pos < content.length) {
+			int pairEnd = pos;
+			int equals = -1;
+			while (pairEnd < content.length && content[pairEnd] != '&') {
+				if (equals == -1 && content[pairEnd] == '=') {
+					equals = pairEnd;
+				}
+				pairEnd++;
+			}
+			int nameEnd = equals == -1 ? pairEnd : equals;
+			for (int i = 0; i < AURA_PARAMS.length; i++) {
+				if (params.valueStarts[i] == -1 && nameEquals(content, pos, nameEnd, AURA_PARAMS[i])) {
+					params.valueStarts[i] = equals == -1 ? pairEnd : equals + 1;
+					params.valueEnds[i] = pairEnd;
+				}
+			}
+			pos = pairEnd + 1;
+		}
+		return params;
+	}
+
+	/**
+	 * URL-decode a range into a new byte array.
+	 */
+	public static byte[] decode(byte[] src, int start, int end) {
+		Stats.Timer timer = Stats.start(Stats.Metric.URL_DECODE);
+		byte[] out = new byte[end - start];
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			byte b = src[i];
+			if (b == '+') {
+				out[length++] = ' ';
+			} else if (b == '%' && i + 2 < end && hexValue(src[i + 1]) != -1 && hexValue(src[i + 2]) != -1) {
+				out[length++] = (byte) ((hexValue(src[i + 1]) << 4) | hexValue(src[i + 2]));
+				i += 2;
+			} else {
+				out[length++] = b;
+			}
+		}
+		if (length == out.length) {
+			Stats.stop(timer, end - start);
+			return out;
+		}
+		byte[] trimmed = new byte[length];
+		System.arraycopy(out, 0, trimmed, 0, length);
+		Stats.stop(timer, end - start);
+		return trimmed;
+	}
+
+	/**
+	 * @return the number of bytes the form encoding of the range takes
+	 */
+	public static int encodedLength(byte[] src, int start, int end) {
+		int length = 0;
+		for (int i = start; i < end; i++) {
+			length += isUnreserved(src[i]) || src[i] == ' ' ? 1 : 3;
+		}
+		return length;
+	}
+
+	/**
+	 * Form-encode a range into dst.
+	 *
+	 * @return the position in dst after the last byte written
+	 */
+	public static int encode(byte[] src, int start, int end, byte[] dst, int dstOffset) {
+		int pos = dstOffset;
+		for (int i = start; i < end; i++) {
+			byte b = src[i];
+			if (isUnreserved(b)) {
+				dst[pos++] = b;
+			} else if (b == ' ') {
+				dst[pos++] = '+';
+			} else {
+				dst[pos++] = '%';
+				dst[pos++] = HEX[(b >> 4) & 0xf];
+				dst[pos++] = HEX[b & 0xf];
+			}
+		}
+		return pos;
+	}
+
+	public static byte[] encode(byte[] src) {
+		Stats.Timer timer = Stats.start(Stats.Metric.URL_ENCODE);
+		byte[] out = new byte[encodedLength(src, 0, src.length)];
+		encode(src, 0, src.length, out, 0);
+		Stats.stop(timer, src.length);
+		return out;
+	}
+
+	/**
+	 * Replace the encoded value in content[valueStart, valueEnd) with the form
+	 * encoding of value, fixing up Content-Length. The encoding is written
+	 * straight into the new request, which is the only allocation.
+	 */
+	public static byte[] replaceValue(byte[] content, int valueStart, int valueEnd, byte[] value) {
+		Stats.Timer timer = Stats.start(Stats.Metric.URL_ENCODE);
+		int encodedLength = encodedLength(value, 0, value.length);
+		Splice splice = new Splice(content, valueStart, valueEnd, encodedLength);
+		encode(value, 0, value.length, splice.out, splice.replacementOffset);
+		Stats.stop(timer, value.length);
+		return splice.out;
+	}
+
+	/**
+	 * Replace content[start, end) with replacement, which must already be encoded, fixing up Content-Length.
+	 */
+	public static byte[] splice(byte[] content, int start, int end, byte[] replacement) {
+		Splice splice = new Splice(content, start, end, replacement.length);
+		System.arraycopy(replacement, 0, splice.out, splice.replacementOffset, replacement.length);
+		return splice.out;
+	}
+
+	/**
+	 * Copies a request around a hole of the requested size, updating the
+	 * Content-Length header for the new body length.
+	 */
+	private static class Splice {
+		private final byte[] out;
+		private final int replacementOffset;
+
+		Splice(byte[] content, int start, int end, int replacementLength) {
+			int delta = replacementLength - (end - start);
+			int bodyOffset = AuraDetector.getBodyOffset(content);
+			int lengthStart = start < bodyOffset ? -1 : AuraDetector.findHeaderValue(content, bodyOffset, CONTENT_LENGTH);
+			int lengthEnd = lengthStart;
+			while (lengthEnd != -1 && lengthEnd < content.length && content[lengthEnd] >= '0' && content[lengthEnd] <= '9') {
+				lengthEnd++;
+			}
+			if (lengthStart == -1 || lengthEnd == lengthStart) {
+				this.out = new byte[content.length + delta];
+				System.arraycopy(content, 0, out, 0, start);
+				this.replacementOffset = start;
+			} else {
+				byte[] newLength = Integer.toString(content.length - bodyOffset + delta).getBytes();
+				int headerDelta = newLength.length - (lengthEnd - lengthStart);
+				this.out = new byte[content.length + delta + headerDelta];
+				System.arraycopy(content, 0, out, 0, lengthStart);
+				System.arraycopy(newLength, 0, out, lengthStart, newLength.length);
+				System.arraycopy(content, lengthEnd, out, lengthEnd + headerDelta, start - lengthEnd);
+				this.replacementOffset = start + headerDelta;
+			}
+			System.arraycopy(content, end, out, replacementOffset + replacementLength, content.length - end);
+		}
+	}
+
+	private static boolean isUnreserved(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+				|| b == '.' || b == '-' || b == '*' || b == '_';
+	}
+
+	private static int hexValue(byte b) {
+		if (b >= '0' && b <= '9') {
+			return b - '0';
+		}
+		if (b >= 'a' && b <= 'f') {
+			return b - 'a' + 10;
+		}
+		if (b >= 'A' && b <= 'F') {
+			return b - 'A' + 10;
+		}
+		return -1;
+	}
+
+	private static boolean nameEquals(byte[] content, int start, int end, String name) {
+		if (end - start != name.length()) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (content[start + i] != name.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
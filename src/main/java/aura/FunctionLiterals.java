@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Aura responses are JSON plus the occasional JavaScript function literal, e.g.
+ * "render": function(cmp){ ... }. No JSON parser accepts those, so this turns
+ * each one into a JSON string holding its source text.
+ *
+ * The scan is a single pass over the bytes. Responses without functions, which
+ * are nearly all of them, are not copied at all.
+ */
+public class FunctionLiterals {
+	private static final byte[] FUNCTION = "function".getBytes();
+	private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+	private FunctionLiterals() {
+	}
+
+	/**
+	 * @return content[offset, end) with every function literal in value position
+	 *  replaced by a JSON string, or null if there are none
+	 */
+	public static byte[] quote(byte[] content, int offset, int end) {
+		ByteArrayOutputStream out = null;
+		int copied = offset;
+		byte previous = 0; // last significant byte outside strings and comments
+		int pos = offset;
+		while (pos < end) {
+			byte b = content[pos];
+			if (b == '"' || b == '\'') {
+				pos = skipString(content, pos, end);
+				previous = b;
+				continue;
+			}
+			if (b == '/' && pos + 1 < end && (content[pos + 1] == '*' || content[pos + 1] == '/')) {
+				pos = skipComment(content, pos, end);
+				continue;
+			}
+			if (b == 'f' && (previous == ':' || previous == ',' || previous == '[') && isFunction(content, pos, end)) {
+				int literalEnd = skipFunction(content, pos, end);
+				if (out == null) {
+					out = new ByteArrayOutputStream(end - offset + 256);
+				}
+				out.write(content, copied, pos - copied);
+				writeString(content, pos, literalEnd, out);
+				copied = literalEnd;
+				pos = literalEnd;
+				previous = '"';
+				continue;
+			}
+			if (!isWhitespace(b)) {
+				previous = b;
+			}
+			pos++;
+		}
+		if (out == null) {
+			return null;
+		}
+		out.write(content, copied, end - copied);
+		return out.toByteArray();
+	}
+
+	private static boolean isFunction(byte[] content, int pos, int end) {
+		if (end - pos <= FUNCTION.length) {
+			return false;
+		}
+		for (int i = 0; i < FUNCTION.length; i++) {
+			if (content[pos + i] != FUNCTION[i]) {
+				return false;
+			}
+		}
+		byte next = content[pos + FUNCTION.length];
+		return next == '(' || isWhitespace(next);
+	}
+
+	/**
+	 * @return the offset just past the closing brace of the function body, or end if it is unterminated
+	 */
+	private static int skipFunction(byte[] content, int pos, int end) {
+		int depth = 0;
+		while (pos < end) {
+			byte b = content[pos];
+			if (b == '"' || b == '\'' || b == '`') {
+				pos = skipString(content, pos, end);
+				continue;
+			}
+			if (b == '/' && pos + 1 < end && (content[pos + 1] == '*' || content[pos + 1] == '/')) {
+				pos = skipComment(content, pos, end);
+				continue;
+			}
+			pos++;
+			if (b == '{') {
+				depth++;
+			} else if (b == '}' && --depth == 0) {
+				return pos;
+			}
+		}
+		return end;
+	}
+
+	/**
+	 * @return the offset just past the closing quote of the string starting at pos
+	 */
+	private static int skipString(byte[] content, int pos, int end) {
+		byte quote = content[pos++];
+		while (pos < end) {
+			byte b = content[pos++];
+			if (b == '\\') {
+				pos++;
+			} else if (b == quote) {
+				return pos;
+			}
+		}
+		return end;
+	}
+
+	private static int skipComment(byte[] content, int pos, int end) {
+		if (content[pos + 1] == '/') {
+			while (pos < end && content[pos] != '\n') {
+				pos++;
+			}
+			return pos;
+		}
+		pos += 2;
+		while (pos + 1 < end && !(content[pos] == '*' && content[pos + 1] == '/')) {
+			pos++;
+		}
+		return Math.min(end, pos + 2);
+	}
+
+	private static void writeString(byte[] content, int start, int end, ByteArrayOutputStream out) {
+		out.write('"');
+		for (int i = start; i < end; i++) {
+			byte b = content[i];
+			if (b == '"' || b == '\\') {
+				out.write('\\');
+				out.write(b);
+			} else if (b == '\n') {
+				out.write('\\');
+				out.write('n');
+			} else if (b == '\r') {
+				out.write('\\');
+				out.write('r');
+			} else if (b == '\t') {
+				out.write('\\');
+				out.write('t');
+			} else if (b >= 0 && b < 0x20) {
+				out.write('\\');
+				out.write('u');
+				out.write('0');
+				out.write('0');
+				out.write(HEX[b >> 4]);
+				out.write(HEX[b & 0xf]);
+			} else {
+				out.write(b);
+			}
+		}
+		out.write('"');
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.json.JsonReadFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+/**
+ * Shared Jackson readers and writers for the whole extension.
+ *
+ * ObjectReader and ObjectWriter are immutable and thread-safe, so one set of
+ * instances (and one set of serializer/deserializer caches) serves every message,
+ * action and editor tab instead of a new ObjectMapper per object or per call.
+ */
+public class JsonCodec {
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final ObjectMapper LENIENT_MAPPER = JsonMapper.builder()
+			.enable(JsonReadFeature.ALLOW_JAVA_COMMENTS)
+			.enable(JsonReadFeature.ALLOW_SINGLE_QUOTES)
+			.enable(JsonReadFeature.ALLOW_UNQUOTED_FIELD_NAMES)
+			.enable(JsonReadFeature.ALLOW_NON_NUMERIC_NUMBERS)
+			.enable(JsonReadFeature.ALLOW_TRAILING_COMMA)
+			.enable(JsonReadFeature.ALLOW_UNESCAPED_CONTROL_CHARS)
+			.build();
+
+	/** Strict reader producing JsonNode trees */
+	public static final ObjectReader READER = MAPPER.readerFor(JsonNode.class);
+	/** Reader that also accepts the JavaScript-isms found in Aura payloads (comments, NaN, single quotes...) */
+	public static final ObjectReader LENIENT_READER = LENIENT_MAPPER.readerFor(JsonNode.class);
+	/** Minified output, as sent on the wire */
+	public static final ObjectWriter COMPACT_WRITER = MAPPER.writer();
+	/** Indented output for the editor panels */
+	public static final ObjectWriter PRETTY_WRITER = MAPPER.writerWithDefaultPrettyPrinter();
+
+	private JsonCodec() {
+	}
+
+	public static JsonFactory getFactory() {
+		return MAPPER.getFactory();
+	}
+
+	public static JsonFactory getLenientFactory() {
+		return LENIENT_MAPPER.getFactory();
+	}
+}
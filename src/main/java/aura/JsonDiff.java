@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Structural difference between two JSON trees, as a flat object mapping the
+ * path of each changed value to its "before" and "after" values. Added values
+ * have no "before", removed ones no "after".
+ *
+ * Every subtree is hashed once, bottom up, and subtrees with equal hashes are
+ * taken to be equal without looking inside, so the cost is linear in the size
+ * of the trees and only the changed paths are visited. Objects are compared
+ * field by field. Arrays of records that all carry a unique key ({@link #KEY_FIELDS})
+ * are matched by key, so an inserted or reordered record shows up as just that,
+ * with a path segment such as Id=001xx000003DGb2 instead of an index. Other
+ * arrays are compared index by index. Paths are otherwise JSON pointers.
+ */
+public class JsonDiff {
+	public static final String BEFORE = "before";
+	public static final String AFTER = "after";
+	/** fields that identify the records in an array, tried in order */
+	public static final String[] KEY_FIELDS = { "Id", "id", "key" };
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final ObjectNode changes;
+	// containers only, values are cheap to hash again
+	private final IdentityHashMap<JsonNode, Long> hashes = new IdentityHashMap<JsonNode, Long>();
+
+	private JsonDiff(ObjectNode changes) {
+		this.changes = changes;
+	}
+
+	/**
+	 * @param before may be null if there was nothing before
+	 * @return the changes, an empty object if the trees are equal
+	 */
+	public static ObjectNode diff(JsonNode before, JsonNode after) {
+		ObjectNode changes = JsonNodeFactory.instance.objectNode();
+		diff("", before, after, changes);
+		return changes;
+	}
+
+	/**
+	 * Add the changes between two trees, with paths under the given prefix.
+	 */
+	public static void diff(String pointer, JsonNode before, JsonNode after, ObjectNode changes) {
+		new JsonDiff(changes).compare(pointer, before, after);
+	}
+
+	private void compare(String pointer, JsonNode before, JsonNode after) {
+		if (before == null || after == null) {
+			if (before != after) {
+				record(pointer, before, after);
+			}
+		} else if (hash(before) == hash(after)) {
+			// equal, short of a 64-bit hash collision
+		} else if (before.isObject() && after.isObject()) {
+			Iterator<Map.Entry<String, JsonNode>> fields = after.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				compare(pointer + "/" + escape(field.getKey()), before.get(field.getKey()), field.getValue());
+			}
+			Iterator<String> names = before.fieldNames();
+			while (names.hasNext()) {
+				String name = names.next();
+				if (!after.has(name)) {
+					record(pointer + "/" + escape(name), before.get(name), null);
+				}
+			}
+		} else if (before.isArray() && after.isArray()) {
+			String key = findKey(before, after);
+			if (key != null) {
+				compareRecords(pointer, key, before, after);
+			} else {
+				int size = Math.max(before.size(), after.size());
+				for (int i = 0; i < size; i++) {
+					compare(pointer + "/" + i, before.get(i), after.get(i));
+				}
+			}
+		} else {
+			record(pointer, before, after);
+		}
+	}
+
+	private void compareRecords(String pointer, String key, JsonNode before, JsonNode after) {
+		Map<String, JsonNode> beforeByKey = new HashMap<String, JsonNode>(before.size() * 2);
+		for (JsonNode record : before) {
+			beforeByKey.put(record.get(key).asText(), record);
+		}
+		for (JsonNode record : after) {
+			String value = record.get(key).asText();
+			compare(pointer + "/" + escape(key + "=" + value), beforeByKey.remove(value), record);
+		}
+		// what is left was removed, reported in the original order
+		for (JsonNode record : before) {
+			String value = record.get(key).asText();
+			if (beforeByKey.containsKey(value)) {
+				record(pointer + "/" + escape(key + "=" + value), record, null);
+			}
+		}
+	}
+
+	/**
+	 * @return the first key field that every element of both arrays has, as a
+	 *         unique scalar, or null if the arrays are not arrays of records
+	 */
+	private static String findKey(JsonNode before, JsonNode after) {
+		if (before.size() == 0 && after.size() == 0) {
+			return null;
+		}
+		for (String key : KEY_FIELDS) {
+			if (isKey(key, before) && isKey(key, after)) {
+				return key;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isKey(String key, JsonNode array) {
+		Set<String> seen = new HashSet<String>(array.size() * 2);
+		for (JsonNode element : array) {
+			JsonNode value = element.get(key);
+			if (!element.isObject() || value == null || !value.isValueNode() || value.isNull() || !seen.add(value.asText())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void record(String pointer, JsonNode before, JsonNode after) {
+		ObjectNode change = this.changes.putObject(pointer);
+		if (before != null) {
+			change.set(BEFORE, before);
+		}
+		if (after != null) {
+			change.set(AFTER, after);
+		}
+	}
+
+	/**
+	 * Structural hash: equal trees hash equal, whatever the field order of their objects.
+	 */
+	private long hash(JsonNode node) {
+		if (!node.isContainerNode()) {
+			return mix(hash(node.asText()) * 31 + node.getNodeType().ordinal());
+		}
+		Long cached = this.hashes.get(node);
+		if (cached != null) {
+			return cached;
+		}
+		long h;
+		if (node.isObject()) {
+			h = 1;
+			Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+			while (fields.hasNext()) {
+				Map.Entry<String, JsonNode> field = fields.next();
+				// summed, so the order of the fields doesn't matter
+				h += mix(hash(field.getKey()) * 31 + hash(field.getValue()));
+			}
+		} else {
+			h = 2;
+			for (JsonNode element : node) {
+				h = h * 31 + hash(element);
+			}
+		}
+		h = mix(h);
+		this.hashes.put(node, h);
+		return h;
+	}
+
+	private static long hash(String text) {
+		long h = FNV_OFFSET;
+		for (int i = 0; i < text.length(); i++) {
+			h ^= text.charAt(i);
+			h *= FNV_PRIME;
+		}
+		return h;
+	}
+
+	/**
+	 * The splitmix64 finalizer, so that sums and products of hashes stay well distributed.
+	 */
+	private static long mix(long h) {
+		h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+		h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * Escape a field name for use in a JSON pointer (RFC 6901).
+	 */
+	static String escape(String name) {
+		if (name.indexOf('~') == -1 && name.indexOf('/') == -1) {
+			return name;
+		}
+		return name.replace("~", "~0").replace("/", "~1");
+	}
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+
+/**
+ * Pretty-prints JSON a page at a time, for values too large to hand to a text
+ * editor in one go.
+ *
+ * Tokens are copied from a parser over the raw JSON or over a tree to a
+ * generator set up like {@link JsonPrinter}'s, only as far as the next page
+ * needs, so the pages joined up are exactly what JsonPrinter would print. The
+ * tree is only needed to start again under a JSON pointer, see {@link #at(String)}.
+ */
+public class JsonPager {
+	public static final int DEFAULT_PAGE_KB = 256;
+	public static final int DEFAULT_THRESHOLD_KB = 1024;
+	private static final int TOKENS_PER_CHECK = 256;
+
+	private static volatile int pageKb = DEFAULT_PAGE_KB;
+	private static volatile int thresholdKb = DEFAULT_THRESHOLD_KB;
+
+	/**
+	 * Where the tree comes from when it is first needed, e.g. a lazily parsed returnValue.
+	 */
+	public interface TreeSource {
+		JsonNode getTree() throws IOException;
+	}
+
+	private final JsonParser parser;
+	private final JsonGenerator generator;
+	private final Output out = new Output();
+	private final TreeSource tree;
+	private final String pointer;
+	// what the parser reads, to start again: a node, or a range of raw JSON
+	private final JsonNode node;
+	private final byte[] json;
+	private final int offset;
+	private final int length;
+	private final boolean lenient;
+	private boolean started = false;
+	private boolean finished = false;
+
+	/**
+	 * Printed but not yet handed out.
+	 */
+	private static class Output extends ByteArrayOutputStream {
+		Output() {
+			super(64 * 1024);
+		}
+
+		/**
+		 * @return the first bytes, up to the last line break within max if there is one
+		 */
+		byte[] take(int max) {
+			int length = Math.min(max, this.count);
+			if (length < this.count) {
+				for (int i = length - 1; i > 0; i--) {
+					if (this.buf[i] == '\n') {
+						length = i + 1;
+						break;
+					}
+				}
+			}
+			byte[] page = Arrays.copyOf(this.buf, length);
+			System.arraycopy(this.buf, length, this.buf, 0, this.count - length);
+			this.count -= length;
+			return page;
+		}
+	}
+
+	private JsonPager(JsonNode node, String pointer, TreeSource tree) throws IOException {
+		this.node = node;
+		this.json = null;
+		this.offset = 0;
+		this.length = 0;
+		this.lenient = false;
+		this.parser = node.traverse(JsonCodec.READER);
+		this.generator = JsonPrinter.createGenerator(JsonCodec.getFactory(), this.out);
+		this.tree = tree;
+		this.pointer = pointer;
+	}
+
+	private JsonPager(byte[] json, int offset, int length, boolean lenient, TreeSource tree) throws IOException {
+		JsonFactory factory = lenient ? JsonCodec.getLenientFactory() : JsonCodec.getFactory();
+		this.node = null;
+		this.json = json;
+		this.offset = offset;
+		this.length = length;
+		this.lenient = lenient;
+		this.parser = factory.createParser(json, offset, length);
+		this.generator = JsonPrinter.createGenerator(factory, this.out);
+		this.tree = tree;
+		this.pointer = "";
+	}
+
+	/**
+	 * Page through a tree. A null node prints as null.
+	 */
+	public static JsonPager of(JsonNode node) throws IOException {
+		final JsonNode root = node == null ? NullNode.instance : node;
+		return new JsonPager(root, "", new TreeSource() {
+			@Override
+			public JsonNode getTree() {
+				return root;
+			}
+		});
+	}
+
+	/**
+	 * Page through raw JSON, parsing it into a tree only if {@link #at(String)} is
+	 * used. The tree is kept for the next jump, softly, so a large one can still
+	 * be collected while the user only pages.
+	 *
+	 * @param lenient accept the JavaScript-isms of Aura responses, see {@link JsonCodec#getLenientFactory()}
+	 */
+	public static JsonPager of(final byte[] json, final int offset, final int length, final boolean lenient) throws IOException {
+		return of(json, offset, length, lenient, new TreeSource() {
+			private SoftReference<JsonNode> parsed;
+
+			@Override
+			public synchronized JsonNode getTree() throws IOException {
+				JsonNode tree = this.parsed == null ? null : this.parsed.get();
+				if (tree == null) {
+					tree = (lenient ? JsonCodec.LENIENT_READER : JsonCodec.READER).readTree(json, offset, length);
+					this.parsed = new SoftReference<JsonNode>(tree);
+				}
+				return tree;
+			}
+		});
+	}
+
+	/**
+	 * @param tree the same JSON as a tree, for {@link #at(String)}
+	 */
+	public static JsonPager of(byte[] json, int offset, int length, boolean lenient, TreeSource tree) throws IOException {
+		return new JsonPager(json, offset, length, lenient, tree);
+	}
+
+	public static int getPageKb() {
+		return pageKb;
+	}
+
+	public static void setPageKb(int kb) {
+		pageKb = Math.max(1, kb);
+	}
+
+	/**
+	 * @return the size of text above which the panels show it a page at a time
+	 */
+	public static int getThresholdKb() {
+		return thresholdKb;
+	}
+
+	public static void setThresholdKb(int kb) {
+		thresholdKb = Math.max(1, kb);
+	}
+
+	/**
+	 * Print ahead, if needed, to find out.
+	 *
+	 * @return true if the text still to come is longer than the given number of bytes
+	 */
+	public synchronized boolean isLongerThan(long bytes) throws IOException {
+		fill(bytes + 1);
+		return this.out.size() > bytes;
+	}
+
+	/**
+	 * @return true if the panels should show this text a page at a time
+	 */
+	public boolean isLarge() throws IOException {
+		return isLongerThan(thresholdKb * 1024L);
+	}
+
+	/**
+	 * @return about a page of text, ending with a line break where possible,
+	 *         or an empty array once everything was handed out
+	 */
+	public synchronized byte[] nextPage() throws IOException {
+		int page = pageKb * 1024;
+		fill(page);
+		return this.out.take(page);
+	}
+
+	/**
+	 * @return all the text not handed out yet
+	 */
+	public synchronized byte[] remaining() throws IOException {
+		fill(Long.MAX_VALUE);
+		return this.out.take(this.out.size());
+	}
+
+	public synchronized boolean hasMore() {
+		return !this.finished || this.out.size() > 0;
+	}
+
+	/**
+	 * @return the JSON pointer of the value being printed, empty for the whole document
+	 */
+	public String getPointer() {
+		return this.pointer;
+	}
+
+	/**
+	 * Start again at a value of the whole document, which builds the tree if
+	 * it hasn't been built yet.
+	 *
+	 * @param pointer e.g. /actions/0/returnValue
+	 * @return a pager for the value, or null if there is none at the pointer
+	 * @throws IllegalArgumentException if the pointer is not a valid JSON pointer
+	 */
+	public JsonPager at(String pointer) throws IOException {
+		JsonNode node = this.tree.getTree().at(JsonPointer.compile(pointer));
+		if (node.isMissingNode()) {
+			return null;
+		}
+		return new JsonPager(node, pointer, this.tree);
+	}
+
+	/**
+	 * @return a pager over the same value, from its start
+	 */
+	public JsonPager restart() throws IOException {
+		if (this.node != null) {
+			return new JsonPager(this.node, this.pointer, this.tree);
+		}
+		return new JsonPager(this.json, this.offset, this.length, this.lenient, this.tree);
+	}
+
+	/**
+	 * Print until the given number of bytes is waiting or the JSON ends.
+	 */
+	private void fill(long bytes) throws IOException {
+		while (!this.finished && this.out.size() < bytes) {
+			for (int i = 0; i < TOKENS_PER_CHECK; i++) {
+				if (this.parser.nextToken() == null) {
+					if (!this.started) {
+						throw new IOException("No JSON content");
+					}
+					this.finished = true;
+					this.parser.close();
+					break;
+				}
+				this.started = true;
+				this.generator.copyCurrentEvent(this.parser);
+			}
+			this.generator.flush();
+		}
+	}
+}
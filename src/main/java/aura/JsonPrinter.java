@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.DefaultIndenter;
+import com.fasterxml.jackson.core.util.DefaultPrettyPrinter;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Pretty-prints JSON as UTF-8 for the editor panels.
+ *
+ * Output goes straight into a growable byte buffer that each thread reuses,
+ * so the only full-size allocation is the final array handed to the text
+ * editor. Raw JSON is printed token by token, without building a tree. Once
+ * the output reaches the size limit it is cut off and a marker is appended,
+ * because a text editor holding hundreds of megabytes is of no use to anyone.
+ *
+ * The indent and the limit apply to every panel and can be changed at any time.
+ */
+public class JsonPrinter {
+	public static final int DEFAULT_INDENT = 2;
+	public static final int DEFAULT_MAX_MB = 20;
+	/** per-thread buffers larger than this are dropped after use rather than kept */
+	private static final int MAX_RETAINED_BUFFER = 4 * 1024 * 1024;
+	private static final String MARKER_PREFIX = "\n\n/* ... output truncated at ";
+	private static final byte[] MARKER_TAG = " MB, use the tree view or raise the limit ... */\n"
+			.getBytes(StandardCharsets.US_ASCII);
+
+	private static volatile DefaultPrettyPrinter prettyPrinter = createPrettyPrinter(DEFAULT_INDENT);
+	private static volatile int indent = DEFAULT_INDENT;
+	private static volatile int maxMb = DEFAULT_MAX_MB;
+
+	private static final ThreadLocal<Buffer> BUFFERS = new ThreadLocal<Buffer>() {
+		@Override
+		protected Buffer initialValue() {
+			return new Buffer();
+		}
+	};
+
+	private JsonPrinter() {
+	}
+
+	/**
+	 * Growable output buffer that stops taking bytes at its limit.
+	 */
+	private static class Buffer extends OutputStream {
+		private byte[] data = new byte[8192];
+		private int count;
+		private long limit;
+		private boolean truncated;
+
+		void reset(long limit) {
+			this.count = 0;
+			this.limit = limit;
+			this.truncated = false;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			int room = (int) Math.min(len, this.limit - this.count);
+			if (room > 0) {
+				ensure(this.count + room);
+				System.arraycopy(b, off, this.data, this.count, room);
+				this.count += room;
+			}
+			if (room < len) {
+				if ((b[off + room] & 0xc0) == 0x80) {
+					// cut in the middle of a UTF-8 character: drop what was kept of it
+					while (this.count > 0 && (this.data[this.count - 1] & 0xc0) == 0x80) {
+						this.count--;
+					}
+					if (this.count > 0 && (this.data[this.count - 1] & 0xc0) == 0xc0) {
+						this.count--;
+					}
+				}
+				this.truncated = true;
+				throw new Truncated();
+			}
+		}
+
+		void append(byte[] b) {
+			ensure(this.count + b.length);
+			System.arraycopy(b, 0, this.data, this.count, b.length);
+			this.count += b.length;
+		}
+
+		private void ensure(int capacity) {
+			if (capacity > this.data.length) {
+				this.data = Arrays.copyOf(this.data, Math.max(capacity, this.data.length * 2));
+			}
+		}
+
+		byte[] toByteArray() {
+			byte[] out = Arrays.copyOf(this.data, this.count);
+			if (this.data.length > MAX_RETAINED_BUFFER) {
+				this.data = new byte[8192];
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Thrown by the buffer to stop the generator at the limit.
+	 */
+	@SuppressWarnings("serial")
+	private static class Truncated extends IOException {
+		Truncated() {
+			super("output limit reached");
+		}
+	}
+
+	public static int getIndent() {
+		return indent;
+	}
+
+	/**
+	 * @param spaces spaces per nesting level, 0 for none
+	 */
+	public static void setIndent(int spaces) {
+		indent = Math.max(0, spaces);
+		prettyPrinter = createPrettyPrinter(indent);
+	}
+
+	public static int getMaxMb() {
+		return maxMb;
+	}
+
+	public static void setMaxMb(int mb) {
+		maxMb = Math.max(1, mb);
+	}
+
+	/**
+	 * Pretty-print a tree. A null node prints as null.
+	 */
+	public static byte[] print(JsonNode node) throws IOException {
+		Buffer buffer = BUFFERS.get();
+		buffer.reset(maxMb * 1024L * 1024);
+		JsonGenerator generator = createGenerator(JsonCodec.getFactory(), buffer);
+		try {
+			if (node == null) {
+				generator.writeNull();
+			} else {
+				generator.writeTree(node);
+			}
+			generator.close();
+		} catch (Truncated e) {
+			// the generator is abandoned, its buffers are simply garbage collected
+		}
+		return finish(buffer);
+	}
+
+	/**
+	 * Pretty-print raw JSON token by token, without building a tree.
+	 *
+	 * @param lenient accept the JavaScript-isms of Aura responses, see {@link JsonCodec#getLenientFactory()}
+	 */
+	public static byte[] print(byte[] json, int offset, int length, boolean lenient) throws IOException {
+		JsonFactory factory = lenient ? JsonCodec.getLenientFactory() : JsonCodec.getFactory();
+		Buffer buffer = BUFFERS.get();
+		buffer.reset(maxMb * 1024L * 1024);
+		JsonParser parser = factory.createParser(json, offset, length);
+		try {
+			JsonGenerator generator = createGenerator(factory, buffer);
+			if (parser.nextToken() == null) {
+				throw new IOException("No JSON content");
+			}
+			generator.copyCurrentStructure(parser);
+			generator.close();
+		} catch (Truncated e) {
+			// as above
+		} finally {
+			parser.close();
+		}
+		return finish(buffer);
+	}
+
+	/**
+	 * @return true if the output was cut off at the size limit
+	 */
+	public static boolean isTruncated(byte[] printed) {
+		if (printed.length < MARKER_TAG.length) {
+			return false;
+		}
+		for (int i = 0; i < MARKER_TAG.length; i++) {
+			if (printed[printed.length - MARKER_TAG.length + i] != MARKER_TAG[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static JsonGenerator createGenerator(JsonFactory factory, OutputStream out) throws IOException {
+		JsonGenerator generator = factory.createGenerator(out);
+		generator.setPrettyPrinter(prettyPrinter.createInstance());
+		return generator;
+	}
+
+	private static byte[] finish(Buffer buffer) {
+		if (buffer.truncated) {
+			buffer.append((MARKER_PREFIX + maxMb).getBytes(StandardCharsets.US_ASCII));
+			buffer.append(MARKER_TAG);
+		}
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * Objects get one field per line at the given indent. Arrays stay on one
+	 * line unless they hold objects, as with Jackson's default pretty printer.
+	 */
+	private static DefaultPrettyPrinter createPrettyPrinter(int spaces) {
+		char[] chars = new char[spaces];
+		Arrays.fill(chars, ' ');
+		DefaultPrettyPrinter printer = new DefaultPrettyPrinter();
+		printer.indentObjectsWith(new DefaultIndenter(new String(chars), DefaultIndenter.SYS_LF));
+		return printer;
+	}
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * An Aura request prepared for splicing values into the scalar leaves of its
+ * actions' params, for scanner insertion points.
+ *
+ * The message is decoded and parsed once. Its canonical form encoding becomes a
+ * template request shared by all leaves, and the encoded offsets of every leaf
+ * are worked out in the same pass, so building a request for a payload is one
+ * escape, one encode and one copy, with no parsing.
+ *
+ * A payload for a string leaf goes between the quotes, JSON-escaped. A payload
+ * for a number, boolean or null leaf replaces it as a JSON string, so the
+ * message stays valid JSON and the payload reaches the controller.
+ */
+public class ParamTemplate {
+	/** more leaves than this in one request are not worth scanning individually */
+	public static final int MAX_LEAVES = 1000;
+	private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+	private final byte[] template;
+	// the template's body length and the number of digits in its Content-Length, 0 if it has none
+	private final int bodyLength;
+	private final int lengthDigits;
+	private final List<Leaf> leaves;
+
+	/**
+	 * A scalar value somewhere in an action's params.
+	 */
+	public static class Leaf {
+		public final String actionId;
+		public final Descriptor descriptor;
+		/** JSON Pointer relative to the action's params */
+		public final String pointer;
+		/** the value as text, without quotes for strings */
+		public final String baseValue;
+		public final boolean isString;
+		private final ParamTemplate template;
+		// encoded offsets of the replaced bytes in the template
+		private final int start;
+		private final int end;
+
+		private Leaf(ParamTemplate template, RawLeaf raw, String actionId, Descriptor descriptor, int start, int end) {
+			this.template = template;
+			this.actionId = actionId;
+			this.descriptor = descriptor;
+			this.pointer = raw.pointer;
+			this.baseValue = raw.baseValue;
+			this.isString = raw.isString;
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * @return the template request with the payload in place of this leaf
+		 */
+		public byte[] buildRequest(byte[] payload) {
+			return FormBodyCodec.splice(template.template, start, end, encodePayload(payload));
+		}
+
+		/**
+		 * @return the start and end offsets of the (encoded) payload in the request {@link #buildRequest(byte[])} builds
+		 */
+		public int[] getPayloadOffsets(byte[] payload) {
+			int encoded = encodePayload(payload).length;
+			int payloadStart = this.start + template.headerDelta(encoded - (this.end - this.start));
+			return new int[] { payloadStart, payloadStart + encoded };
+		}
+
+		private byte[] encodePayload(byte[] payload) {
+			byte[] escaped = escape(payload, !this.isString);
+			return FormBodyCodec.encode(escaped);
+		}
+	}
+
+	/**
+	 * A leaf as found by the parser, before the action it belongs to is complete.
+	 */
+	private static class RawLeaf {
+		final String pointer;
+		final String baseValue;
+		final boolean isString;
+		// offsets in the decoded JSON of the bytes a payload replaces
+		final int start;
+		final int end;
+
+		RawLeaf(String pointer, String baseValue, boolean isString, int start, int end) {
+			this.pointer = pointer;
+			this.baseValue = baseValue;
+			this.isString = isString;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private ParamTemplate(byte[] template, int bodyLength, int lengthDigits, List<Leaf> leaves) {
+		this.template = template;
+		this.bodyLength = bodyLength;
+		this.lengthDigits = lengthDigits;
+		this.leaves = leaves;
+	}
+
+	/**
+	 * @return the template for an Aura request, or null if it has no parsable message
+	 */
+	public static ParamTemplate of(byte[] request) {
+		FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+		int valueStart = params.getValueStart(FormBodyCodec.MESSAGE);
+		if (valueStart == -1) {
+			return null;
+		}
+		int valueEnd = params.getValueEnd(FormBodyCodec.MESSAGE);
+		byte[] json = FormBodyCodec.decode(request, valueStart, valueEnd);
+
+		List<String> actionIds = new ArrayList<String>();
+		List<Descriptor> descriptors = new ArrayList<Descriptor>();
+		List<List<RawLeaf>> rawLeaves = new ArrayList<List<RawLeaf>>();
+		try {
+			findLeaves(json, actionIds, descriptors, rawLeaves);
+		} catch (IOException e) {
+			return null;
+		}
+
+		// the template is the request with the message in its canonical encoding,
+		// which the leaf offsets below are computed against
+		byte[] template = FormBodyCodec.replaceValue(request, valueStart, valueEnd, json);
+		int bodyOffset = AuraDetector.getBodyOffset(template);
+		int lengthDigits = 0;
+		int lengthStart = AuraDetector.findHeaderValue(template, bodyOffset, "Content-Length");
+		while (lengthStart != -1 && lengthStart + lengthDigits < template.length
+				&& template[lengthStart + lengthDigits] >= '0' && template[lengthStart + lengthDigits] <= '9') {
+			lengthDigits++;
+		}
+		// the message value moved if the Content-Length header changed length
+		int encodedStart = valueStart + (template.length - request.length)
+				- (FormBodyCodec.encodedLength(json, 0, json.length) - (valueEnd - valueStart));
+
+		ParamTemplate result = new ParamTemplate(template, template.length - bodyOffset, lengthDigits, new ArrayList<Leaf>());
+		// leaves are in document order, so encoded offsets can be accumulated in one pass
+		int decodedPos = 0;
+		int encodedPos = encodedStart;
+		for (int i = 0; i < rawLeaves.size(); i++) {
+			for (RawLeaf raw : rawLeaves.get(i)) {
+				encodedPos += FormBodyCodec.encodedLength(json, decodedPos, raw.start);
+				int start = encodedPos;
+				encodedPos += FormBodyCodec.encodedLength(json, raw.start, raw.end);
+				decodedPos = raw.end;
+				result.leaves.add(new Leaf(result, raw, actionIds.get(i), descriptors.get(i), start, encodedPos));
+			}
+		}
+		return result;
+	}
+
+	public List<Leaf> getLeaves() {
+		return Collections.unmodifiableList(this.leaves);
+	}
+
+	/**
+	 * @return how far the body moves when it changes length by delta, from the Content-Length header growing or shrinking
+	 */
+	private int headerDelta(int delta) {
+		if (this.lengthDigits == 0) {
+			return 0;
+		}
+		return Integer.toString(this.bodyLength + delta).length() - this.lengthDigits;
+	}
+
+	private static void findLeaves(byte[] json, List<String> actionIds, List<Descriptor> descriptors,
+			List<List<RawLeaf>> rawLeaves) throws IOException {
+		int total = 0;
+		JsonParser parser = JsonCodec.getFactory().createParser(json);
+		try {
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				return;
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if (!"actions".equals(field) || value != JsonToken.START_ARRAY) {
+					parser.skipChildren();
+					continue;
+				}
+				while (parser.nextToken() != JsonToken.END_ARRAY) {
+					if (parser.currentToken() != JsonToken.START_OBJECT) {
+						parser.skipChildren();
+						continue;
+					}
+					String id = null;
+					String descriptor = null;
+					List<RawLeaf> leaves = new ArrayList<RawLeaf>();
+					while (parser.nextToken() == JsonToken.FIELD_NAME) {
+						String actionField = parser.getCurrentName();
+						JsonToken actionValue = parser.nextToken();
+						if ("params".equals(actionField) && actionValue == JsonToken.START_OBJECT && total < MAX_LEAVES) {
+							walk(parser, json, "", leaves, MAX_LEAVES - total);
+							total += leaves.size();
+						} else if ("id".equals(actionField) && actionValue.isScalarValue()) {
+							id = parser.getText();
+						} else if ("descriptor".equals(actionField) && actionValue == JsonToken.VALUE_STRING) {
+							descriptor = parser.getText();
+						} else {
+							parser.skipChildren();
+						}
+					}
+					if (!leaves.isEmpty()) {
+						actionIds.add(id);
+						descriptors.add(descriptor == null ? null : Descriptor.of(descriptor));
+						rawLeaves.add(leaves);
+					}
+				}
+			}
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Collect the scalar leaves of the container the parser is on, leaving the parser on its end token.
+	 */
+	private static void walk(JsonParser parser, byte[] json, String path, List<RawLeaf> leaves, int limit) throws IOException {
+		boolean isObject = parser.currentToken() == JsonToken.START_OBJECT;
+		int index = 0;
+		JsonToken token;
+		while ((token = parser.nextToken()) != JsonToken.END_OBJECT && token != JsonToken.END_ARRAY) {
+			String key;
+			if (isObject) {
+				key = parser.getCurrentName().replace("~", "~0").replace("/", "~1");
+				token = parser.nextToken();
+			} else {
+				key = Integer.toString(index++);
+			}
+			String pointer = path + '/' + key;
+			if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+				walk(parser, json, pointer, leaves, limit);
+			} else if (leaves.size() < limit) {
+				int start = (int) parser.getTokenLocation().getByteOffset();
+				String text = parser.getText();
+				if (token == JsonToken.VALUE_STRING) {
+					// between the quotes
+					leaves.add(new RawLeaf(pointer, text, true, start + 1, stringEnd(json, start + 1)));
+				} else {
+					leaves.add(new RawLeaf(pointer, text, false, start, scalarEnd(json, start)));
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the offset of the closing quote of the string whose content starts at pos
+	 */
+	private static int stringEnd(byte[] json, int pos) {
+		while (pos < json.length && json[pos] != '"') {
+			pos += json[pos] == '\\' ? 2 : 1;
+		}
+		return pos;
+	}
+
+	/**
+	 * @return the offset just past the number or literal that starts at pos
+	 */
+	private static int scalarEnd(byte[] json, int pos) {
+		while (pos < json.length) {
+			byte b = json[pos];
+			if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+				break;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+	/**
+	 * JSON-escape raw payload bytes. Bytes above 0x7f are kept as they are, so
+	 * UTF-8 payloads go through unchanged.
+	 */
+	static byte[] escape(byte[] payload, boolean quote) {
+		int length = quote ? 2 : 0;
+		for (byte b : payload) {
+			length += b == '"' || b == '\\' ? 2 : (b >= 0 && b < 0x20 ? 6 : 1);
+		}
+		byte[] out = new byte[length];
+		int pos = 0;
+		if (quote) {
+			out[pos++] = '"';
+		}
+		for (byte b : payload) {
+			if (b == '"' || b == '\\') {
+				out[pos++] = '\\';
+				out[pos++] = b;
+			} else if (b >= 0 && b < 0x20) {
+				out[pos++] = '\\';
+				out[pos++] = 'u';
+				out[pos++] = '0';
+				out[pos++] = '0';
+				out[pos++] = HEX[b >> 4];
+				out[pos++] = HEX[b & 0xf];
+			} else {
+				out[pos++] = b;
+			}
+		}
+		if (quote) {
+			out[pos++] = '"';
+		}
+		return out;
+	}
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide LRU cache of parsed and rendered Aura bodies.
+ *
+ * Burp creates a fresh editor tab per message editor, so without this every tab
+ * re-decodes and re-parses the same body whenever a message is re-selected.
+ * Entries are keyed by a namespace (what was produced) and a 64-bit hash of the
+ * body bytes, and are evicted least-recently-used first once the estimated
+ * retained size of all entries exceeds the byte budget.
+ *
+ * Cached values are shared: callers must not mutate them, and should copy
+ * anything they intend to edit.
+ */
+public class ParseCache {
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+	private static final ParseCache INSTANCE = new ParseCache(DEFAULT_MAX_BYTES);
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private long maxBytes;
+	private long retainedBytes = 0;
+
+	public ParseCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public static ParseCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * 64-bit FNV-1a hash of a byte range.
+	 */
+	public static long hash(byte[] data, int offset, int length) {
+		return hash(FNV_OFFSET, data, offset, length);
+	}
+
+	/**
+	 * Continue a hash over another byte range, to key on several parts of a message.
+	 *
+	 * @param h the hash of the parts before this one
+	 */
+	public static long hash(long h, byte[] data, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			h ^= (data[i] & 0xff);
+			h *= FNV_PRIME;
+		}
+		return h;
+	}
+
+	/**
+	 * Rough retained size of a JsonNode tree parsed from JSON text of the given
+	 * length: node objects, boxed values and map entries cost several times the text.
+	 */
+	public static long estimateTreeBytes(int jsonLength) {
+		return 4L * jsonLength;
+	}
+
+	/**
+	 * @param namespace what kind of value is cached, e.g. "request" or "json:message"
+	 * @param hash the hash of the source bytes, from {@link #hash(byte[], int, int)}
+	 * @param length the length of the source bytes
+	 * @return the cached value, or null
+	 */
+	public synchronized Object get(String namespace, long hash, int length) {
+		Entry entry = entries.get(new Key(namespace, hash, length));
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	/**
+	 * @param retained estimated number of bytes the value keeps reachable
+	 */
+	public synchronized void put(String namespace, long hash, int length, Object value, long retained) {
+		if (value == null || retained > maxBytes) {
+			return;
+		}
+		Entry previous = entries.put(new Key(namespace, hash, length), new Entry(value, retained));
+		if (previous != null) {
+			retainedBytes -= previous.retained;
+		}
+		retainedBytes += retained;
+		evict();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		retainedBytes = 0;
+	}
+
+	public synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+		evict();
+	}
+
+	public synchronized long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public synchronized long getRetainedBytes() {
+		return retainedBytes;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private void evict() {
+		Iterator<Map.Entry<Key, Entry>> iter = entries.entrySet().iterator();
+		while (retainedBytes > maxBytes && iter.hasNext()) {
+			retainedBytes -= iter.next().getValue().retained;
+			iter.remove();
+		}
+	}
+
+	private static final class Key {
+		private final String namespace;
+		private final long hash;
+		private final int length;
+
+		Key(String namespace, long hash, int length) {
+			this.namespace = namespace;
+			this.hash = hash;
+			this.length = length;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return hash == other.hash && length == other.length && namespace.equals(other.namespace);
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (hash ^ (hash >>> 32)) * 31 + namespace.hashCode();
+		}
+	}
+
+	private static final class Entry {
+		private final Object value;
+		private final long retained;
+
+		Entry(Object value, long retained) {
+			this.value = value;
+			this.retained = retained;
+		}
+	}
+}
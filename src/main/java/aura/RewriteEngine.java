@@ -0,0 +1,433 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+/**
+ * Rewrites action params in Aura requests according to a list of rules, one per line:
+ *
+ * <pre>
+ * # controller/method           JSON Pointer into params   value (JSON, or a bare string)
+ * *Controller/getRecord          /recordId = "001000000000000AAA"
+ * ApexActionController/execute   /params/limit = 5000
+ * </pre>
+ *
+ * Controller and method are globs (* and ?) matched against the full controller
+ * and the method of each action. The rules are compiled once: literal
+ * controller/method pairs go into a hash map and globs into precompiled
+ * patterns, and the rules that apply to each distinct descriptor are worked out
+ * once and memoized. All of it is one immutable {@link RuleSet}, replaced as a
+ * whole, so a request is rewritten by either the old or the new rules, never a
+ * mix of both. Messages whose JSON does not mention any rule's method
+ * are not even parsed. A message with no matching action is returned untouched,
+ * without being re-serialized. When actions match, only those actions are
+ * rewritten (see {@link AuraMessage#getAuraRequestBytes()}).
+ */
+public class RewriteEngine {
+	private static final int MAX_MEMOIZED = 4096;
+	private static final Rule[] NO_RULES = new Rule[0];
+
+	private volatile RuleSet ruleSet = new RuleSet(Collections.<Rule> emptyList());
+
+	private final AtomicLong messages = new AtomicLong();
+	private final AtomicLong rewritten = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	/**
+	 * One compiled rule and its hit counter.
+	 */
+	public static class Rule {
+		public final String text;
+		public final String controllerGlob;
+		public final String methodGlob;
+		private final Pattern controller;
+		private final Pattern method;
+		private final JsonPointer pointer;
+		private final JsonNode value;
+		private final AtomicLong hits = new AtomicLong();
+
+		Rule(String text, String controllerGlob, String methodGlob, JsonPointer pointer, JsonNode value) {
+			this.text = text;
+			this.controllerGlob = controllerGlob;
+			this.methodGlob = methodGlob;
+			this.controller = compileGlob(controllerGlob);
+			this.method = compileGlob(methodGlob);
+			this.pointer = pointer;
+			this.value = value;
+		}
+
+		boolean isLiteral() {
+			return this.controller == null && this.method == null;
+		}
+
+		boolean matches(Descriptor descriptor) {
+			return (this.controller == null ? this.controllerGlob.equals(descriptor.controller)
+					: this.controller.matcher(descriptor.controller).matches())
+					&& (this.method == null ? this.methodGlob.equals(descriptor.method)
+							: this.method.matcher(descriptor.method).matches());
+		}
+
+		/**
+		 * @return the number of actions this rule has changed
+		 */
+		public long getHits() {
+			return this.hits.get();
+		}
+	}
+
+	/**
+	 * The compiled rules, and the rules found to apply to each descriptor so far.
+	 */
+	private static class RuleSet {
+		final List<Rule> rules;
+		final Map<String, List<Rule>> literalRules = new HashMap<String, List<Rule>>();
+		final List<Rule> globRules = new ArrayList<Rule>();
+		// a message can only match if its JSON contains one of these, null when some rule could match anything
+		final byte[][] prefilter;
+		final ConcurrentHashMap<Descriptor, Rule[]> matches = new ConcurrentHashMap<Descriptor, Rule[]>();
+
+		RuleSet(List<Rule> rules) {
+			this.rules = Collections.unmodifiableList(rules);
+			for (Rule rule : rules) {
+				if (rule.isLiteral()) {
+					String key = rule.controllerGlob + '/' + rule.methodGlob;
+					if (!this.literalRules.containsKey(key)) {
+						this.literalRules.put(key, new ArrayList<Rule>());
+					}
+					this.literalRules.get(key).add(rule);
+				} else {
+					this.globRules.add(rule);
+				}
+			}
+			this.prefilter = buildPrefilter(rules);
+		}
+
+		/**
+		 * Cheap check before parsing: does the JSON mention a method some rule is about?
+		 */
+		boolean mayMatch(byte[] json) {
+			if (this.prefilter == null) {
+				return true;
+			}
+			for (byte[] needle : this.prefilter) {
+				if (indexOf(json, needle) != -1) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		Rule[] rulesFor(Descriptor descriptor) {
+			Rule[] cached = this.matches.get(descriptor);
+			if (cached != null) {
+				return cached;
+			}
+			List<Rule> found = new ArrayList<Rule>();
+			List<Rule> literal = this.literalRules.get(descriptor.controller + '/' + descriptor.method);
+			if (literal != null) {
+				found.addAll(literal);
+			}
+			for (Rule rule : this.globRules) {
+				if (rule.matches(descriptor)) {
+					found.add(rule);
+				}
+			}
+			Rule[] result = found.isEmpty() ? NO_RULES : found.toArray(new Rule[found.size()]);
+			if (this.matches.size() >= MAX_MEMOIZED) {
+				this.matches.clear();
+			}
+			this.matches.put(descriptor, result);
+			return result;
+		}
+	}
+
+	/**
+	 * Replace the rules. Blank lines and lines starting with # are ignored.
+	 *
+	 * @throws IllegalArgumentException naming the line of the first invalid rule, in which case the current rules are kept
+	 */
+	public void setRules(String text) {
+		List<Rule> compiled = new ArrayList<Rule>();
+		String[] lines = text.split("\r?\n");
+		for (int i = 0; i < lines.length; i++) {
+			String line = lines[i].trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			try {
+				compiled.add(parseRule(line));
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Line " + (i + 1) + ": " + e.getMessage(), e);
+			}
+		}
+		this.ruleSet = new RuleSet(compiled);
+	}
+
+	public List<Rule> getRules() {
+		return this.ruleSet.rules;
+	}
+
+	public boolean isEmpty() {
+		return this.ruleSet.rules.isEmpty();
+	}
+
+	/**
+	 * Apply the rules to a raw HTTP request.
+	 *
+	 * @return the rewritten request, or null if the request is not an Aura request or no rule changed it
+	 */
+	public byte[] apply(byte[] request) {
+		RuleSet current = this.ruleSet;
+		if (current.rules.isEmpty() || !AuraDetector.isAuraRequest(request, true)) {
+			return null;
+		}
+		long start = System.nanoTime();
+		try {
+			FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+			int valueStart = params.getValueStart(FormBodyCodec.MESSAGE);
+			if (valueStart == -1) {
+				return null;
+			}
+			int valueEnd = params.getValueEnd(FormBodyCodec.MESSAGE);
+			byte[] json = FormBodyCodec.decode(request, valueStart, valueEnd);
+			if (!current.mayMatch(json)) {
+				return null;
+			}
+			AuraMessage message = new AuraMessage(json);
+			if (!rewrite(message, current)) {
+				return null;
+			}
+			rewritten.incrementAndGet();
+			return FormBodyCodec.replaceValue(request, valueStart, valueEnd, message.getAuraRequestBytes());
+		} catch (IOException e) {
+			// not valid JSON, leave it alone
+			return null;
+		} finally {
+			messages.incrementAndGet();
+			totalNanos.addAndGet(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Apply the rules to each action of a parsed message.
+	 *
+	 * @return true if any action changed
+	 */
+	public boolean rewrite(AuraMessage message) {
+		return rewrite(message, this.ruleSet);
+	}
+
+	private static boolean rewrite(AuraMessage message, RuleSet rules) {
+		boolean changed = false;
+		// the list rather than actionMap, which holds only one of the actions sharing an id
+		for (ActionRequest action : message.getActionList()) {
+			Descriptor descriptor = action.getParsedDescriptor();
+			if (descriptor == null) {
+				continue;
+			}
+			Rule[] actionRules = rules.rulesFor(descriptor);
+			if (actionRules.length == 0) {
+				continue;
+			}
+			ObjectNode params = action.getParams();
+			if (params == null) {
+				params = JsonNodeFactory.instance.objectNode();
+			}
+			boolean actionChanged = false;
+			for (Rule rule : actionRules) {
+				if (set(params, rule.pointer, rule.value)) {
+					rule.hits.incrementAndGet();
+					actionChanged = true;
+				}
+			}
+			if (actionChanged) {
+				action.updateParams(params);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @return Aura requests looked at by {@link #apply(byte[])}
+	 */
+	public long getMessages() {
+		return messages.get();
+	}
+
+	/**
+	 * @return requests changed by at least one rule
+	 */
+	public long getRewritten() {
+		return rewritten.get();
+	}
+
+	/**
+	 * @return mean time added per Aura request, in nanoseconds
+	 */
+	public long getAverageNanos() {
+		long count = messages.get();
+		return count == 0 ? 0 : totalNanos.get() / count;
+	}
+
+	/**
+	 * @return the longest literal part of each rule's method glob, or null if a method glob has none
+	 */
+	private static byte[][] buildPrefilter(List<Rule> rules) {
+		byte[][] needles = new byte[rules.size()][];
+		for (int i = 0; i < needles.length; i++) {
+			String longest = "";
+			for (String part : rules.get(i).methodGlob.split("[*?]")) {
+				if (part.length() > longest.length()) {
+					longest = part;
+				}
+			}
+			if (longest.isEmpty()) {
+				return null;
+			}
+			needles[i] = longest.getBytes(StandardCharsets.UTF_8);
+		}
+		return needles;
+	}
+
+	private static int indexOf(byte[] haystack, byte[] needle) {
+		outer: for (int i = 0; i <= haystack.length - needle.length; i++) {
+			for (int j = 0; j < needle.length; j++) {
+				if (haystack[i + j] != needle[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Set the value at pointer, creating missing objects on the way.
+	 *
+	 * @return true if this changed anything
+	 */
+	private static boolean set(ObjectNode params, JsonPointer pointer, JsonNode value) {
+		JsonNode parent = params;
+		JsonPointer rest = pointer;
+		while (!rest.tail().matches()) {
+			JsonNode child = child(parent, rest);
+			if (child == null || child.isMissingNode() || child.isNull()) {
+				if (!parent.isObject()) {
+					return false;
+				}
+				child = ((ObjectNode) parent).putObject(rest.getMatchingProperty());
+			}
+			if (!child.isContainerNode()) {
+				return false;
+			}
+			parent = child;
+			rest = rest.tail();
+		}
+		if (parent.isArray()) {
+			int index = rest.getMatchingIndex();
+			ArrayNode array = (ArrayNode) parent;
+			if (index < 0 || index >= array.size() || value.equals(array.get(index))) {
+				return false;
+			}
+			array.set(index, value.deepCopy());
+			return true;
+		}
+		ObjectNode object = (ObjectNode) parent;
+		if (value.equals(object.get(rest.getMatchingProperty()))) {
+			return false;
+		}
+		object.set(rest.getMatchingProperty(), value.deepCopy());
+		return true;
+	}
+
+	private static JsonNode child(JsonNode parent, JsonPointer step) {
+		if (parent.isArray()) {
+			return step.mayMatchElement() ? parent.get(step.getMatchingIndex()) : null;
+		}
+		return parent.get(step.getMatchingProperty());
+	}
+
+	static Rule parseRule(String line) {
+		int equals = line.indexOf('=');
+		if (equals == -1) {
+			throw new IllegalArgumentException("expected controller/method /pointer = value");
+		}
+		String[] target = line.substring(0, equals).trim().split("\\s+");
+		if (target.length != 2) {
+			throw new IllegalArgumentException("expected controller/method /pointer = value");
+		}
+		int slash = target[0].lastIndexOf('/');
+		if (slash <= 0 || slash == target[0].length() - 1) {
+			throw new IllegalArgumentException("expected controller/method, got " + target[0]);
+		}
+		String controller = target[0].substring(0, slash);
+		String method = target[0].substring(slash + 1);
+		if (method.startsWith("ACTION$")) {
+			method = method.substring("ACTION$".length());
+		}
+		if (!target[1].startsWith("/") || target[1].length() == 1) {
+			throw new IllegalArgumentException("expected a JSON Pointer such as /recordId, got " + target[1]);
+		}
+		JsonPointer pointer = JsonPointer.compile(target[1]);
+
+		String valueText = line.substring(equals + 1).trim();
+		JsonNode value;
+		try {
+			value = valueText.isEmpty() ? null : JsonCodec.READER.readTree(valueText);
+		} catch (IOException e) {
+			value = null;
+		}
+		if (value == null || value.isMissingNode()) {
+			value = TextNode.valueOf(valueText);
+		}
+		return new Rule(line, controller, method, pointer, value);
+	}
+
+	/**
+	 * @return a pattern for the glob, or null if it has no wildcards and can be compared as is
+	 */
+	private static Pattern compileGlob(String glob) {
+		if (glob.indexOf('*') == -1 && glob.indexOf('?') == -1) {
+			return null;
+		}
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray()) {
+			if (c == '*' || c == '?') {
+				if (literal.length() > 0) {
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			} else {
+				literal.append(c);
+			}
+		}
+		if (literal.length() > 0) {
+			regex.append(Pattern.quote(literal.toString()));
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process-wide latency, size and allocation statistics for the extension's hot paths.
+ *
+ * Instrumented code brackets its work with {@link #start(Metric)} and
+ * {@link #stop(Timer, long)}. While stats are disabled (the default) start
+ * is a single volatile read returning null and stop returns straight away.
+ * While enabled, each sample goes into a lock-free log-linear histogram, so
+ * percentiles are accurate to within a quarter of a power of two.
+ *
+ * Allocation is measured with the per-thread allocated bytes counter of the
+ * HotSpot ThreadMXBean when the JVM has one. It counts everything the thread
+ * allocated in between, including other work it did, so it is an estimate.
+ */
+public class Stats {
+
+	public enum Metric {
+		REQUEST_SETUP("Aura Actions: request setup (EDT)"),
+		RESPONSE_SETUP("Aura Actions: response setup (EDT)"),
+		ACTIONS_GET_MESSAGE("Aura Actions: getMessage"),
+		JSON_SET_MESSAGE("Aura JSON: setMessage"),
+		JSON_GET_MESSAGE("Aura JSON: getMessage"),
+		TEXT_EDITOR_SET_TEXT("ITextEditor.setText"),
+		MESSAGE_PARSE("AuraMessage parse"),
+		RESPONSE_PARSE("AuraResponse parse"),
+		URL_DECODE("URL decode"),
+		URL_ENCODE("URL encode"),
+		PIPELINE_DECODE("Parse job: decode"),
+		PIPELINE_PARSE("Parse job: parse"),
+		PIPELINE_RENDER("Parse job: render"),
+		PIPELINE_BUILD_UI("Parse job: build UI (EDT)"),
+		ACTION_LOG_APPEND("Action log: append");
+
+		public final String label;
+
+		Metric(String label) {
+			this.label = label;
+		}
+	}
+
+	// 4 sub-buckets per power of two, up to 2^63 ns
+	private static final int SUB_BUCKET_BITS = 2;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+	private static final Histogram[] HISTOGRAMS = new Histogram[Metric.values().length];
+	private static final com.sun.management.ThreadMXBean ALLOCATION = allocationBean();
+	private static volatile boolean enabled = false;
+
+	static {
+		for (int i = 0; i < HISTOGRAMS.length; i++) {
+			HISTOGRAMS[i] = new Histogram();
+		}
+	}
+
+	/**
+	 * A sample in progress.
+	 */
+	public static class Timer {
+		private final Metric metric;
+		private final long startNanos;
+		private final long startAllocated;
+
+		private Timer(Metric metric) {
+			this.metric = metric;
+			this.startAllocated = allocatedBytes();
+			this.startNanos = System.nanoTime();
+		}
+	}
+
+	/**
+	 * Counts for one metric since the last reset.
+	 */
+	public static class Snapshot {
+		public final Metric metric;
+		public final long count;
+		public final long p50Nanos;
+		public final long p99Nanos;
+		public final long maxNanos;
+		public final long totalNanos;
+		public final long bytes;
+		/** -1 if allocation can't be measured on this JVM */
+		public final long allocatedBytes;
+
+		private Snapshot(Metric metric, long count, long p50Nanos, long p99Nanos, long maxNanos, long totalNanos,
+				long bytes, long allocatedBytes) {
+			this.metric = metric;
+			this.count = count;
+			this.p50Nanos = p50Nanos;
+			this.p99Nanos = p99Nanos;
+			this.maxNanos = maxNanos;
+			this.totalNanos = totalNanos;
+			this.bytes = bytes;
+			this.allocatedBytes = allocatedBytes;
+		}
+	}
+
+	private static class Histogram {
+		final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		final AtomicLong count = new AtomicLong();
+		final AtomicLong totalNanos = new AtomicLong();
+		final AtomicLong maxNanos = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		final AtomicLong allocated = new AtomicLong();
+
+		void record(long nanos, long byteCount, long allocatedBytes) {
+			buckets.incrementAndGet(bucket(nanos));
+			count.incrementAndGet();
+			totalNanos.addAndGet(nanos);
+			bytes.addAndGet(byteCount);
+			if (allocatedBytes > 0) {
+				allocated.addAndGet(allocatedBytes);
+			}
+			long max = maxNanos.get();
+			while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+				max = maxNanos.get();
+			}
+		}
+
+		/**
+		 * @return the upper bound of the bucket holding the given fraction of the samples
+		 */
+		long percentile(double fraction, long total) {
+			if (total == 0) {
+				return 0;
+			}
+			long wanted = Math.max(1, (long) Math.ceil(total * fraction));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += buckets.get(i);
+				if (seen >= wanted) {
+					return Math.min(upperBound(i), maxNanos.get());
+				}
+			}
+			return maxNanos.get();
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; i++) {
+				buckets.set(i, 0);
+			}
+			count.set(0);
+			totalNanos.set(0);
+			maxNanos.set(0);
+			bytes.set(0);
+			allocated.set(0);
+		}
+	}
+
+	private Stats() {
+	}
+
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	public static void setEnabled(boolean enable) {
+		enabled = enable;
+	}
+
+	/**
+	 * @return whether allocation estimates are available on this JVM
+	 */
+	public static boolean isAllocationSupported() {
+		return ALLOCATION != null;
+	}
+
+	/**
+	 * @return a timer to pass to {@link #stop(Timer, long)}, or null while stats are disabled
+	 */
+	public static Timer start(Metric metric) {
+		return enabled ? new Timer(metric) : null;
+	}
+
+	/**
+	 * @param timer from {@link #start(Metric)}, may be null
+	 * @param bytes the number of bytes processed, 0 if not meaningful
+	 */
+	public static void stop(Timer timer, long bytes) {
+		if (timer == null) {
+			return;
+		}
+		long nanos = System.nanoTime() - timer.startNanos;
+		long allocated = timer.startAllocated < 0 ? -1 : allocatedBytes() - timer.startAllocated;
+		HISTOGRAMS[timer.metric.ordinal()].record(nanos, bytes, allocated);
+	}
+
+	/**
+	 * Record a duration measured elsewhere, e.g. a {@link aura.ui.ParsePipeline} stage.
+	 */
+	public static void record(Metric metric, long nanos, long bytes) {
+		if (enabled) {
+			HISTOGRAMS[metric.ordinal()].record(nanos, bytes, -1);
+		}
+	}
+
+	public static Snapshot snapshot(Metric metric) {
+		Histogram histogram = HISTOGRAMS[metric.ordinal()];
+		long count = histogram.count.get();
+		return new Snapshot(metric, count, histogram.percentile(0.5, count), histogram.percentile(0.99, count),
+				histogram.maxNanos.get(), histogram.totalNanos.get(), histogram.bytes.get(),
+				ALLOCATION == null ? -1 : histogram.allocated.get());
+	}
+
+	public static void reset() {
+		for (Histogram histogram : HISTOGRAMS) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * @return all metrics as CSV, times in microseconds
+	 */
+	public static String toCsv() {
+		StringBuilder csv = new StringBuilder("metric,count,p50_us,p99_us,max_us,total_us,bytes,allocated_bytes\n");
+		for (Metric metric : Metric.values()) {
+			Snapshot s = snapshot(metric);
+			csv.append('"').append(metric.label).append('"').append(',').append(s.count)
+					.append(',').append(s.p50Nanos / 1000).append(',').append(s.p99Nanos / 1000)
+					.append(',').append(s.maxNanos / 1000).append(',').append(s.totalNanos / 1000)
+					.append(',').append(s.bytes).append(',').append(s.allocatedBytes).append('\n');
+		}
+		return csv.toString();
+	}
+
+	static int bucket(long nanos) {
+		if (nanos < SUB_BUCKETS) {
+			return (int) Math.max(0, nanos);
+		}
+		int log = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (log - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+		return (log - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int log = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		long lower = (1L << log) + (sub << (log - SUB_BUCKET_BITS));
+		return lower + (1L << (log - SUB_BUCKET_BITS)) - 1;
+	}
+
+	private static long allocatedBytes() {
+		return ALLOCATION == null ? -1 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static com.sun.management.ThreadMXBean allocationBean() {
+		try {
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			if (bean instanceof com.sun.management.ThreadMXBean) {
+				com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) bean;
+				if (hotspot.isThreadAllocatedMemorySupported()) {
+					hotspot.setThreadAllocatedMemoryEnabled(true);
+					return hotspot;
+				}
+			}
+		} catch (RuntimeException e) {
+			// not HotSpot, or not allowed; go without allocation estimates
+		} catch (LinkageError e) {
+			// com.sun.management is not there at all
+		}
+		return null;
+	}
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.table.AbstractTableModel;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.ActionCatalog;
+import aura.ActionIndex;
+import burp.BurpExtender;
+import burp.ITab;
+
+/**
+ * Suite tab for querying the proxy-wide {@link ActionIndex}: every action whose
+ * controller, method and param keys contain the given text.
+ */
+public class ActionIndexTab implements ITab {
+    private static final int MAX_HITS = 10000;
+    private static final String[] COLUMNS = { "#", "URL", "Action", "Controller", "Method" };
+
+    private final ProxyIndexer indexer;
+    private final JPanel panel = new JPanel(new BorderLayout());
+    private final JTextField controllerField = new JTextField(20);
+    private final JTextField methodField = new JTextField(15);
+    private final JTextField paramField = new JTextField(15);
+    private final JLabel status = new JLabel(" ");
+    private final HitTableModel hits = new HitTableModel();
+    private ParsePipeline.Ticket pendingQuery;
+
+    public ActionIndexTab(ProxyIndexer indexer) {
+        this.indexer = indexer;
+
+        ActionListener search = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runQuery();
+            }
+        };
+        this.controllerField.addActionListener(search);
+        this.methodField.addActionListener(search);
+        this.paramField.addActionListener(search);
+        JButton searchButton = new JButton("Search");
+        searchButton.addActionListener(search);
+
+        JButton historyButton = new JButton("Index proxy history");
+        historyButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ActionIndexTab.this.indexer.indexHistory();
+            }
+        });
+        JButton clearButton = new JButton("Clear index");
+        clearButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                ActionIndexTab.this.indexer.getIndex().clear();
+                hits.setHits(Collections.<ActionIndex.Hit> emptyList());
+                updateStatus(null);
+            }
+        });
+
+        JPanel queryPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        queryPanel.add(new JLabel("Controller:"));
+        queryPanel.add(this.controllerField);
+        queryPanel.add(new JLabel("Method:"));
+        queryPanel.add(this.methodField);
+        queryPanel.add(new JLabel("Param key:"));
+        queryPanel.add(this.paramField);
+        queryPanel.add(searchButton);
+        queryPanel.add(historyButton);
+        queryPanel.add(clearButton);
+
+        JTable table = new JTable(this.hits);
+        table.setAutoCreateRowSorter(true);
+        table.getColumnModel().getColumn(0).setMaxWidth(80);
+
+        this.panel.add(queryPanel, BorderLayout.PAGE_START);
+        this.panel.add(new JScrollPane(table), BorderLayout.CENTER);
+        this.panel.add(this.status, BorderLayout.PAGE_END);
+        BurpExtender.getCallbacks().customizeUiComponent(this.panel);
+
+        // keep the counters current while the tab is visible
+        Utils.refreshWhileShowing(2000, this.panel, new Runnable() {
+            @Override
+            public void run() {
+                if (pendingQuery == null) {
+                    updateStatus(null);
+                }
+            }
+        });
+    }
+
+    @Override
+    public String getTabCaption() {
+        return "Aura Index";
+    }
+
+    @Override
+    public Component getUiComponent() {
+        return this.panel;
+    }
+
+    private void runQuery() {
+        if (this.pendingQuery != null) {
+            this.pendingQuery.cancel();
+        }
+        final String controller = this.controllerField.getText();
+        final String method = this.methodField.getText();
+        final String param = this.paramField.getText();
+        final long[] queryNanos = new long[1];
+        this.status.setText("Searching...");
+        this.pendingQuery = ParsePipeline.submit("Aura index query", new ParsePipeline.Job<List<ActionIndex.Hit>>() {
+            @Override
+            public List<ActionIndex.Hit> run(ParsePipeline.Timings timings) throws Exception {
+                long start = System.nanoTime();
+                List<ActionIndex.Hit> result = indexer.getIndex().query(controller, method, param, MAX_HITS);
+                queryNanos[0] = System.nanoTime() - start;
+                return result;
+            }
+        }, new ParsePipeline.Callback<List<ActionIndex.Hit>>() {
+            @Override
+            public void done(List<ActionIndex.Hit> result, ParsePipeline.Timings timings) {
+                pendingQuery = null;
+                hits.setHits(result);
+                updateStatus(result.size() + (result.size() == MAX_HITS ? "+" : "") + " actions found in "
+                        + TimeUnit.NANOSECONDS.toMillis(queryNanos[0]) + " ms");
+            }
+
+            @Override
+            public void failed(Exception e) {
+                pendingQuery = null;
+                BaseExtender.printStackTrace(e);
+                updateStatus("Query failed: " + e);
+            }
+        });
+    }
+
+    private void updateStatus(String queryResult) {
+        ActionIndex index = this.indexer.getIndex();
+        StringBuilder text = new StringBuilder();
+        if (queryResult != null) {
+            text.append(queryResult).append(" | ");
+        }
+        text.append(index.getMessageCount()).append(" requests, ")
+                .append(index.getDocumentCount()).append(" actions, ")
+                .append(index.getTermCount()).append(" terms indexed");
+        if (index.getEvicted() > 0) {
+            text.append(", ").append(index.getEvicted()).append(" oldest actions evicted");
+        }
+        if (this.indexer.getWorker().getDropped() > 0) {
+            text.append(", ").append(this.indexer.getWorker().getDropped()).append(" requests skipped while busy");
+        }
+        ActionCatalog catalog = ActionCatalog.getInstance();
+        text.append(" | ").append(catalog.size()).append(" controller methods catalogued from ")
+                .append(catalog.getScannedResponses()).append(" scripts and definitions");
+        this.status.setText(text.toString());
+    }
+
+    @SuppressWarnings("serial")
+    private static class HitTableModel extends AbstractTableModel {
+        private List<ActionIndex.Hit> hits = Collections.emptyList();
+
+        void setHits(List<ActionIndex.Hit> hits) {
+            this.hits = hits;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return hits.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? Integer.class : String.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ActionIndex.Hit hit = hits.get(row);
+            switch (column) {
+            case 0:
+                return hit.messageRef;
+            case 1:
+                return hit.url;
+            case 2:
+                return hit.actionId;
+            case 3:
+                return hit.controller;
+            default:
+                return hit.method;
+            }
+        }
+    }
+}
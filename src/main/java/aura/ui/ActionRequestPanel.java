@@ -7,18 +7,26 @@
 package aura.ui;
 
 import java.awt.*;
+import java.awt.event.ItemEvent;
+import java.awt.event.ItemListener;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
 
 import burp.BurpExtender;
 import com.codemagi.burp.BaseExtender;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import aura.ActionCatalog;
 import aura.ActionRequest;
+import aura.JsonCodec;
+import aura.JsonPager;
 import burp.IBurpExtenderCallbacks;
 import java.nio.charset.StandardCharsets;
 
@@ -29,10 +37,11 @@ public class ActionRequestPanel extends ActionPanel {
     public boolean isEdited = false;
     public String paramStr;
     private ActionRequest actionRequest;
-    private ObjectMapper mapper = new ObjectMapper();
-    private TextField controllerField;
-    private TextField methodField;
+    private JComboBox<String> controllerField;
+    private JComboBox<String> methodField;
+    private String scheme;
     private boolean editable = true;
+    private final PagedTextView textView;
 
     public ActionRequestPanel(ActionRequest ar) {
         this(ar, true);
@@ -44,40 +53,53 @@ public class ActionRequestPanel extends ActionPanel {
         JsonNode params = ar.getParams();
         this.callbacks = BurpExtender.getCallbacks();
         this.editable = editable;
-        String pretty = getPrettyPrintedParams(params);
+        this.textView = new PagedTextView(this.textEditor, editable);
         BorderLayout panelLayout = new BorderLayout();
         panelLayout.setVgap(5);
 
         this.setLayout(panelLayout);
         JPanel headerPanel = getHeaderPanel(ar);
         this.add(headerPanel, BorderLayout.PAGE_START);
-        createBurpTextPane(pretty);
+        createBurpTextPane(params);
 
-        this.add(this.textEditor.getComponent());
+        this.add(this.textView);
 
         this.callbacks.customizeUiComponent(this);
     }
 
-    public String getPrettyPrintedParams(JsonNode params) {
-        String pretty;
+    /**
+     * Params too large to edit as a whole are shown a page at a time, read-only.
+     */
+    private void createBurpTextPane(JsonNode params) {
         try {
-            pretty = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(params);
-        } catch (JsonProcessingException e) {
+            this.textView.setPager(JsonPager.of(params));
+        } catch (IOException e) {
             BaseExtender.printStackTrace(e);
-            pretty = e.getOriginalMessage();
+            this.textView.setText(String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
         }
-        return pretty;
-    }
-
-    private void createBurpTextPane(String paramText) {
-        this.textEditor.setText(paramText.getBytes(StandardCharsets.UTF_8));
-        this.textEditor.setEditable(editable);
     }
 
     public ActionRequest getActionRequest() {
         return this.actionRequest;
     }
 
+    /**
+     * Point the panel at another copy of the same action, e.g. when the tab
+     * copies a shared message just before applying edits to it.
+     */
+    public void setActionRequest(ActionRequest actionRequest) {
+        this.actionRequest = actionRequest;
+    }
+
+    /**
+     * @return true if the params, controller or method were changed in the panel
+     */
+    public boolean hasChanges() {
+        return this.textEditor.isTextModified()
+                || !this.actionRequest.calledController.equals(getText(this.controllerField))
+                || !this.actionRequest.calledMethod.equals(getText(this.methodField));
+    }
+
     public boolean isMessageEdited() {
         return this.textEditor.isTextModified();
     }
@@ -85,21 +107,21 @@ public class ActionRequestPanel extends ActionPanel {
     public void updateActionBurp() throws JsonProcessingException, IOException {
         if (this.textEditor.isTextModified()) {
             String modifiedText = new String(textEditor.getText(), StandardCharsets.UTF_8);
-            JsonNode newParamJson = mapper.readTree(modifiedText);
+            JsonNode newParamJson = JsonCodec.READER.readTree(modifiedText);
             this.actionRequest.updateParams((ObjectNode) newParamJson);
         }
-        if (!this.actionRequest.calledController.equals(this.controllerField.getText())) {
-            this.actionRequest.updateController(this.controllerField.getText());
+        if (!this.actionRequest.calledController.equals(getText(this.controllerField))) {
+            this.actionRequest.updateController(getText(this.controllerField));
         }
-        if (!this.actionRequest.calledMethod.equals(this.methodField.getText())) {
-            this.actionRequest.updateMethod(this.methodField.getText());
+        if (!this.actionRequest.calledMethod.equals(getText(this.methodField))) {
+            this.actionRequest.updateMethod(getText(this.methodField));
         }
     }
 
     @Deprecated
     public void updateAction() throws JsonProcessingException, IOException {
         if (isEdited) {
-            JsonNode newParamJson = mapper.readTree(this.paramStr);
+            JsonNode newParamJson = JsonCodec.READER.readTree(this.paramStr);
             this.actionRequest.updateParams((ObjectNode) newParamJson);
         }
     }
@@ -108,13 +130,30 @@ public class ActionRequestPanel extends ActionPanel {
         JPanel headerPanel = new JPanel(new GridBagLayout());
         GridBagConstraints gbc = new GridBagConstraints();
 
+        // editable fields offer the controllers and methods in the ActionCatalog
+        ActionCatalog catalog = ActionCatalog.getInstance();
+        this.scheme = ar.getParsedDescriptor() == null ? null : ar.getParsedDescriptor().scheme;
+        List<String> none = Collections.emptyList();
+
         Label controllerLabel = new Label("Controller");
-        this.controllerField = new TextField(ar.calledController);
-        this.controllerField.setEditable(editable);
+        this.controllerField = createField(ar.calledController, editable ? catalog.getControllers(this.scheme) : none,
+                "ui.force.components.controllers.Controller");
 
         Label methodLabel = new Label("Method");
-        this.methodField = new TextField(ar.calledMethod, 20);
-        this.methodField.setEditable(editable);
+        this.methodField = createField(ar.calledMethod, editable ? catalog.getMethods(this.scheme, ar.calledController) : none,
+                "getRecordWithFields");
+
+        if (editable) {
+            this.controllerField.addItemListener(new ItemListener() {
+                @Override
+                public void itemStateChanged(ItemEvent e) {
+                    if (e.getStateChange() == ItemEvent.SELECTED) {
+                        setItems(methodField, ActionCatalog.getInstance().getMethods(scheme, getText(controllerField)),
+                                getText(methodField));
+                    }
+                }
+            });
+        }
 
         // Adding Controller label to grid
         gbc.gridx = 0; // Column 0
@@ -142,4 +181,30 @@ public class ActionRequestPanel extends ActionPanel {
 
         return headerPanel;
     }
+
+    private JComboBox<String> createField(String value, List<String> items, String prototype) {
+        JComboBox<String> field = new JComboBox<String>();
+        field.setPrototypeDisplayValue(prototype);
+        field.setEditable(editable);
+        field.setEnabled(editable);
+        setItems(field, items, value == null ? "" : value);
+        return field;
+    }
+
+    /**
+     * Replace the choices, with the given value in the field.
+     */
+    private static void setItems(JComboBox<String> field, List<String> items, String value) {
+        DefaultComboBoxModel<String> model = new DefaultComboBoxModel<String>(items.toArray(new String[items.size()]));
+        if (model.getIndexOf(value) == -1) {
+            model.insertElementAt(value, 0);
+        }
+        model.setSelectedItem(value);
+        field.setModel(model);
+    }
+
+    private static String getText(JComboBox<String> field) {
+        Object value = field.isEditable() ? field.getEditor().getItem() : field.getSelectedItem();
+        return value == null ? "" : value.toString();
+    }
 }
@@ -7,34 +7,154 @@
 package aura.ui;
 
 import java.awt.BorderLayout;
+import java.awt.CardLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+
+import javax.swing.JPanel;
+import javax.swing.JToggleButton;
 
 import burp.BurpExtender;
 import com.codemagi.burp.BaseExtender;
-import com.fasterxml.jackson.core.JsonProcessingException;
 
 import aura.ActionResponse;
+import aura.JsonPager;
 import burp.IBurpExtenderCallbacks;
 
 @SuppressWarnings("serial")
 public class ActionResponsePanel extends ActionPanel {
+	private static final String TEXT_CARD = "text";
+	private static final String TREE_CARD = "tree";
+
 	private IBurpExtenderCallbacks callbacks;
+	private final ActionResponse response;
+	private final CardLayout cards = new CardLayout();
+	private final JPanel cardPanel = new JPanel(cards);
+	private final JToggleButton treeToggle = new JToggleButton("Tree view");
+	private final PagedTextView textView;
+	private JsonTreePanel treePanel;
 	
 	public ActionResponsePanel(ActionResponse response){
 		super();
 		this.callbacks = BurpExtender.getCallbacks();
+		this.response = response;
 		this.setLayout(new BorderLayout());
 		
-		this.textEditor = this.callbacks.createTextEditor();
-		this.textEditor.setEditable(false);
-		try {
-			this.textEditor.setText(response.getResponseString().getBytes());
-		} catch (JsonProcessingException e) {
-			// TODO Auto-generated catch block
-			BaseExtender.printStackTrace(e);
-			this.textEditor.setText("Invalid JSON".getBytes());
-		}
-		add(this.textEditor.getComponent());
+		this.textView = new PagedTextView(this.textEditor, false);
+		this.cardPanel.add(this.textView, TEXT_CARD);
+		this.treeToggle.setEnabled(false);
+		this.treeToggle.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				if(treeToggle.isSelected()){
+					showTree();
+				} else {
+					showText();
+				}
+			}
+		});
+		JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+		toolbar.add(this.treeToggle);
+		add(toolbar, BorderLayout.PAGE_START);
+		add(this.cardPanel, BorderLayout.CENTER);
 		
 		callbacks.customizeUiComponent(this);
+		loadResponse();
+	}
+	
+	@Override
+	public byte[] getSelectedText(){
+		if(treeToggle.isSelected() && treePanel != null){
+			return treePanel.getSelectedText();
+		}
+		return super.getSelectedText();
+	}
+	
+	/**
+	 * Render the returnValue in the background, this panel is only created once
+	 * its tab is selected. The text is printed straight from the response bytes,
+	 * and only the first page of a large value. The tree is only built if the
+	 * user switches to the tree view or goes to a path.
+	 */
+	private void loadResponse(){
+		ParsePipeline.submit("Aura returnValue", new ParsePipeline.Job<JsonPager>() {
+			@Override
+			public JsonPager run(ParsePipeline.Timings timings) throws Exception {
+				JsonPager pager = response.getPager();
+				pager.isLarge();
+				timings.lap(ParsePipeline.Stage.RENDER);
+				return pager;
+			}
+		}, new ParsePipeline.Callback<JsonPager>() {
+			@Override
+			public void done(JsonPager pager, ParsePipeline.Timings timings) {
+				treeToggle.setEnabled(true);
+				try {
+					textView.setPager(pager);
+				} catch (IOException e) {
+					failed(e);
+					return;
+				}
+				timings.lap(ParsePipeline.Stage.BUILD_UI);
+				timings.finish();
+			}
+
+			@Override
+			public void failed(Exception e) {
+				BaseExtender.printStackTrace(e);
+				textView.setText("Invalid JSON".getBytes());
+			}
+		});
+	}
+	
+	/**
+	 * The top level of the returnValue is scanned in the background the first
+	 * time, the toggle is disabled until the tree is ready.
+	 */
+	private void showTree(){
+		if(treePanel != null){
+			cards.show(cardPanel, TREE_CARD);
+			return;
+		}
+		treeToggle.setEnabled(false);
+		ParsePipeline.submit("Aura returnValue tree", new ParsePipeline.Job<JsonTreeModel>() {
+			@Override
+			public JsonTreeModel run(ParsePipeline.Timings timings) throws Exception {
+				JsonTreeModel model = response.readRaw(new ActionResponse.RawReader<JsonTreeModel>() {
+					@Override
+					public JsonTreeModel read(byte[] json, int offset, int length) throws IOException {
+						return new JsonTreeModel("returnValue", json, offset, length);
+					}
+				});
+				timings.lap(ParsePipeline.Stage.PARSE);
+				return model;
+			}
+		}, new ParsePipeline.Callback<JsonTreeModel>() {
+			@Override
+			public void done(JsonTreeModel model, ParsePipeline.Timings timings) {
+				treeToggle.setEnabled(true);
+				treePanel = new JsonTreePanel(model);
+				callbacks.customizeUiComponent(treePanel);
+				cardPanel.add(treePanel, TREE_CARD);
+				if(treeToggle.isSelected()){
+					cards.show(cardPanel, TREE_CARD);
+				}
+				timings.lap(ParsePipeline.Stage.BUILD_UI);
+				timings.finish();
+			}
+
+			@Override
+			public void failed(Exception e) {
+				BaseExtender.printStackTrace(e);
+				treeToggle.setEnabled(true);
+				treeToggle.setSelected(false);
+			}
+		});
+	}
+	
+	private void showText(){
+		cards.show(cardPanel, TEXT_CARD);
 	}
 }
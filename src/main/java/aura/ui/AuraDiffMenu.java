@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.AuraDetector;
+import aura.AuraDiff;
+import aura.AuraMessage;
+import aura.AuraResponse;
+import aura.FormBodyCodec;
+import aura.JsonPrinter;
+import burp.BurpExtender;
+import burp.IBurpExtenderCallbacks;
+import burp.IContextMenuFactory;
+import burp.IContextMenuInvocation;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+import burp.ITextEditor;
+
+/**
+ * "Aura Diff" context menu item: compares the actions of two selected Aura
+ * messages with {@link AuraDiff} and shows the changed paths in a window.
+ */
+public class AuraDiffMenu implements IContextMenuFactory {
+    private final IBurpExtenderCallbacks callbacks;
+
+    public AuraDiffMenu() {
+        this.callbacks = BurpExtender.getCallbacks();
+    }
+
+    @Override
+    public List<JMenuItem> createMenuItems(IContextMenuInvocation invocation) {
+        final IHttpRequestResponse[] messages = invocation.getSelectedMessages();
+        if (messages == null || messages.length != 2 || !isAura(messages[0]) || !isAura(messages[1])) {
+            return null;
+        }
+        JMenuItem item = new JMenuItem("Aura Diff");
+        item.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                diff(messages[0], messages[1]);
+            }
+        });
+        List<JMenuItem> items = new ArrayList<JMenuItem>();
+        items.add(item);
+        return items;
+    }
+
+    private static boolean isAura(IHttpRequestResponse message) {
+        byte[] request = message.getRequest();
+        return (request != null && AuraDetector.isAuraRequest(request, true))
+                || AuraDetector.isAuraResponse(message.getResponse());
+    }
+
+    private void diff(IHttpRequestResponse before, IHttpRequestResponse after) {
+        final byte[] beforeRequest = before.getRequest();
+        final byte[] beforeResponse = before.getResponse();
+        final byte[] afterRequest = after.getRequest();
+        final byte[] afterResponse = after.getResponse();
+        final String title = "Aura Diff: " + describe(before) + " vs " + describe(after);
+        ParsePipeline.submit("Aura diff", new ParsePipeline.Job<byte[]>() {
+            @Override
+            public byte[] run(ParsePipeline.Timings timings) throws Exception {
+                AuraMessage beforeMessage = parseRequest(beforeRequest);
+                AuraMessage afterMessage = parseRequest(afterRequest);
+                AuraResponse beforeActions = parseResponse(beforeResponse);
+                AuraResponse afterActions = parseResponse(afterResponse);
+                timings.lap(ParsePipeline.Stage.PARSE);
+                byte[] report = JsonPrinter.print(AuraDiff.diff(beforeMessage, beforeActions, afterMessage, afterActions));
+                timings.lap(ParsePipeline.Stage.RENDER);
+                return report;
+            }
+        }, new ParsePipeline.Callback<byte[]>() {
+            @Override
+            public void done(byte[] report, ParsePipeline.Timings timings) {
+                long millis = TimeUnit.NANOSECONDS.toMillis(timings.getNanos(ParsePipeline.Stage.PARSE)
+                        + timings.getNanos(ParsePipeline.Stage.RENDER));
+                show(title, report, "Compared in " + millis + " ms");
+            }
+
+            @Override
+            public void failed(Exception e) {
+                BaseExtender.printStackTrace(e);
+                callbacks.issueAlert("Aura Diff failed: " + e.getMessage());
+            }
+        });
+    }
+
+    private void show(String title, byte[] report, String status) {
+        ITextEditor text = this.callbacks.createTextEditor();
+        text.setEditable(false);
+        Utils.setText(text, report);
+        JPanel panel = new JPanel(new BorderLayout());
+        panel.add(text.getComponent(), BorderLayout.CENTER);
+        panel.add(new JLabel(status), BorderLayout.PAGE_END);
+        this.callbacks.customizeUiComponent(panel);
+
+        JFrame frame = new JFrame(title);
+        frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.getContentPane().add(panel);
+        frame.setSize(900, 700);
+        frame.setLocationByPlatform(true);
+        frame.setVisible(true);
+    }
+
+    private static String describe(IHttpRequestResponse message) {
+        IHttpService service = message.getHttpService();
+        return service == null ? "message" : service.getHost();
+    }
+
+    /**
+     * @return the message, or null if the request is not an Aura request
+     */
+    private static AuraMessage parseRequest(byte[] request) throws IOException {
+        if (request == null || !AuraDetector.isAuraRequest(request, true)) {
+            return null;
+        }
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+        int start = params.getValueStart(FormBodyCodec.MESSAGE);
+        if (start == -1) {
+            return null;
+        }
+        return new AuraMessage(FormBodyCodec.decode(request, start, params.getValueEnd(FormBodyCodec.MESSAGE)));
+    }
+
+    /**
+     * @return the actions, or null if the response is not an Aura response
+     */
+    private static AuraResponse parseResponse(byte[] response) throws IOException {
+        if (!AuraDetector.isAuraResponse(response)) {
+            return null;
+        }
+        int offset = AuraDetector.getBodyOffset(response);
+        return new AuraResponse(response, offset, response.length - offset);
+    }
+}
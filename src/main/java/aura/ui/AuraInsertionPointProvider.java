@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.AuraDetector;
+import aura.ParamTemplate;
+import burp.IHttpRequestResponse;
+import burp.IScannerInsertionPoint;
+import burp.IScannerInsertionPointProvider;
+
+/**
+ * Gives the scanner one insertion point per scalar value in the params of
+ * each Aura action, instead of the whole URL-encoded message parameter.
+ */
+public class AuraInsertionPointProvider implements IScannerInsertionPointProvider {
+
+    @Override
+    public List<IScannerInsertionPoint> getInsertionPoints(IHttpRequestResponse baseRequestResponse) {
+        byte[] request = baseRequestResponse.getRequest();
+        if (request == null || !AuraDetector.isAuraRequest(request, true)) {
+            return null;
+        }
+        try {
+            ParamTemplate template = ParamTemplate.of(request);
+            if (template == null || template.getLeaves().isEmpty()) {
+                return null;
+            }
+            List<IScannerInsertionPoint> points = new ArrayList<IScannerInsertionPoint>(template.getLeaves().size());
+            for (ParamTemplate.Leaf leaf : template.getLeaves()) {
+                points.add(new AuraInsertionPoint(leaf));
+            }
+            return points;
+        } catch (RuntimeException e) {
+            BaseExtender.printStackTrace(e);
+            return Collections.emptyList();
+        }
+    }
+
+    private static class AuraInsertionPoint implements IScannerInsertionPoint {
+        private final ParamTemplate.Leaf leaf;
+        private final String name;
+
+        AuraInsertionPoint(ParamTemplate.Leaf leaf) {
+            this.leaf = leaf;
+            String action = leaf.descriptor == null ? "" : " " + leaf.descriptor.shortController + "." + leaf.descriptor.method;
+            this.name = "Aura action " + leaf.actionId + action + " " + leaf.pointer;
+        }
+
+        @Override
+        public String getInsertionPointName() {
+            return this.name;
+        }
+
+        @Override
+        public String getBaseValue() {
+            return this.leaf.baseValue;
+        }
+
+        @Override
+        public byte[] buildRequest(byte[] payload) {
+            return this.leaf.buildRequest(payload);
+        }
+
+        @Override
+        public int[] getPayloadOffsets(byte[] payload) {
+            return this.leaf.getPayloadOffsets(payload);
+        }
+
+        @Override
+        public byte getInsertionPointType() {
+            return INS_EXTENSION_PROVIDED;
+        }
+    }
+}
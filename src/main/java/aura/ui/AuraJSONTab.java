@@ -6,25 +6,33 @@
  */
 package aura.ui;
 
+import java.awt.BorderLayout;
+import java.awt.CardLayout;
 import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.IOException;
 
+import aura.AuraDetector;
+import aura.ContextStore;
+import aura.FormBodyCodec;
+import aura.JsonCodec;
+import aura.JsonPager;
+import aura.JsonPrinter;
+import aura.ParseCache;
+import aura.Stats;
 import burp.*;
 import com.codemagi.burp.BaseExtender;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 import javax.swing.*;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 
 public class AuraJSONTab implements IMessageEditorTab {
 
-    private static final String AURA_INDICATOR = "aura.token";
-    private static final String AURA_RESPONSE_START = "while(1)";
     private static final String AURA_DATAPARAM = "message";
 	private static final String TAB_CAPTION = "Aura JSON";
 	private String auraDataparam;
@@ -34,9 +42,22 @@ public class AuraJSONTab implements IMessageEditorTab {
     private IExtensionHelpers helpers;
     private IHttpService httpService;
     public ITextEditor jsonText;
+    private final PagedTextView jsonView;
     public boolean editable;
     public byte[] content;
 
+    // the Aura Context tab only: a read-only view of what changed since the previous context
+    private static final String FULL_CARD = "full";
+    private static final String CHANGES_CARD = "changes";
+    private static volatile boolean showChangesOnly = false;
+    private JPanel contextPanel;
+    private CardLayout contextCards;
+    private JPanel contextCardPanel;
+    private JCheckBox changesOnlyBox;
+    private ITextEditor changesText;
+    private ContextStore.Context context;
+    private ContextStore.Context previousContext;
+
     public AuraJSONTab(IMessageEditorController controller, boolean editable) {
         this.callbacks = BurpExtender.getCallbacks();
         this.helpers = callbacks.getHelpers();
@@ -44,6 +65,7 @@ public class AuraJSONTab implements IMessageEditorTab {
         this.httpService = controller.getHttpService();
         this.jsonText = callbacks.createTextEditor();
         jsonText.setEditable(editable);
+        this.jsonView = new PagedTextView(jsonText, editable);
 		this.auraDataparam = AURA_DATAPARAM;
 		this.caption = TAB_CAPTION;
     }
@@ -55,6 +77,7 @@ public class AuraJSONTab implements IMessageEditorTab {
         this.httpService = controller.getHttpService();
         this.jsonText = callbacks.createTextEditor();
         jsonText.setEditable(editable);
+        this.jsonView = new PagedTextView(jsonText, editable);
 		this.auraDataparam = auraDataparam;
 		this.caption = caption;
     }
@@ -66,7 +89,32 @@ public class AuraJSONTab implements IMessageEditorTab {
 
     @Override
     public Component getUiComponent() {
-        return jsonText.getComponent();
+        if (!isContextTab()) {
+            return jsonView;
+        }
+        if (this.contextPanel == null) {
+            this.changesText = callbacks.createTextEditor();
+            this.changesText.setEditable(false);
+            this.contextCards = new CardLayout();
+            this.contextCardPanel = new JPanel(this.contextCards);
+            this.contextCardPanel.add(jsonView, FULL_CARD);
+            this.contextCardPanel.add(this.changesText.getComponent(), CHANGES_CARD);
+            this.changesOnlyBox = new JCheckBox("Changes only", showChangesOnly);
+            this.changesOnlyBox.setToolTipText("Show only what differs from the context sent to this host before this one");
+            this.changesOnlyBox.addActionListener(new ActionListener() {
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    showChangesOnly = changesOnlyBox.isSelected();
+                    showContextView();
+                }
+            });
+            this.contextPanel = new JPanel(new BorderLayout());
+            this.contextPanel.add(this.changesOnlyBox, BorderLayout.PAGE_START);
+            this.contextPanel.add(this.contextCardPanel, BorderLayout.CENTER);
+            callbacks.customizeUiComponent(this.contextPanel);
+            showContextView();
+        }
+        return this.contextPanel;
     }
 
     @Override
@@ -74,59 +122,66 @@ public class AuraJSONTab implements IMessageEditorTab {
         if (content == null || content.length == 0)
             return false;
         // No support for responses yet (invalid JSON)
-        return (isRequest && isRequestEnabled(content));// || isResponseEnabled(content);			
+        return isRequest && AuraDetector.isAuraRequest(content, this.httpService != null)
+                && AuraDetector.hasParameter(content, auraDataparam);
     }
 
-    private boolean isRequestEnabled(byte[] content) {
+    @Override
+    public void setMessage(byte[] content, boolean isRequest) {
         if (content == null || content.length == 0)
-            return false;
-
-        boolean isAuraMessage = (null != helpers.getRequestParameter(content, AURA_INDICATOR));
-
-        if (this.httpService != null) {
-            boolean isAuraEndpoint = true; // true until proven wrong
-            URL requestUrl = Utils.getRequestUrl(httpService, content);
-
-            if (requestUrl != null) {
-                isAuraEndpoint = requestUrl.getPath().contains("/aura");
-            }
-            return isAuraEndpoint && isAuraMessage;
-        } else {
-            return isAuraMessage;
+            return;
+        Stats.Timer timer = Stats.start(Stats.Metric.JSON_SET_MESSAGE);
+        try {
+            showMessage(content);
+        } finally {
+            Stats.stop(timer, content.length);
         }
     }
 
-    //TODO figure out general JSON for response
-    private boolean isResponseEnabled(byte[] content) {
-        IResponseInfo response = helpers.analyzeResponse(content);
-        String mimeType = response.getStatedMimeType();
-        if (!mimeType.equals("JSON")) {
-            return false;
+    private void showMessage(byte[] content) {
+        this.content = content;
+        this.jsonView.setText("".getBytes(StandardCharsets.UTF_8));
+
+        if (isContextTab() && showContext(content)) {
+            return;
         }
-        String body = helpers.bytesToString(content);
-        body = body.substring(response.getBodyOffset());
-        return body.substring(0, AURA_RESPONSE_START.length()).equals(AURA_RESPONSE_START);
-    }
 
-    @Override
-    public void setMessage(byte[] content, boolean isRequest) {
-        if (content == null || content.length == 0)
+        // the cache is keyed on the body, so only a value in the body can use it
+        boolean inBody = FormBodyCodec.scan(content).has(auraDataparam);
+        int bodyOffset = AuraDetector.getBodyOffset(content);
+        int bodyLength = content.length - bodyOffset;
+        long bodyHash = inBody ? ParseCache.hash(content, bodyOffset, bodyLength) : 0;
+        // the printer settings are part of the key, changing them renders again
+        String cacheNamespace = "json:" + auraDataparam + ":" + JsonPrinter.getIndent() + ":" + JsonPrinter.getMaxMb()
+                + ":" + JsonPager.getThresholdKb();
+        byte[] cached = inBody ? (byte[]) ParseCache.getInstance().get(cacheNamespace, bodyHash, bodyLength) : null;
+        if (cached != null) {
+            this.jsonView.setText(cached);
             return;
-        this.content = content;
-        this.jsonText.setText("".getBytes(StandardCharsets.UTF_8));
-        IParameter param = helpers.getRequestParameter(content, auraDataparam);
+        }
 
-        String jsonString = param.getValue();
+        byte[] json = getDecodedValue(content);
+        if (json == null) {
+            return;
+        }
         try {
-            jsonString = Utils.urlDecode(jsonString);
-            String pretty = getPrettifiedJSON(jsonString);
-            this.jsonText.setText(pretty.getBytes(StandardCharsets.UTF_8));
+            // streamed, the message is never held as a tree here unless the user goes to a path
+            JsonPager pager = JsonPager.of(json, 0, json.length, false);
+            if (pager.isLarge()) {
+                this.jsonView.setPager(pager);
+                return;
+            }
+            byte[] pretty = pager.remaining();
+            if (inBody) {
+                ParseCache.getInstance().put(cacheNamespace, bodyHash, bodyLength, pretty, pretty.length);
+            }
+            this.jsonView.setText(pretty);
         } catch (JsonProcessingException e) {
             BaseExtender.printStackTrace(e);
-            this.jsonText.setText(jsonString.getBytes(StandardCharsets.UTF_8));
+            this.jsonView.setText(json);
         } catch (IOException e) {
             BaseExtender.printStackTrace(e);
-            this.jsonText.setText(jsonString.getBytes(StandardCharsets.UTF_8));
+            this.jsonView.setText(json);
         }
 
     }
@@ -136,13 +191,21 @@ public class AuraJSONTab implements IMessageEditorTab {
         if (!isModified()) {
             return this.content;
         }
+        Stats.Timer timer = Stats.start(Stats.Metric.JSON_GET_MESSAGE);
+        try {
+            return buildMessage();
+        } finally {
+            Stats.stop(timer, this.content.length);
+        }
+    }
+
+    private byte[] buildMessage() {
 
-        ObjectMapper mapper = new ObjectMapper();
         JsonNode auraActionsJson = null;
 
-        String prettyJsonString = new String(this.jsonText.getText(), StandardCharsets.UTF_8);
+        byte[] prettyJson = this.jsonText.getText();
         try {
-            auraActionsJson = mapper.readValue(prettyJsonString, JsonNode.class);
+            auraActionsJson = JsonCodec.READER.readTree(prettyJson);
         } catch (JsonParseException e) {
             callbacks.issueAlert("Invalid JSON entered, using original payload");
             BaseExtender.printStackTrace(e);
@@ -157,8 +220,18 @@ public class AuraJSONTab implements IMessageEditorTab {
             return this.content;
         }
 
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(content);
+        if (params.has(auraDataparam)) {
+            // encode straight into the new request body
+            byte[] auraActionsBytes = auraActionsJson.toString().getBytes(StandardCharsets.UTF_8);
+            return FormBodyCodec.replaceValue(content, params.getValueStart(auraDataparam),
+                    params.getValueEnd(auraDataparam), auraActionsBytes);
+        }
+        // keep the parameter where it was, e.g. in the query string
+        IParameter original = helpers.getRequestParameter(content, auraDataparam);
+        byte type = original == null ? IParameter.PARAM_BODY : original.getType();
         String auraActionsString = Utils.urlEncode(auraActionsJson.toString());
-        IParameter messageParam = helpers.buildParameter(auraDataparam, auraActionsString, IParameter.PARAM_BODY);
+        IParameter messageParam = helpers.buildParameter(auraDataparam, auraActionsString, type);
         return helpers.updateParameter(content, messageParam);
     }
 
@@ -169,14 +242,81 @@ public class AuraJSONTab implements IMessageEditorTab {
 
     @Override
     public byte[] getSelectedData() {
+        if (this.changesText != null && showChangesOnly) {
+            return this.changesText.getSelectedText();
+        }
         return this.jsonText.getSelectedText();
     }
 
-    private String getPrettifiedJSON(String inputText) throws JsonProcessingException, IOException {
-        ObjectMapper mapper = new ObjectMapper();
-        JsonNode json = mapper.readTree(inputText);
-        String pretty = mapper.writerWithDefaultPrettyPrinter().writeValueAsString(json);
-        return pretty;
+    private boolean isContextTab() {
+        return FormBodyCodec.CONTEXT.equals(auraDataparam);
+    }
+
+    /**
+     * Show the context from the {@link ContextStore}, which only parses and
+     * renders values it hasn't seen before.
+     *
+     * @return false if the context couldn't be shown this way
+     */
+    private boolean showContext(byte[] content) {
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(content);
+        if (!params.has(auraDataparam)) {
+            return false;
+        }
+        String host = this.httpService == null ? "" : this.httpService.getHost();
+        try {
+            ContextStore store = ContextStore.getInstance();
+            this.context = store.get(content, params.getValueStart(auraDataparam), params.getValueEnd(auraDataparam));
+            this.previousContext = store.getPrevious(host, this.context);
+            byte[] pretty = this.context.getPretty();
+            this.jsonView.setText(pretty);
+            this.jsonText.setEditable(this.editable && !JsonPrinter.isTruncated(pretty));
+        } catch (IOException e) {
+            // not valid JSON, show it the usual way
+            this.context = null;
+            this.previousContext = null;
+            return false;
+        }
+        showContextView();
+        return true;
+    }
+
+    private void showContextView() {
+        if (this.contextPanel == null) {
+            return;
+        }
+        if (!showChangesOnly || this.context == null) {
+            this.changesOnlyBox.setSelected(showChangesOnly);
+            this.contextCards.show(this.contextCardPanel, FULL_CARD);
+            return;
+        }
+        try {
+            if (this.previousContext == null) {
+                this.changesText.setText("No earlier context from this host to compare with.".getBytes(StandardCharsets.UTF_8));
+            } else {
+                Utils.setText(this.changesText, this.context.getChangesSince(this.previousContext));
+            }
+        } catch (IOException e) {
+            BaseExtender.printStackTrace(e);
+        }
+        this.changesOnlyBox.setSelected(true);
+        this.contextCards.show(this.contextCardPanel, CHANGES_CARD);
+    }
+
+    /**
+     * @return the URL-decoded value of auraDataparam, or null if the request has none
+     */
+    private byte[] getDecodedValue(byte[] content) {
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(content);
+        if (params.has(auraDataparam)) {
+            return FormBodyCodec.decode(content, params.getValueStart(auraDataparam), params.getValueEnd(auraDataparam));
+        }
+        // not one of the Aura body parameters, let Burp find it
+        IParameter param = helpers.getRequestParameter(content, auraDataparam);
+        if (param == null) {
+            return null;
+        }
+        return Utils.urlDecode(param.getValue()).getBytes(StandardCharsets.UTF_8);
     }
 
 }
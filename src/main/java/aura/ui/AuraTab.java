@@ -8,7 +8,7 @@ package aura.ui;
 
 import java.awt.Component;
 import java.io.IOException;
-import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -19,21 +19,29 @@ import burp.*;
 import com.codemagi.burp.BaseExtender;
 import com.fasterxml.jackson.core.JsonProcessingException;
 
+import aura.ActionCorrelation;
 import aura.ActionRequest;
+import aura.ActionResponse;
+import aura.AuraDetector;
 import aura.AuraMessage;
 import aura.AuraResponse;
+import aura.FormBodyCodec;
+import aura.ParseCache;
+import aura.Stats;
 
 import java.nio.charset.StandardCharsets;
 
 public class AuraTab implements IMessageEditorTab {
 
-    private static final String AURA_DATAPARAM = "message";
-    private static final String AURA_INDICATOR = "aura.token";
-    private static final String AURA_RESPONSE_START = "while(1)";
+    private static final String AURA_DATAPARAM = FormBodyCodec.MESSAGE;
+    private static final String REQUEST_CACHE = "request";
+    private static final String RESPONSE_CACHE = "response";
 
     public JTabbedPane pane;
     public byte[] content;
     private AuraMessage currentAuraMessage;
+    // true while currentAuraMessage is the instance shared through the ParseCache
+    private boolean sharedMessage = false;
 
     private boolean editable;
     private boolean isEdited = false;
@@ -44,12 +52,16 @@ public class AuraTab implements IMessageEditorTab {
     public Map<String, ActionRequestPanel> actionRequestTabs = new HashMap<String, ActionRequestPanel>();
     public Map<String, ActionResponsePanel> actionResponseTabs = new HashMap<String, ActionResponsePanel>();
     private IHttpService httpService;
+    private IMessageEditorController controller;
+    private ParsePipeline.Ticket pendingJob;
 
     public AuraTab(IMessageEditorController controller, boolean editable) {
         this.pane = new JTabbedPane();
+        LazyActionTab.buildOnSelect(this.pane);
         this.callbacks = BurpExtender.getCallbacks();
         this.helpers = callbacks.getHelpers();
         this.httpService = controller.getHttpService();
+        this.controller = controller;
         this.editable = editable;
     }
 
@@ -67,52 +79,8 @@ public class AuraTab implements IMessageEditorTab {
     public boolean isEnabled(byte[] content, boolean isRequest) {
         if (content == null || content.length == 0)
             return false;
-        return (isRequest && isRequestEnabled(content)) || isResponseEnabled(content);
-    }
-
-    /**
-     * Return true if the content is a valid Aura request.
-     * If the request is valid Aura, additionally parse it into an AuraMessage object.
-     *
-     * @param content An HTTP message
-     * @return true if the content is a valid Aura request.
-     */
-    private boolean isRequestEnabled(byte[] content) {
-        if (content == null || content.length == 0)
-            return false;
-
-        boolean isAuraMessage = (null != helpers.getRequestParameter(content, AURA_INDICATOR));
-
-        if (this.httpService != null) {
-            boolean isAuraEndpoint = true; // true until proven wrong
-            IRequestInfo request = helpers.analyzeRequest(this.httpService, content);
-
-            if (request.getUrl() != null) {
-                isAuraEndpoint = request.getUrl().getPath().contains("/aura");
-            }
-
-            if (isAuraEndpoint && isAuraMessage) {
-                requestSetup(content);
-                return true;
-            };
-        } else {
-            return isAuraMessage;
-        }
-        return false;
-    }
-
-    private boolean isResponseEnabled(byte[] content) {
-        if (content == null || content.length == 0)
-            return false;
-
-        IResponseInfo response = helpers.analyzeResponse(content);
-        String mimeType = response.getStatedMimeType();
-        if (!mimeType.equals("JSON")) {
-            return false;
-        }
-        String body = helpers.bytesToString(content);
-        body = body.substring(response.getBodyOffset());
-        return body.substring(0, AURA_RESPONSE_START.length()).equals(AURA_RESPONSE_START);
+        return (isRequest && AuraDetector.isAuraRequest(content, this.httpService != null))
+                || AuraDetector.isAuraResponse(content);
     }
 
     @Override
@@ -127,84 +95,255 @@ public class AuraTab implements IMessageEditorTab {
         }
     }
 
-    public void requestSetup(byte[] content) {
+    public void requestSetup(final byte[] content) {
         if (content == null || content.length == 0)
             return;
 
+        Stats.Timer timer = Stats.start(Stats.Metric.REQUEST_SETUP);
         this.cleanTab();
         this.content = content;
-        IParameter param = helpers.getRequestParameter(content, AURA_DATAPARAM);
-        String jsonText = Utils.urlDecode(param.getValue());
-        // throw jsonText into extra panel
+        showPlaceholder();
 
-        try {
-            this.currentAuraMessage = new AuraMessage(jsonText);
+        this.pendingJob = ParsePipeline.submit("Aura request", new ParsePipeline.Job<AuraMessage>() {
+            @Override
+            public AuraMessage run(ParsePipeline.Timings timings) throws Exception {
+                return parseRequest(content, timings);
+            }
+        }, new ParsePipeline.Callback<AuraMessage>() {
+            @Override
+            public void done(AuraMessage result, ParsePipeline.Timings timings) {
+                pendingJob = null;
+                showRequest(result, getCorrelated(content));
+                timings.lap(ParsePipeline.Stage.BUILD_UI);
+                timings.finish();
+            }
 
-            //create tabs for each aura action
-            Iterator<String> iter = currentAuraMessage.actionMap.keySet().iterator();
-            while (iter.hasNext()) {
-                String nextId = iter.next();
-                ActionRequest nextActionRequest = currentAuraMessage.actionMap.get(nextId);
-                ActionRequestPanel arPanel = new ActionRequestPanel(nextActionRequest, editable);
+            @Override
+            public void failed(Exception e) {
+                pendingJob = null;
+                BaseExtender.printStackTrace(e);
+                showError(e);
+            }
+        });
+        Stats.stop(timer, content.length);
+    }
 
-                this.actionRequestTabs.put(nextId, arPanel);
-                this.pane.add(nextId + "::" + nextActionRequest.calledMethod, arPanel);
+    /**
+     * Background half of requestSetup: decode and parse the message parameter.
+     */
+    private AuraMessage parseRequest(byte[] content, ParsePipeline.Timings timings) throws IOException {
+        int bodyOffset = AuraDetector.getBodyOffset(content);
+        int bodyLength = content.length - bodyOffset;
+        long bodyHash = ParseCache.hash(content, bodyOffset, bodyLength);
+        ParseCache cache = ParseCache.getInstance();
+
+        AuraMessage parsed = (AuraMessage) cache.get(REQUEST_CACHE, bodyHash, bodyLength);
+        if (parsed == null) {
+            FormBodyCodec.AuraParams params = FormBodyCodec.scan(content);
+            if (!params.has(AURA_DATAPARAM)) {
+                // not in the body, e.g. in the query string: let Burp find it. The
+                // cache is keyed on the body alone, so this one isn't cached
+                IParameter param = helpers.getRequestParameter(content, AURA_DATAPARAM);
+                if (param == null) {
+                    throw new IOException("No " + AURA_DATAPARAM + " parameter in the request");
+                }
+                byte[] json = Utils.urlDecode(param.getValue()).getBytes(StandardCharsets.UTF_8);
+                timings.lap(ParsePipeline.Stage.DECODE);
+                parsed = new AuraMessage(json);
+                timings.lap(ParsePipeline.Stage.PARSE);
+                return parsed;
             }
+            // the decoded JSON is kept so that edits only rewrite the edited actions
+            byte[] json = FormBodyCodec.decode(content, params.getValueStart(AURA_DATAPARAM), params.getValueEnd(AURA_DATAPARAM));
+            timings.lap(ParsePipeline.Stage.DECODE);
+            parsed = new AuraMessage(json);
+            cache.put(REQUEST_CACHE, bodyHash, bodyLength, parsed, json.length + ParseCache.estimateTreeBytes(json.length));
+        }
+        // the cached message is shared between tabs, an editable tab copies it when edits are applied
+        timings.lap(ParsePipeline.Stage.PARSE);
+        return parsed;
+    }
 
-        } catch (JsonProcessingException e) {
-            // TODO Auto-generated catch block
-            BaseExtender.printStackTrace(e);
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            BaseExtender.printStackTrace(e);
+    /**
+     * @return what is known about both halves of the request's actions, or null.
+     * Requests are small, so hashing one on the EDT is cheap.
+     */
+    private Map<String, ActionCorrelation.Summary> getCorrelated(byte[] request) {
+        IHttpService service = this.controller.getHttpService();
+        if (request == null || service == null) {
+            return null;
+        }
+        return ActionCorrelation.getInstance().get(ActionCorrelation.messageKey(service.getHost(), service.getPort(), request));
+    }
+
+    private void showRequest(AuraMessage message, Map<String, ActionCorrelation.Summary> correlated) {
+        this.cleanTab();
+        this.currentAuraMessage = message;
+        this.sharedMessage = true;
+
+        //create tabs for each aura action, the panels are built when first selected
+        Iterator<String> iter = currentAuraMessage.actionMap.keySet().iterator();
+        while (iter.hasNext()) {
+            final String nextId = iter.next();
+            final ActionRequest nextActionRequest = currentAuraMessage.actionMap.get(nextId);
+            LazyActionTab tab = new LazyActionTab(new LazyActionTab.Factory() {
+                @Override
+                public ActionPanel create() {
+                    ActionRequestPanel arPanel = new ActionRequestPanel(nextActionRequest, editable);
+                    actionRequestTabs.put(nextId, arPanel);
+                    return arPanel;
+                }
+            });
+            if (correlated != null && correlated.containsKey(nextId)) {
+                ActionCorrelation.Summary summary = correlated.get(nextId);
+                tab.setSummary(summary.describeRequest(), summary.describeResponse());
+            }
+            this.pane.add(nextId + "::" + nextActionRequest.calledMethod, tab);
         }
     }
 
-    public void responseSetup(byte[] content) {
+    public void responseSetup(final byte[] content) {
         if (content == null || content.length == 0)
             return;
 
+        Stats.Timer timer = Stats.start(Stats.Metric.RESPONSE_SETUP);
         this.cleanTab();
+        showPlaceholder();
+
+        final int bodyOffset = AuraDetector.getBodyOffset(content);
+        this.pendingJob = ParsePipeline.submit("Aura response", new ParsePipeline.Job<AuraResponse>() {
+            @Override
+            public AuraResponse run(ParsePipeline.Timings timings) throws Exception {
+                int bodyLength = content.length - bodyOffset;
+                long bodyHash = ParseCache.hash(content, bodyOffset, bodyLength);
+                ParseCache cache = ParseCache.getInstance();
+
+                AuraResponse response = (AuraResponse) cache.get(RESPONSE_CACHE, bodyHash, bodyLength);
+                if (response == null) {
+                    // streams over the body in place, returnValues are parsed when their tab is shown
+                    response = new AuraResponse(content, bodyOffset, bodyLength);
+                    cache.put(RESPONSE_CACHE, bodyHash, bodyLength, response, content.length);
+                }
+                timings.lap(ParsePipeline.Stage.PARSE);
+                return response;
+            }
+        }, new ParsePipeline.Callback<AuraResponse>() {
+            @Override
+            public void done(AuraResponse response, ParsePipeline.Timings timings) {
+                pendingJob = null;
+                cleanTab();
+                if (response.responseActionMap.isEmpty()) {
+                    // e.g. a */{...}/*ERROR*/ exception payload, which has no actions
+                    showRaw("Response", content, bodyOffset);
+                } else {
+                    addResponseTabs(response, getCorrelated(controller.getRequest()));
+                }
+                timings.lap(ParsePipeline.Stage.BUILD_UI);
+                timings.finish();
+            }
 
-        String body = getResponseBody(content);
-        AuraResponse response;
-        try {
-            response = new AuraResponse(body);
-        } catch (JsonProcessingException e) {
-            BaseExtender.printStackTrace(e);
+            @Override
+            public void failed(Exception e) {
+                pendingJob = null;
+                BaseExtender.printStackTrace(e);
+                if (!(e instanceof JsonProcessingException)) {
+                    showError(e);
+                    return;
+                }
+                cleanTab();
+
+                // Invalid JSON that even the lenient parse could not split into actions,
+                // so we will just return the string then
+                showRaw("Invalid JSON", content, bodyOffset);
+            }
+        });
+        Stats.stop(timer, content.length);
+    }
 
-            // Invalid JSON.  happens when we do "key": function()
-            // Jackson doesn't support parsing this, so we will just return the string then
-            ITextEditor te = callbacks.createTextEditor();
-            te.setEditable(false);
-            te.setText(body.getBytes(StandardCharsets.UTF_8));
-            this.pane.add("Invalid JSON", te.getComponent());
-            return;
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            BaseExtender.printStackTrace(e);
-            return;
-        }
+    private void showRaw(String title, byte[] content, int bodyOffset) {
+        ITextEditor te = callbacks.createTextEditor();
+        te.setEditable(false);
+        Utils.setText(te, Arrays.copyOfRange(content, bodyOffset, content.length));
+        pane.add(title, te.getComponent());
+    }
+
+    private void addResponseTabs(AuraResponse response, Map<String, ActionCorrelation.Summary> correlated) {
         Iterator<String> responseIter = response.responseActionMap.keySet().iterator();
         while (responseIter.hasNext()) {
-            String nextActionId = responseIter.next();
-            ActionResponsePanel nextPanel = new ActionResponsePanel(response.responseActionMap.get(nextActionId));
-            this.pane.add(nextActionId, nextPanel);
+            final String nextActionId = responseIter.next();
+            final ActionResponse nextActionResponse = response.responseActionMap.get(nextActionId);
+            LazyActionTab tab = new LazyActionTab(new LazyActionTab.Factory() {
+                @Override
+                public ActionPanel create() {
+                    ActionResponsePanel nextPanel = new ActionResponsePanel(nextActionResponse);
+                    actionResponseTabs.put(nextActionId, nextPanel);
+                    return nextPanel;
+                }
+            });
+            if (correlated != null && correlated.containsKey(nextActionId)) {
+                ActionCorrelation.Summary summary = correlated.get(nextActionId);
+                tab.setSummary(summary.describeRequest(), summary.describeResponse());
+            }
+            this.pane.add(nextActionId, tab);
         }
+
+        // part of the body could not be parsed, show it as is after the actions that could
+        if (response.getParseError() != null) {
+            ITextEditor te = callbacks.createTextEditor();
+            te.setEditable(false);
+            te.setText(response.getUnparsed());
+            this.pane.add("Unparsed", te.getComponent());
+            this.pane.setToolTipTextAt(this.pane.getTabCount() - 1, response.getParseError());
+        }
+    }
+
+    private void showPlaceholder() {
+        this.pane.add("Loading...", new JLabel("Parsing Aura message...", SwingConstants.CENTER));
     }
 
-    private String getResponseBody(byte[] content) {
-        IResponseInfo responseBody = this.helpers.analyzeResponse(content);
-        String responseStr = this.helpers.bytesToString(content);
-        int bodyOffset = responseBody.getBodyOffset();
-        int bodyFinal = responseStr.length();
-        assert (bodyFinal > bodyOffset);
-        return responseStr.substring(bodyOffset, bodyFinal);
+    private void showError(Exception e) {
+        cleanTab();
+        this.pane.add("Error", new JLabel("Could not parse Aura message: " + e, SwingConstants.CENTER));
     }
 
+    /**
+     * Remove the action tabs and drop every reference to the message they showed,
+     * so an editor Burp keeps around only holds on to the raw content.
+     */
     private void cleanTab() {
+        if (pendingJob != null) {
+            pendingJob.cancel();
+            pendingJob = null;
+        }
         pane.removeAll();
         pane.revalidate();
+        this.actionRequestTabs.clear();
+        this.actionResponseTabs.clear();
+        this.currentAuraMessage = null;
+        this.sharedMessage = false;
+    }
+
+    private boolean hasChanges() {
+        for (ActionRequestPanel panel : this.actionRequestTabs.values()) {
+            if (panel.hasChanges()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copy the shared message before editing it, and move the panels over to the copy.
+     */
+    private void unshareMessage() {
+        if (!this.sharedMessage) {
+            return;
+        }
+        this.currentAuraMessage = this.currentAuraMessage.copy();
+        this.sharedMessage = false;
+        for (Map.Entry<String, ActionRequestPanel> entry : this.actionRequestTabs.entrySet()) {
+            entry.getValue().setActionRequest(this.currentAuraMessage.actionMap.get(entry.getKey()));
+        }
     }
 
     private void updateTabActions() {
@@ -224,31 +363,61 @@ public class AuraTab implements IMessageEditorTab {
         }
     }
 
-    private byte[] getNewContent(String messageStr) {
-        messageStr = Utils.urlEncode(messageStr);
-        IParameter newParam = helpers.buildParameter(AURA_DATAPARAM, messageStr, IParameter.PARAM_BODY);
+    private byte[] getNewContent(byte[] message) {
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(content);
+        if (params.has(AURA_DATAPARAM)) {
+            return FormBodyCodec.replaceValue(content, params.getValueStart(AURA_DATAPARAM),
+                    params.getValueEnd(AURA_DATAPARAM), message);
+        }
+        // write it back where it was found, e.g. the query string
+        IParameter oldParam = helpers.getRequestParameter(content, AURA_DATAPARAM);
+        byte type = oldParam == null ? IParameter.PARAM_BODY : oldParam.getType();
+        String messageStr = Utils.urlEncode(new String(message, StandardCharsets.UTF_8));
+        IParameter newParam = helpers.buildParameter(AURA_DATAPARAM, messageStr, type);
         return helpers.updateParameter(content, newParam);
     }
 
     @Override
     public byte[] getMessage() {
-        cleanTab();
+        Stats.Timer timer = Stats.start(Stats.Metric.ACTIONS_GET_MESSAGE);
+        try {
+            return buildMessage();
+        } finally {
+            Stats.stop(timer, this.content == null ? 0 : this.content.length);
+        }
+    }
+
+    private byte[] buildMessage() {
+        if (this.currentAuraMessage == null) {
+            // still parsing (or unparseable), nothing can have been edited
+            cleanTab();
+            return this.content;
+        }
+        if (!hasChanges()) {
+            // nothing changed, no need to copy or re-encode anything
+            cleanTab();
+            return this.content;
+        }
+        unshareMessage();
         updateTabActions();
+        AuraMessage message = this.currentAuraMessage;
+        cleanTab();
 
-        if (this.currentAuraMessage.isEdited()) {
-            isEdited = true;
+        if (!message.isEdited()) {
+            return this.content;
         }
+        isEdited = true;
 
-        String auraMessageStr;
+        byte[] auraMessageBytes;
         try {
-            auraMessageStr = this.currentAuraMessage.getAuraRequest();
+            auraMessageBytes = message.getAuraRequestBytes();
         } catch (JsonProcessingException e) {
             // TODO Auto-generated catch block
             BaseExtender.printStackTrace(e);
             return this.content;
         }
 
-        this.content = getNewContent(auraMessageStr);
+        this.content = getNewContent(auraMessageBytes);
         return this.content;
     }
 
@@ -263,8 +432,11 @@ public class AuraTab implements IMessageEditorTab {
             return null;
         } else {
             int actionIndex = pane.getSelectedIndex();
-            ActionPanel activeComponent = (ActionPanel) pane.getComponentAt(actionIndex);
-            return activeComponent.getSelectedText();
+            Component activeComponent = pane.getComponentAt(actionIndex);
+            if (!(activeComponent instanceof LazyActionTab)) {
+                return null;
+            }
+            return ((LazyActionTab) activeComponent).getSelectedText();
         }
     }
 
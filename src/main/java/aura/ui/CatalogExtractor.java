@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import aura.ActionCatalog;
+import aura.AuraDetector;
+import aura.BoundedWorker;
+import aura.ParseCache;
+import burp.IHttpRequestResponse;
+import burp.IInterceptedProxyMessage;
+import burp.IProxyListener;
+
+/**
+ * Feeds the action descriptors found in Aura JavaScript and JSON responses
+ * going through the proxy into the {@link ActionCatalog}.
+ *
+ * The proxy thread only checks the request path and response type and queues
+ * the response. Scanning happens on the worker thread, once per request and
+ * response body, so framework bundles the browser fetches again are skipped.
+ */
+public class CatalogExtractor implements IProxyListener {
+    private static final int QUEUE_CAPACITY = 256;
+    private static final int MAX_REMEMBERED = 4096;
+
+    private final ActionCatalog catalog;
+    private final BoundedWorker worker;
+    // only touched on the worker thread
+    private final Map<Long, Boolean> scanned = new LinkedHashMap<Long, Boolean>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_REMEMBERED;
+        }
+    };
+
+    public CatalogExtractor(ActionCatalog catalog) {
+        this.catalog = catalog;
+        this.worker = new BoundedWorker("lightning-catalog", QUEUE_CAPACITY);
+    }
+
+    public ActionCatalog getCatalog() {
+        return this.catalog;
+    }
+
+    public BoundedWorker getWorker() {
+        return this.worker;
+    }
+
+    @Override
+    public void processProxyMessage(boolean messageIsRequest, IInterceptedProxyMessage message) {
+        if (messageIsRequest) {
+            return;
+        }
+        IHttpRequestResponse messageInfo = message.getMessageInfo();
+        final byte[] request = messageInfo.getRequest();
+        final byte[] response = messageInfo.getResponse();
+        if (request == null || response == null || !AuraDetector.isAuraResource(request)
+                || !AuraDetector.isScriptOrJson(response)) {
+            return;
+        }
+        this.worker.offer(new Runnable() {
+            @Override
+            public void run() {
+                extract(request, response);
+            }
+        });
+    }
+
+    private void extract(byte[] request, byte[] response) {
+        // the request line, the request body (for Aura actions) and the response body
+        // identify a response, headers such as cookies change between fetches. Hashing
+        // the body is one cheap pass, far less than scanning it.
+        int requestBody = AuraDetector.getBodyOffset(request);
+        int bodyOffset = AuraDetector.getBodyOffset(response);
+        long key = (ParseCache.hash(request, 0, AuraDetector.lineEnd(request, 0)) * 31
+                + ParseCache.hash(request, requestBody, request.length - requestBody)) * 31
+                + ParseCache.hash(response, bodyOffset, response.length - bodyOffset);
+        if (this.scanned.put(key, Boolean.TRUE) != null) {
+            return;
+        }
+        this.catalog.addAll(response, bodyOffset, response.length - bodyOffset);
+    }
+}
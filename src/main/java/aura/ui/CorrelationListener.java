@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.ActionCorrelation;
+import aura.ActionLog;
+import aura.AuraDetector;
+import aura.AuraMessage;
+import aura.AuraResponse;
+import aura.BoundedWorker;
+import aura.ContextStore;
+import aura.FormBodyCodec;
+import aura.Stats;
+import burp.BurpExtender;
+import burp.IHttpListener;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+
+/**
+ * Records every Aura request/response pair, from any tool, in the {@link ActionCorrelation} store.
+ *
+ * The HTTP thread only checks the request is an Aura request and queues the
+ * pair. Both halves are parsed on the worker thread, the response without its
+ * returnValues, which are only measured. The aura.context of each request is
+ * queued for the {@link ContextStore} as the request is sent, not when its
+ * response arrives, so the Aura Context tab compares a context with the one
+ * sent before it.
+ */
+public class CorrelationListener implements IHttpListener {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int MIN_COMPACTION = 10000;
+
+    private final ActionCorrelation store;
+    private final ActionLog log;
+    private final BoundedWorker worker;
+
+    /**
+     * @param log where the summaries are also written, may be null to keep them in memory only
+     */
+    public CorrelationListener(ActionCorrelation store, ActionLog log) {
+        this.store = store;
+        this.log = log;
+        this.worker = new BoundedWorker("lightning-correlate", QUEUE_CAPACITY);
+    }
+
+    public BoundedWorker getWorker() {
+        return this.worker;
+    }
+
+    /**
+     * Read back what the log holds from earlier sessions, and compact it if most
+     * of it is superseded. Queue this before any traffic, so it is read first.
+     */
+    public void load() {
+        if (this.log == null) {
+            return;
+        }
+        this.worker.offer(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    long start = System.nanoTime();
+                    store.load(log);
+                    int live = store.getActionCount();
+                    if (log.size() > 2 * live && log.size() - live > MIN_COMPACTION) {
+                        // mostly superseded, e.g. polling requests recorded again and again
+                        log.compact(store.getMaxMessages());
+                    }
+                    BurpExtender.getCallbacks().printOutput("Loaded " + store.getMessageCount() + " Aura messages ("
+                            + live + " actions) from " + log.getDirectory() + " in "
+                            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms"
+                            + (log.getTruncatedBytes() > 0 ? ", " + log.getTruncatedBytes()
+                                    + " bytes of an incomplete last write were discarded" : ""));
+                } catch (IOException e) {
+                    BaseExtender.printStackTrace(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop the worker and close the log.
+     */
+    public void shutdown() {
+        this.worker.shutdown();
+        if (this.log != null) {
+            try {
+                this.log.close();
+            } catch (IOException e) {
+                BaseExtender.printStackTrace(e);
+            }
+        }
+    }
+
+    @Override
+    public void processHttpMessage(int toolFlag, boolean messageIsRequest, IHttpRequestResponse messageInfo) {
+        final byte[] request = messageInfo.getRequest();
+        if (request == null || !AuraDetector.isAuraRequest(request, true)) {
+            return;
+        }
+        IHttpService service = messageInfo.getHttpService();
+        final String host = service == null ? "" : service.getHost();
+        if (messageIsRequest) {
+            // responses come back in any order, so the context is recorded now
+            this.worker.offer(new Runnable() {
+                @Override
+                public void run() {
+                    recordContext(host, request);
+                }
+            });
+            return;
+        }
+        final byte[] response = messageInfo.getResponse();
+        if (response == null) {
+            return;
+        }
+        final int port = service == null ? -1 : service.getPort();
+        this.worker.offer(new Runnable() {
+            @Override
+            public void run() {
+                correlate(host, port, request, response);
+            }
+        });
+    }
+
+    private void recordContext(String host, byte[] request) {
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+        int contextStart = params.getValueStart(FormBodyCodec.CONTEXT);
+        if (contextStart != -1) {
+            try {
+                ContextStore.getInstance().record(host, request, contextStart, params.getValueEnd(FormBodyCodec.CONTEXT));
+            } catch (IOException e) {
+                // not valid JSON, there is nothing to compare
+            }
+        }
+    }
+
+    private void correlate(String host, int port, byte[] request, byte[] response) {
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+        int start = params.getValueStart(FormBodyCodec.MESSAGE);
+        if (start == -1) {
+            return;
+        }
+        AuraMessage message;
+        try {
+            message = new AuraMessage(FormBodyCodec.decode(request, start, params.getValueEnd(FormBodyCodec.MESSAGE)));
+        } catch (IOException e) {
+            // not a valid message, nothing to correlate
+            return;
+        } catch (RuntimeException e) {
+            BaseExtender.printStackTrace(e);
+            return;
+        }
+
+        AuraResponse auraResponse = null;
+        if (AuraDetector.isAuraResponse(response)) {
+            int responseOffset = AuraDetector.getBodyOffset(response);
+            try {
+                auraResponse = new AuraResponse(response, responseOffset, response.length - responseOffset);
+            } catch (IOException e) {
+                // e.g. an exception payload without actions, the request half is still worth keeping
+            } catch (RuntimeException e) {
+                BaseExtender.printStackTrace(e);
+            }
+        }
+        long messageKey = ActionCorrelation.messageKey(host, port, request);
+        Map<String, ActionCorrelation.Summary> actions = this.store.put(messageKey, message, auraResponse);
+        if (this.log != null) {
+            Stats.Timer timer = Stats.start(Stats.Metric.ACTION_LOG_APPEND);
+            try {
+                this.log.append(messageKey, actions.values());
+            } catch (IOException e) {
+                BaseExtender.printStackTrace(e);
+            }
+            Stats.stop(timer, 0);
+        }
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreePath;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import aura.JsonCodec;
+
+/**
+ * Read-only TreeModel over raw JSON bytes. Nothing is parsed into a tree: a
+ * container is scanned for the offsets of its children only when JTree first
+ * asks for them, i.e. when it is expanded, and rows show the JSON of their
+ * value straight from the bytes. The bytes are read leniently, see
+ * {@link JsonCodec#getLenientFactory()}.
+ *
+ * Containers with more than {@link #PAGE_SIZE} children are split into range
+ * nodes such as "[100 ... 199]", nested as deep as needed, so a level never has
+ * more than PAGE_SIZE rows no matter how large the array is.
+ */
+public class JsonTreeModel implements TreeModel {
+    public static final int PAGE_SIZE = 100;
+    private static final int MAX_LABEL = 200;
+    // containers up to this size are scanned to show their size in the label
+    private static final int COUNT_LIMIT = 256 * 1024;
+
+    private final byte[] json;
+    private final Node root;
+
+    /**
+     * Scans the top level of json[offset, offset+length), so build it off the EDT.
+     */
+    public JsonTreeModel(String rootName, byte[] json, int offset, int length) throws IOException {
+        this.json = json;
+        int start = skipWhitespace(json, offset, offset + length);
+        this.root = new Node(null, rootName, start, offset + length, false, 0, 0);
+        this.root.to = this.root.getIndex().size;
+    }
+
+    byte[] getJson() {
+        return json;
+    }
+
+    int getStart() {
+        return root.start;
+    }
+
+    int getEnd() {
+        return root.end;
+    }
+
+    private static int skipWhitespace(byte[] json, int from, int end) {
+        while (from < end && (json[from] == ' ' || json[from] == '\n' || json[from] == '\r' || json[from] == '\t')) {
+            from++;
+        }
+        return from;
+    }
+
+    /**
+     * Offsets of the children of a container, and the field names of an object.
+     */
+    private static class Index {
+        private int size;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private String[] names;
+
+        private void add(String name, int start, int end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                if (names != null) {
+                    names = Arrays.copyOf(names, size * 2);
+                }
+            }
+            if (names == null && name != null) {
+                names = new String[starts.length];
+            }
+            if (names != null) {
+                names[size] = name;
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+    }
+
+    /**
+     * One row of the tree: the JSON value in json[start, end), or a range [from, to) of the children of a large container.
+     */
+    public class Node {
+        private final Node owner;
+        private final String key;
+        private final int start;
+        private final int end;
+        private final boolean range;
+        private final int from;
+        private int to;
+        private Index index;
+        private List<Node> children;
+
+        private Node(Node owner, String key, int start, int end, boolean range, int from, int to) {
+            this.owner = owner;
+            this.key = key;
+            this.start = start;
+            this.end = end;
+            this.range = range;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * @return the JSON of this value as it appears in the bytes
+         */
+        public byte[] getJson() {
+            return Arrays.copyOfRange(json, start, end);
+        }
+
+        public boolean isRange() {
+            return range;
+        }
+
+        private boolean isContainer() {
+            return start < end && (json[start] == '{' || json[start] == '[');
+        }
+
+        /**
+         * An empty container is a leaf, found without scanning it.
+         */
+        private boolean isEmpty() {
+            if (range) {
+                return false;
+            }
+            if (!isContainer()) {
+                return true;
+            }
+            int next = skipWhitespace(json, start + 1, end);
+            return next < end && (json[next] == '}' || json[next] == ']');
+        }
+
+        private synchronized Index getIndex() {
+            if (index == null) {
+                try {
+                    index = scan();
+                } catch (IOException e) {
+                    // keep the children read before the error
+                    if (index == null) {
+                        index = new Index();
+                    }
+                }
+            }
+            return index;
+        }
+
+        private Index scan() throws IOException {
+            Index found = new Index();
+            if (!isContainer()) {
+                return found;
+            }
+            JsonParser parser = JsonCodec.getLenientFactory().createParser(json, start, end - start);
+            try {
+                boolean object = parser.nextToken() == JsonToken.START_OBJECT;
+                this.index = found;
+                JsonToken token;
+                while ((token = parser.nextToken()) != null && !token.isStructEnd()) {
+                    String name = null;
+                    if (object) {
+                        name = parser.getCurrentName();
+                        token = parser.nextToken();
+                    }
+                    int childStart = start + (int) parser.getTokenLocation().getByteOffset();
+                    int childEnd;
+                    if (token.isStructStart()) {
+                        parser.skipChildren();
+                        childEnd = start + (int) parser.getTokenLocation().getByteOffset() + 1;
+                    } else {
+                        parser.finishToken();
+                        childEnd = start + (int) parser.getCurrentLocation().getByteOffset();
+                    }
+                    found.add(name, childStart, childEnd);
+                }
+            } finally {
+                parser.close();
+            }
+            return found;
+        }
+
+        private int getChildCount() {
+            return isEmpty() ? 0 : getChildren().size();
+        }
+
+        private synchronized List<Node> getChildren() {
+            if (children != null) {
+                return children;
+            }
+            if (!range && isContainer() && to == 0) {
+                to = getIndex().size;
+            }
+            int count = isEmpty() ? 0 : to - from;
+            children = new ArrayList<Node>(Math.min(count, PAGE_SIZE));
+            if (count > PAGE_SIZE) {
+                long chunk = PAGE_SIZE;
+                while (chunk * PAGE_SIZE < count) {
+                    chunk *= PAGE_SIZE;
+                }
+                Node container = range ? owner : this;
+                for (int first = from; first < to; first += chunk) {
+                    children.add(new Node(container, null, container.start, container.end, true, first, (int) Math.min(to, first + chunk)));
+                }
+            } else {
+                Index children = (range ? owner : this).getIndex();
+                for (int i = from; i < to; i++) {
+                    String childKey = children.names != null ? children.names[i] : "[" + i + "]";
+                    this.children.add(new Node(null, childKey, children.starts[i], children.ends[i], false, 0, 0));
+                }
+            }
+            return children;
+        }
+
+        /**
+         * @return the child row holding element index of this container, which may be a range
+         */
+        private Node childFor(int index) {
+            List<Node> rows = getChildren();
+            if (index < from || index >= to) {
+                return null;
+            }
+            if (to - from <= PAGE_SIZE) {
+                return rows.get(index - from);
+            }
+            for (Node row : rows) {
+                if (index < row.to) {
+                    return row;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            if (range) {
+                return "[" + from + " ... " + (to - 1) + "]";
+            }
+            StringBuilder label = new StringBuilder();
+            if (key != null) {
+                label.append(key).append(" : ");
+            }
+            if (isContainer()) {
+                boolean object = json[start] == '{';
+                label.append(object ? '{' : '[');
+                if (isEmpty()) {
+                    label.append(0);
+                } else if (index != null || end - start <= COUNT_LIMIT) {
+                    label.append(getIndex().size);
+                } else {
+                    label.append("... ").append((end - start) / 1024).append(" KB");
+                }
+                label.append(object ? '}' : ']');
+            } else {
+                // a UTF-8 character is at most 4 bytes
+                int length = Math.min(end - start, MAX_LABEL * 4);
+                String text = new String(json, start, length, StandardCharsets.UTF_8);
+                label.append(text.length() > MAX_LABEL || length < end - start
+                        ? text.substring(0, Math.min(text.length(), MAX_LABEL)) + "..." : text);
+            }
+            return label.toString();
+        }
+    }
+
+    /**
+     * Build the tree path to a value from the element indexes leading to it,
+     * scanning only the containers along the way. Safe to call off the EDT.
+     */
+    public TreePath pathFor(List<Integer> indexes) {
+        List<Node> path = new ArrayList<Node>();
+        Node node = root;
+        path.add(node);
+        for (int index : indexes) {
+            Node next = node.childFor(index);
+            while (next != null && next.range) {
+                path.add(next);
+                next = next.childFor(index);
+            }
+            if (next == null) {
+                break;
+            }
+            path.add(next);
+            node = next;
+        }
+        return new TreePath(path.toArray());
+    }
+
+    @Override
+    public Object getRoot() {
+        return root;
+    }
+
+    @Override
+    public Object getChild(Object parent, int index) {
+        return ((Node) parent).getChildren().get(index);
+    }
+
+    @Override
+    public int getChildCount(Object parent) {
+        return ((Node) parent).getChildCount();
+    }
+
+    @Override
+    public boolean isLeaf(Object node) {
+        return ((Node) node).isEmpty();
+    }
+
+    @Override
+    public int getIndexOfChild(Object parent, Object child) {
+        return ((Node) parent).getChildren().indexOf(child);
+    }
+
+    @Override
+    public void valueForPathChanged(TreePath path, Object newValue) {
+        // read-only
+    }
+
+    @Override
+    public void addTreeModelListener(TreeModelListener l) {
+        // the tree never changes, so there is nothing to notify
+    }
+
+    @Override
+    public void removeTreeModelListener(TreeModelListener l) {
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.JTree;
+import javax.swing.tree.TreePath;
+
+import com.codemagi.burp.BaseExtender;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import aura.JsonCodec;
+
+/**
+ * Tree view of a JSON value for payloads too large to pretty-print into a text
+ * editor. Rows are built from the raw bytes as they are expanded (see
+ * {@link JsonTreeModel}) and the search streams through the bytes in the
+ * background, only building the rows on the path to each match.
+ */
+@SuppressWarnings("serial")
+public class JsonTreePanel extends JPanel {
+    private final JsonTreeModel model;
+    private final JTree tree;
+    private final JTextField searchField = new JTextField(30);
+    private final JLabel searchStatus = new JLabel(" ");
+
+    private ParsePipeline.Ticket pendingSearch;
+    private String lastQuery;
+    private int lastMatch = -1;
+
+    public JsonTreePanel(JsonTreeModel model) {
+        super(new BorderLayout());
+        this.model = model;
+        this.tree = new JTree(this.model);
+        this.tree.setLargeModel(true);
+        this.tree.setRowHeight(18);
+
+        ActionListener find = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                findNext();
+            }
+        };
+        this.searchField.addActionListener(find);
+        JButton findButton = new JButton("Find next");
+        findButton.addActionListener(find);
+
+        JPanel searchPanel = new JPanel();
+        searchPanel.add(new JLabel("Search:"));
+        searchPanel.add(this.searchField);
+        searchPanel.add(findButton);
+        searchPanel.add(this.searchStatus);
+
+        add(searchPanel, BorderLayout.PAGE_START);
+        add(new JScrollPane(this.tree), BorderLayout.CENTER);
+    }
+
+    /**
+     * @return the JSON of the selected value as it appears in the payload, or null if nothing is selected
+     */
+    public byte[] getSelectedText() {
+        TreePath path = this.tree.getSelectionPath();
+        if (path == null) {
+            return null;
+        }
+        JsonTreeModel.Node node = (JsonTreeModel.Node) path.getLastPathComponent();
+        if (node.isRange()) {
+            return node.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return node.getJson();
+    }
+
+    /**
+     * Select the next key or scalar value containing the search text, wrapping around at the end.
+     */
+    private void findNext() {
+        final String query = this.searchField.getText().trim().toLowerCase(Locale.ROOT);
+        if (query.isEmpty()) {
+            return;
+        }
+        if (!query.equals(this.lastQuery)) {
+            this.lastQuery = query;
+            this.lastMatch = -1;
+        }
+        if (this.pendingSearch != null) {
+            this.pendingSearch.cancel();
+        }
+        final int wanted = this.lastMatch + 1;
+        this.searchStatus.setText("Searching...");
+        this.pendingSearch = ParsePipeline.submit("Aura tree search", new ParsePipeline.Job<SearchResult>() {
+            @Override
+            public SearchResult run(ParsePipeline.Timings timings) throws Exception {
+                SearchResult result = new SearchResult(query, wanted);
+                result.search(model);
+                if (result.path == null && wanted > 0 && result.seen > 0) {
+                    // wrap around to the first match
+                    result = new SearchResult(query, 0);
+                    result.search(model);
+                }
+                if (result.path != null) {
+                    // scan the containers on the way to the match here rather than on the EDT
+                    result.treePath = model.pathFor(result.path);
+                }
+                return result;
+            }
+        }, new ParsePipeline.Callback<SearchResult>() {
+            @Override
+            public void done(SearchResult result, ParsePipeline.Timings timings) {
+                pendingSearch = null;
+                if (result.path == null) {
+                    lastMatch = -1;
+                    searchStatus.setText("No match");
+                    return;
+                }
+                lastMatch = result.wanted;
+                searchStatus.setText("Match " + (result.wanted + 1));
+                TreePath path = result.treePath;
+                if (path.getParentPath() != null) {
+                    tree.expandPath(path.getParentPath());
+                }
+                tree.setSelectionPath(path);
+                tree.scrollPathToVisible(path);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                pendingSearch = null;
+                BaseExtender.printStackTrace(e);
+                searchStatus.setText("Search failed");
+            }
+        });
+    }
+
+    /**
+     * Streams through the tokens and stops at the wanted-th match (zero-based),
+     * keeping the element indexes leading to the current token.
+     */
+    private static class SearchResult {
+        // check for cancellation every this many tokens
+        private static final int CHECK_EVERY = 4096;
+        private final String query;
+        private final int wanted;
+        private final List<Integer> trail = new ArrayList<Integer>();
+        private final List<Boolean> inArray = new ArrayList<Boolean>();
+        private List<Integer> path;
+        private TreePath treePath;
+        private int seen = 0;
+
+        SearchResult(String query, int wanted) {
+            this.query = query;
+            this.wanted = wanted;
+        }
+
+        private void search(JsonTreeModel model) throws IOException {
+            int start = model.getStart();
+            JsonParser parser = JsonCodec.getLenientFactory().createParser(model.getJson(), start, model.getEnd() - start);
+            try {
+                int tokens = 0;
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (++tokens % CHECK_EVERY == 0 && Thread.currentThread().isInterrupted()) {
+                        throw new CancellationException();
+                    }
+                    int depth = this.trail.size();
+                    if (token == JsonToken.FIELD_NAME) {
+                        this.trail.set(depth - 1, this.trail.get(depth - 1) + 1);
+                        if (matches(parser.getCurrentName())) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (token.isStructEnd()) {
+                        this.trail.remove(depth - 1);
+                        this.inArray.remove(depth - 1);
+                        if (depth == 1) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (depth > 0 && this.inArray.get(depth - 1)) {
+                        this.trail.set(depth - 1, this.trail.get(depth - 1) + 1);
+                    }
+                    if (token.isStructStart()) {
+                        this.trail.add(-1);
+                        this.inArray.add(token == JsonToken.START_ARRAY);
+                    } else if (matches(parser.getText()) || depth == 0) {
+                        return;
+                    }
+                }
+            } finally {
+                parser.close();
+            }
+        }
+
+        private boolean matches(String text) {
+            if (text == null || !text.toLowerCase(Locale.ROOT).contains(this.query)) {
+                return false;
+            }
+            if (this.seen++ == this.wanted) {
+                this.path = new ArrayList<Integer>(this.trail);
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.GridLayout;
+
+import javax.swing.BorderFactory;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTabbedPane;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Lightweight placeholder for one action in the Aura Actions tab.
+ *
+ * The real {@link ActionPanel}, with its Burp text editor and rendered JSON, is
+ * only built the first time the tab is selected, so a boxcar of hundreds of
+ * actions costs one empty JPanel per action until the user looks at it.
+ */
+@SuppressWarnings("serial")
+public class LazyActionTab extends JPanel {
+
+    public interface Factory {
+        ActionPanel create();
+    }
+
+    private Factory factory;
+    private ActionPanel panel;
+    private String requestSummary;
+    private String responseSummary;
+    private JPanel summaryPanel;
+
+    public LazyActionTab(Factory factory) {
+        super(new BorderLayout());
+        this.factory = factory;
+    }
+
+    /**
+     * Build the panel if needed and return it.
+     */
+    public ActionPanel getPanel() {
+        if (this.panel == null) {
+            this.panel = this.factory.create();
+            this.factory = null;
+            add(this.panel, BorderLayout.CENTER);
+            addSummary();
+            revalidate();
+        }
+        return this.panel;
+    }
+
+    /**
+     * Show what both halves of the action look like side by side above the panel.
+     */
+    public void setSummary(String request, String response) {
+        this.requestSummary = request;
+        this.responseSummary = response;
+        if (this.panel != null) {
+            addSummary();
+            revalidate();
+        }
+    }
+
+    private void addSummary() {
+        if (this.summaryPanel != null) {
+            remove(this.summaryPanel);
+            this.summaryPanel = null;
+        }
+        if (this.requestSummary != null || this.responseSummary != null) {
+            this.summaryPanel = new JPanel(new GridLayout(1, 2, 8, 0));
+            this.summaryPanel.add(summaryLabel("Request", this.requestSummary));
+            this.summaryPanel.add(summaryLabel("Response", this.responseSummary));
+            add(this.summaryPanel, BorderLayout.PAGE_START);
+        }
+    }
+
+    private static JLabel summaryLabel(String title, String text) {
+        JLabel label = new JLabel(text == null ? " " : text);
+        label.setBorder(BorderFactory.createCompoundBorder(BorderFactory.createTitledBorder(title),
+                BorderFactory.createEmptyBorder(0, 4, 2, 4)));
+        return label;
+    }
+
+    public boolean isBuilt() {
+        return this.panel != null;
+    }
+
+    /**
+     * @return the selected text of the panel, or null if it was never built
+     */
+    public byte[] getSelectedText() {
+        return this.panel == null ? null : this.panel.getSelectedText();
+    }
+
+    /**
+     * Build the panel behind each tab of the pane as it gets selected.
+     */
+    public static void buildOnSelect(final JTabbedPane pane) {
+        pane.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                Component selected = pane.getSelectedComponent();
+                if (selected instanceof LazyActionTab) {
+                    ((LazyActionTab) selected).getPanel();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.Arrays;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.JsonPager;
+import burp.ITextEditor;
+
+/**
+ * A text editor for JSON that shows large values a page at a time with a
+ * {@link JsonPager}: the first page right away, then more on request, or the
+ * value at a JSON pointer. Values below the paging threshold are shown whole
+ * and stay editable, paged ones are read-only.
+ *
+ * The editor can only take the whole text, so each page loaded sets
+ * everything loaded so far again. Loading stops after a few MB, past which
+ * a path shows the rest.
+ */
+@SuppressWarnings("serial")
+public class PagedTextView extends JPanel {
+    private static final int MAX_LOADED_KB = 4096;
+
+    private final ITextEditor editor;
+    private final boolean editable;
+    private final JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+    private final JButton moreButton = new JButton("Load more");
+    private final JButton topButton = new JButton("Top");
+    private final JTextField pointerField = new JTextField(25);
+    private final JLabel status = new JLabel(" ");
+    /** the pager over the whole value, which jumps start from, and the one being shown */
+    private JsonPager rootPager;
+    private JsonPager pager;
+    private byte[] loaded = new byte[0];
+    private int loadedLength;
+    private ParsePipeline.Ticket pendingJump;
+
+    public PagedTextView(ITextEditor editor, boolean editable) {
+        super(new BorderLayout());
+        this.editor = editor;
+        this.editable = editable;
+
+        this.moreButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadMore();
+            }
+        });
+        this.topButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                pointerField.setText("");
+                jump("");
+            }
+        });
+        ActionListener jump = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                String pointer = pointerField.getText().trim();
+                jump(pointer.isEmpty() || pointer.startsWith("/") ? pointer : "/" + pointer);
+            }
+        };
+        this.pointerField.addActionListener(jump);
+        this.pointerField.setToolTipText("JSON pointer, e.g. /actions/0/returnValue/records/5");
+        JButton goButton = new JButton("Go");
+        goButton.addActionListener(jump);
+
+        this.toolbar.add(this.moreButton);
+        this.toolbar.add(new JLabel("  Path:"));
+        this.toolbar.add(this.pointerField);
+        this.toolbar.add(goButton);
+        this.toolbar.add(this.topButton);
+        this.toolbar.add(this.status);
+        this.toolbar.setVisible(false);
+        add(this.toolbar, BorderLayout.PAGE_START);
+        add(editor.getComponent(), BorderLayout.CENTER);
+    }
+
+    /**
+     * Show a whole text, not paged.
+     */
+    public void setText(byte[] text) {
+        cancelJump();
+        this.rootPager = null;
+        this.pager = null;
+        this.loaded = new byte[0];
+        this.toolbar.setVisible(false);
+        Utils.setText(this.editor, text);
+        this.editor.setEditable(this.editable);
+    }
+
+    /**
+     * Show the pager's text, a page at a time if it is large. Printing ahead to
+     * find out is best done off the event thread, see {@link JsonPager#isLarge()}.
+     */
+    public void setPager(JsonPager pager) throws IOException {
+        if (!pager.isLarge()) {
+            setText(pager.remaining());
+            return;
+        }
+        cancelJump();
+        this.rootPager = pager;
+        this.pointerField.setText("");
+        this.toolbar.setVisible(true);
+        show(pager);
+    }
+
+    private void show(JsonPager pager) {
+        this.pager = pager;
+        this.loaded = new byte[0];
+        this.loadedLength = 0;
+        this.editor.setEditable(false);
+        loadMore();
+    }
+
+    private void loadMore() {
+        try {
+            byte[] page = this.pager.nextPage();
+            if (this.loadedLength + page.length > this.loaded.length) {
+                this.loaded = Arrays.copyOf(this.loaded, Math.max(this.loadedLength + page.length, this.loaded.length * 2));
+            }
+            System.arraycopy(page, 0, this.loaded, this.loadedLength, page.length);
+            this.loadedLength += page.length;
+            Utils.setText(this.editor, Arrays.copyOf(this.loaded, this.loadedLength));
+        } catch (IOException e) {
+            BaseExtender.printStackTrace(e);
+            this.status.setText("Invalid JSON: " + e.getMessage());
+            this.moreButton.setEnabled(false);
+            return;
+        }
+        updateStatus();
+    }
+
+    /**
+     * @param pointer empty for the start of the whole value, which needs no tree
+     */
+    private void jump(final String pointer) {
+        cancelJump();
+        if (this.rootPager == null) {
+            return;
+        }
+        if (pointer.isEmpty()) {
+            try {
+                show(this.rootPager.restart());
+            } catch (IOException e) {
+                BaseExtender.printStackTrace(e);
+            }
+            return;
+        }
+        final JsonPager source = this.rootPager;
+        this.status.setText("Finding " + pointer + "...");
+        this.pendingJump = ParsePipeline.submit("Aura JSON path", new ParsePipeline.Job<JsonPager>() {
+            @Override
+            public JsonPager run(ParsePipeline.Timings timings) throws Exception {
+                JsonPager found = source.at(pointer);
+                timings.lap(ParsePipeline.Stage.PARSE);
+                if (found != null) {
+                    // print the first page here rather than on the event thread
+                    found.isLongerThan(JsonPager.getPageKb() * 1024L);
+                    timings.lap(ParsePipeline.Stage.RENDER);
+                }
+                return found;
+            }
+        }, new ParsePipeline.Callback<JsonPager>() {
+            @Override
+            public void done(JsonPager found, ParsePipeline.Timings timings) {
+                pendingJump = null;
+                if (found == null) {
+                    status.setText("Nothing at " + pointer);
+                    return;
+                }
+                show(found);
+                timings.lap(ParsePipeline.Stage.BUILD_UI);
+                timings.finish();
+            }
+
+            @Override
+            public void failed(Exception e) {
+                pendingJump = null;
+                if (!(e instanceof IllegalArgumentException)) {
+                    BaseExtender.printStackTrace(e);
+                }
+                status.setText("Cannot go to " + pointer + ": " + e.getMessage());
+            }
+        });
+    }
+
+    private void cancelJump() {
+        if (this.pendingJump != null) {
+            this.pendingJump.cancel();
+            this.pendingJump = null;
+        }
+    }
+
+    private void updateStatus() {
+        long limit = MAX_LOADED_KB * 1024L;
+        boolean more = this.pager.hasMore();
+        boolean atLimit = more && this.loadedLength >= limit;
+        this.moreButton.setEnabled(more && !atLimit);
+        String path = this.pager.getPointer().isEmpty() ? "" : " of " + this.pager.getPointer();
+        this.status.setText("Showing " + (this.loadedLength + 1023) / 1024 + " KB" + path
+                + (!more ? ", all of it" : atLimit ? ", go to a path to see more" : ", more to load"));
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.swing.SwingUtilities;
+
+import aura.Stats;
+import burp.BurpExtender;
+
+/**
+ * Runs decoding, parsing and pretty-printing for the editor tabs on a small
+ * bounded pool of background threads and hands the results back on the Swing
+ * event thread, so large messages don't freeze the Burp UI.
+ *
+ * Each job records how long it spent in each {@link Stage}. Totals are kept per
+ * stage, fed into {@link Stats} when it is enabled, and slow jobs are logged to
+ * the extension output.
+ */
+public class ParsePipeline {
+
+    public enum Stage {
+        DECODE(Stats.Metric.PIPELINE_DECODE),
+        PARSE(Stats.Metric.PIPELINE_PARSE),
+        RENDER(Stats.Metric.PIPELINE_RENDER),
+        BUILD_UI(Stats.Metric.PIPELINE_BUILD_UI);
+
+        private final Stats.Metric metric;
+
+        Stage(Stats.Metric metric) {
+            this.metric = metric;
+        }
+    }
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_CAPACITY = 32;
+    private static final long SLOW_JOB_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private static final ThreadPoolExecutor EXECUTOR = createExecutor();
+    private static final AtomicLongArray TOTAL_NANOS = new AtomicLongArray(Stage.values().length);
+    private static final AtomicLongArray STAGE_COUNTS = new AtomicLongArray(Stage.values().length);
+
+    /**
+     * Background part of a job. Runs off the event thread and must not touch Swing.
+     */
+    public interface Job<T> {
+        T run(Timings timings) throws Exception;
+    }
+
+    /**
+     * Event thread part of a job. Not called at all if the job was cancelled.
+     */
+    public interface Callback<T> {
+        void done(T result, Timings timings);
+
+        void failed(Exception e);
+    }
+
+    /**
+     * Handle on a submitted job.
+     */
+    public static class Ticket {
+        private volatile boolean cancelled = false;
+        private Future<?> future;
+
+        /**
+         * Cancel the job. Must be called on the event thread, after which the callback is never invoked.
+         */
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(true);
+                EXECUTOR.purge();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * Per-job stage timer. Each {@link #lap(Stage)} charges the time since the
+     * previous lap to the given stage.
+     */
+    public static class Timings {
+        private final String name;
+        private final long[] nanos = new long[Stage.values().length];
+        private long mark = System.nanoTime();
+
+        private Timings(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @throws CancellationException if the job was cancelled in the meantime
+         */
+        public void lap(Stage stage) {
+            long now = System.nanoTime();
+            nanos[stage.ordinal()] += now - mark;
+            mark = now;
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException(name);
+            }
+        }
+
+        public long getNanos(Stage stage) {
+            return nanos[stage.ordinal()];
+        }
+
+        /**
+         * Add this job's timings to the totals, and log it if it was slow.
+         */
+        public void finish() {
+            long total = 0;
+            for (Stage stage : Stage.values()) {
+                long stageNanos = nanos[stage.ordinal()];
+                if (stageNanos > 0) {
+                    TOTAL_NANOS.addAndGet(stage.ordinal(), stageNanos);
+                    STAGE_COUNTS.incrementAndGet(stage.ordinal());
+                    Stats.record(stage.metric, stageNanos, 0);
+                }
+                total += stageNanos;
+            }
+            if (total > SLOW_JOB_NANOS && BurpExtender.getCallbacks() != null) {
+                BurpExtender.getCallbacks().printOutput("Slow " + this);
+            }
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(name).append(':');
+            for (Stage stage : Stage.values()) {
+                sb.append(' ').append(stage).append('=')
+                        .append(TimeUnit.NANOSECONDS.toMillis(nanos[stage.ordinal()])).append("ms");
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * Submit a job. Must be called on the event thread.
+     *
+     * @param name label used in timing output
+     */
+    public static <T> Ticket submit(String name, final Job<T> job, final Callback<T> callback) {
+        final Ticket ticket = new Ticket();
+        final Timings timings = new Timings(name);
+        try {
+            ticket.future = EXECUTOR.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final T result = job.run(timings);
+                        deliver(ticket, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.done(result, timings);
+                            }
+                        });
+                    } catch (CancellationException e) {
+                        // superseded by a newer message, nobody is waiting for this
+                    } catch (final Exception e) {
+                        deliver(ticket, new Runnable() {
+                            @Override
+                            public void run() {
+                                callback.failed(e);
+                            }
+                        });
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            callback.failed(e);
+        }
+        return ticket;
+    }
+
+    /**
+     * @return average nanoseconds per job spent in the stage, or 0 if it never ran
+     */
+    public static long getAverageNanos(Stage stage) {
+        long count = STAGE_COUNTS.get(stage.ordinal());
+        return count == 0 ? 0 : TOTAL_NANOS.get(stage.ordinal()) / count;
+    }
+
+    private static void deliver(final Ticket ticket, final Runnable action) {
+        SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!ticket.isCancelled()) {
+                    action.run();
+                }
+            }
+        });
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(THREADS, THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "lightning-parse-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.io.IOException;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.ActionIndex;
+import aura.AuraDetector;
+import aura.AuraMessage;
+import aura.BoundedWorker;
+import aura.FormBodyCodec;
+import aura.ParseCache;
+import burp.BurpExtender;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+import burp.IInterceptedProxyMessage;
+import burp.IProxyListener;
+
+/**
+ * Feeds the Aura requests that go through the proxy into an {@link ActionIndex}.
+ *
+ * The proxy thread only does the byte-level Aura check and queues the request;
+ * decoding, parsing and indexing happen on the worker thread. When the worker
+ * falls behind, requests are dropped (and counted) rather than slowing the proxy.
+ *
+ * Messages are identified by a hash of the request, whether they come from
+ * live traffic or the proxy history, so neither indexes a request twice. The
+ * number shown for a message is its proxy history number: Burp's message
+ * reference for live traffic, and the position in the history once it has
+ * been indexed.
+ */
+public class ProxyIndexer implements IProxyListener {
+    private static final int QUEUE_CAPACITY = 1024;
+
+    private final ActionIndex index;
+    private final BoundedWorker worker;
+
+    public ProxyIndexer(ActionIndex index) {
+        this.index = index;
+        this.worker = new BoundedWorker("lightning-index", QUEUE_CAPACITY);
+    }
+
+    public ActionIndex getIndex() {
+        return this.index;
+    }
+
+    public BoundedWorker getWorker() {
+        return this.worker;
+    }
+
+    @Override
+    public void processProxyMessage(boolean messageIsRequest, IInterceptedProxyMessage message) {
+        if (!messageIsRequest) {
+            return;
+        }
+        final IHttpRequestResponse messageInfo = message.getMessageInfo();
+        final byte[] request = messageInfo.getRequest();
+        if (request == null || !AuraDetector.isAuraRequest(request, true)) {
+            return;
+        }
+        final int ref = message.getMessageReference();
+        final IHttpService service = messageInfo.getHttpService();
+        this.worker.offer(new Runnable() {
+            @Override
+            public void run() {
+                indexRequest(ParseCache.hash(request, 0, request.length), ref, service, request);
+            }
+        });
+    }
+
+    /**
+     * Index the Aura requests already in the proxy history that aren't indexed
+     * yet, numbered by their position in it.
+     */
+    public void indexHistory() {
+        this.worker.offer(new Runnable() {
+            @Override
+            public void run() {
+                IHttpRequestResponse[] history = BurpExtender.getCallbacks().getProxyHistory();
+                for (int i = 0; i < history.length && !Thread.currentThread().isInterrupted(); i++) {
+                    byte[] request = history[i].getRequest();
+                    if (request != null && AuraDetector.isAuraRequest(request, true)) {
+                        long key = ParseCache.hash(request, 0, request.length);
+                        if (!index.setMessageRef(key, i + 1)) {
+                            indexRequest(key, i + 1, history[i].getHttpService(), request);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private void indexRequest(long key, int ref, IHttpService service, byte[] request) {
+        if (this.index.contains(key)) {
+            return;
+        }
+        FormBodyCodec.AuraParams params = FormBodyCodec.scan(request);
+        int start = params.getValueStart(FormBodyCodec.MESSAGE);
+        if (start == -1) {
+            return;
+        }
+        try {
+            AuraMessage message = new AuraMessage(FormBodyCodec.decode(request, start, params.getValueEnd(FormBodyCodec.MESSAGE)));
+            this.index.add(key, ref, getUrl(service, request), message);
+        } catch (IOException e) {
+            // not a valid message, nothing to index
+        } catch (RuntimeException e) {
+            BaseExtender.printStackTrace(e);
+        }
+    }
+
+    /**
+     * @return the request URL without its query string, which makes repeated URLs poolable
+     */
+    private static String getUrl(IHttpService service, byte[] request) {
+        if (service == null) {
+            return null;
+        }
+        String url = Utils.getRequestUrl(service, request).toString();
+        int query = url.indexOf('?');
+        return query == -1 ? url : url.substring(0, query);
+    }
+}
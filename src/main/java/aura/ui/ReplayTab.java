@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JMenuItem;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JSplitPane;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.table.AbstractTableModel;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.ActionReplay;
+import aura.AuraDetector;
+import aura.FormBodyCodec;
+import burp.BurpExtender;
+import burp.IBurpExtenderCallbacks;
+import burp.IContextMenuFactory;
+import burp.IContextMenuInvocation;
+import burp.IHttpRequestResponse;
+import burp.IHttpService;
+import burp.IMessageEditor;
+import burp.IMessageEditorController;
+import burp.ITab;
+
+/**
+ * Suite tab and context menu item for replaying the actions of a boxcarred
+ * request one by one with {@link ActionReplay}, through Burp's HTTP stack.
+ * Only one replay runs at a time; starting another cancels the first.
+ */
+public class ReplayTab implements ITab, IContextMenuFactory {
+    private static final String THREADS_SETTING = "replayThreads";
+    private static final String RATE_SETTING = "replayRate";
+    private static final String[] COLUMNS = { "#", "Action", "Controller", "Method", "Status", "State",
+            "Latency (ms)", "Size", "Error" };
+
+    private final IBurpExtenderCallbacks callbacks;
+    private final ActionReplay replay;
+    private final JPanel panel = new JPanel(new BorderLayout());
+    private final JLabel status = new JLabel(" ");
+    private final ResultTableModel results = new ResultTableModel();
+    private final JTable table = new JTable(this.results);
+    private final IMessageEditor requestViewer;
+    private final IMessageEditor responseViewer;
+    private IHttpService service;
+    private ActionReplay.Run currentRun;
+    private ParsePipeline.Ticket pendingSplit;
+    private String target;
+
+    public ReplayTab() {
+        this.callbacks = BurpExtender.getCallbacks();
+        int threads = Utils.loadInt(THREADS_SETTING, ActionReplay.DEFAULT_THREADS);
+        int rate = Utils.loadInt(RATE_SETTING, ActionReplay.DEFAULT_RATE);
+        this.replay = new ActionReplay(threads, rate);
+
+        final JSpinner threadSpinner = new JSpinner(new SpinnerNumberModel(threads, 1, 128, 1));
+        threadSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                replay.setThreads((Integer) threadSpinner.getValue());
+                callbacks.saveExtensionSetting(THREADS_SETTING, threadSpinner.getValue().toString());
+            }
+        });
+        final JSpinner rateSpinner = new JSpinner(new SpinnerNumberModel(rate, 0, 10000, 10));
+        rateSpinner.setToolTipText("Most requests started per second, 0 for no limit");
+        rateSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                replay.setRate((Integer) rateSpinner.getValue());
+                callbacks.saveExtensionSetting(RATE_SETTING, rateSpinner.getValue().toString());
+            }
+        });
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                cancel();
+            }
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(new JLabel("Concurrent requests:"));
+        controls.add(threadSpinner);
+        controls.add(new JLabel("Max requests/s:"));
+        controls.add(rateSpinner);
+        controls.add(cancelButton);
+
+        IMessageEditorController controller = new IMessageEditorController() {
+            @Override
+            public IHttpService getHttpService() {
+                return service;
+            }
+
+            @Override
+            public byte[] getRequest() {
+                ActionReplay.Result result = getSelectedResult();
+                return result == null ? null : result.action.request;
+            }
+
+            @Override
+            public byte[] getResponse() {
+                ActionReplay.Result result = getSelectedResult();
+                return result == null ? null : result.response;
+            }
+        };
+        this.requestViewer = this.callbacks.createMessageEditor(controller, false);
+        this.responseViewer = this.callbacks.createMessageEditor(controller, false);
+        JTabbedPane viewers = new JTabbedPane();
+        viewers.addTab("Request", this.requestViewer.getComponent());
+        viewers.addTab("Response", this.responseViewer.getComponent());
+
+        this.table.setAutoCreateRowSorter(true);
+        this.table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        this.table.getColumnModel().getColumn(0).setMaxWidth(60);
+        this.table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    showSelected();
+                }
+            }
+        });
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(this.table), viewers);
+        split.setResizeWeight(0.5);
+        this.panel.add(controls, BorderLayout.PAGE_START);
+        this.panel.add(split, BorderLayout.CENTER);
+        this.panel.add(this.status, BorderLayout.PAGE_END);
+        this.callbacks.customizeUiComponent(this.panel);
+    }
+
+    @Override
+    public String getTabCaption() {
+        return "Aura Replay";
+    }
+
+    @Override
+    public Component getUiComponent() {
+        return this.panel;
+    }
+
+    public ActionReplay getReplay() {
+        return this.replay;
+    }
+
+    @Override
+    public List<JMenuItem> createMenuItems(IContextMenuInvocation invocation) {
+        IHttpRequestResponse[] messages = invocation.getSelectedMessages();
+        if (messages == null || messages.length != 1) {
+            return null;
+        }
+        final IHttpRequestResponse message = messages[0];
+        byte[] request = message.getRequest();
+        if (request == null || !AuraDetector.isAuraRequest(request, true)
+                || !AuraDetector.hasParameter(request, FormBodyCodec.MESSAGE)) {
+            return null;
+        }
+        JMenuItem item = new JMenuItem("Replay Aura actions one by one");
+        item.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                start(message.getHttpService(), message.getRequest());
+            }
+        });
+        List<JMenuItem> items = new ArrayList<JMenuItem>();
+        items.add(item);
+        return items;
+    }
+
+    /**
+     * Split the request in the background and replay its actions. Must be called on the event thread.
+     */
+    public void start(final IHttpService service, final byte[] request) {
+        cancel();
+        this.status.setText("Splitting request...");
+        this.pendingSplit = ParsePipeline.submit("Aura replay split", new ParsePipeline.Job<List<ActionReplay.Action>>() {
+            @Override
+            public List<ActionReplay.Action> run(ParsePipeline.Timings timings) throws Exception {
+                return ActionReplay.split(request);
+            }
+        }, new ParsePipeline.Callback<List<ActionReplay.Action>>() {
+            @Override
+            public void done(List<ActionReplay.Action> actions, ParsePipeline.Timings timings) {
+                pendingSplit = null;
+                send(service, actions);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                pendingSplit = null;
+                BaseExtender.printStackTrace(e);
+                status.setText("Could not split the request: " + e.getMessage());
+            }
+        });
+    }
+
+    private void send(final IHttpService service, List<ActionReplay.Action> actions) {
+        this.service = service;
+        this.target = service.getProtocol() + "://" + service.getHost() + ":" + service.getPort();
+        this.results.setActions(actions);
+        ActionReplay.Sender sender = new ActionReplay.Sender() {
+            @Override
+            public byte[] send(byte[] request) throws IOException {
+                IHttpRequestResponse sent = callbacks.makeHttpRequest(service, request);
+                return sent == null ? null : sent.getResponse();
+            }
+        };
+        this.currentRun = this.replay.replay(actions, sender, new ActionReplay.Listener() {
+            @Override
+            public void completed(final ActionReplay.Run run, final ActionReplay.Result result) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (run == currentRun) {
+                            results.setResult(result);
+                            updateStatus();
+                        }
+                    }
+                });
+            }
+
+            @Override
+            public void finished(final ActionReplay.Run run) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (run == currentRun) {
+                            updateStatus();
+                        }
+                    }
+                });
+            }
+        });
+        updateStatus();
+    }
+
+    private void cancel() {
+        if (this.pendingSplit != null) {
+            this.pendingSplit.cancel();
+            this.pendingSplit = null;
+        }
+        if (this.currentRun != null) {
+            this.currentRun.cancel();
+        }
+    }
+
+    private void updateStatus() {
+        ActionReplay.Run run = this.currentRun;
+        if (run == null) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        text.append(run.getCompleted()).append(" of ").append(run.actions.size()).append(" actions replayed to ")
+                .append(this.target);
+        if (run.getElapsedNanos() >= 0) {
+            text.append(" in ").append(TimeUnit.NANOSECONDS.toMillis(run.getElapsedNanos())).append(" ms, slowest ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(this.results.getSlowestNanos())).append(" ms");
+        } else if (run.isCancelled()) {
+            text.append(", cancelling");
+        }
+        this.status.setText(text.toString());
+    }
+
+    private ActionReplay.Result getSelectedResult() {
+        int row = this.table.getSelectedRow();
+        return row == -1 ? null : this.results.getResult(this.table.convertRowIndexToModel(row));
+    }
+
+    private void showSelected() {
+        ActionReplay.Result result = getSelectedResult();
+        this.requestViewer.setMessage(result == null ? new byte[0] : result.action.request, true);
+        this.responseViewer.setMessage(result == null || result.response == null ? new byte[0] : result.response, false);
+    }
+
+    /**
+     * One row per action, filled in as results arrive.
+     */
+    @SuppressWarnings("serial")
+    private static class ResultTableModel extends AbstractTableModel {
+        private List<ActionReplay.Action> actions = Collections.emptyList();
+        private ActionReplay.Result[] rows = new ActionReplay.Result[0];
+        private long slowestNanos = 0;
+
+        void setActions(List<ActionReplay.Action> actions) {
+            this.actions = actions;
+            this.rows = new ActionReplay.Result[actions.size()];
+            this.slowestNanos = 0;
+            fireTableDataChanged();
+        }
+
+        void setResult(ActionReplay.Result result) {
+            int row = result.action.index;
+            this.rows[row] = result;
+            this.slowestNanos = Math.max(this.slowestNanos, result.latencyNanos);
+            fireTableRowsUpdated(row, row);
+        }
+
+        ActionReplay.Result getResult(int row) {
+            return this.rows[row];
+        }
+
+        long getSlowestNanos() {
+            return this.slowestNanos;
+        }
+
+        @Override
+        public int getRowCount() {
+            return this.actions.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            switch (column) {
+            case 0:
+            case 4:
+            case 7:
+                return Integer.class;
+            case 6:
+                return Long.class;
+            default:
+                return String.class;
+            }
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ActionReplay.Action action = this.actions.get(row);
+            ActionReplay.Result result = this.rows[row];
+            switch (column) {
+            case 0:
+                return action.index + 1;
+            case 1:
+                return action.actionId;
+            case 2:
+                return action.descriptor == null ? null : action.descriptor.shortController;
+            case 3:
+                return action.descriptor == null ? null : action.descriptor.method;
+            case 4:
+                return result == null || result.statusCode == -1 ? null : result.statusCode;
+            case 5:
+                return result == null ? "pending" : result.state;
+            case 6:
+                return result == null || result.response == null ? null : TimeUnit.NANOSECONDS.toMillis(result.latencyNanos);
+            case 7:
+                return result == null || result.response == null ? null : result.getResponseBodyLength();
+            default:
+                return result == null ? null : result.error;
+            }
+        }
+    }
+}
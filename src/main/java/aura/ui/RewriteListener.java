@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.RewriteEngine;
+import burp.IBurpExtenderCallbacks;
+import burp.IHttpListener;
+import burp.IHttpRequestResponse;
+
+/**
+ * Applies the {@link RewriteEngine} rules to requests sent by the proxy and the scanner.
+ */
+public class RewriteListener implements IHttpListener {
+    private static final int TOOLS = IBurpExtenderCallbacks.TOOL_PROXY | IBurpExtenderCallbacks.TOOL_SCANNER;
+
+    private final RewriteEngine engine;
+    private volatile boolean enabled = false;
+
+    public RewriteListener(RewriteEngine engine) {
+        this.engine = engine;
+    }
+
+    public RewriteEngine getEngine() {
+        return this.engine;
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void processHttpMessage(int toolFlag, boolean messageIsRequest, IHttpRequestResponse messageInfo) {
+        if (!messageIsRequest || !this.enabled || (toolFlag & TOOLS) == 0 || this.engine.isEmpty()) {
+            return;
+        }
+        try {
+            byte[] rewritten = this.engine.apply(messageInfo.getRequest());
+            if (rewritten != null) {
+                messageInfo.setRequest(rewritten);
+            }
+        } catch (RuntimeException e) {
+            // never break the request because of a rule
+            BaseExtender.printStackTrace(e);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.table.AbstractTableModel;
+
+import aura.RewriteEngine;
+import burp.BurpExtender;
+import burp.IBurpExtenderCallbacks;
+import burp.ITab;
+
+/**
+ * Suite tab for editing the in-flight param rewrite rules and watching their hit counts.
+ * Rules and the enabled state are saved with the extension settings.
+ */
+public class RewriteTab implements ITab {
+    private static final String RULES_SETTING = "rewriteRules";
+    private static final String ENABLED_SETTING = "rewriteEnabled";
+    private static final String EXAMPLE = "# controller/method   JSON Pointer into params = value\n"
+            + "# *Controller/getRecord   /recordId = \"001000000000000AAA\"\n";
+
+    private final RewriteListener listener;
+    private final IBurpExtenderCallbacks callbacks;
+    private final JPanel panel = new JPanel(new BorderLayout());
+    private final JTextArea rulesArea = new JTextArea();
+    private final JCheckBox enabledBox = new JCheckBox("Rewrite proxy and scanner requests");
+    private final JLabel status = new JLabel(" ");
+    private final RuleTableModel ruleTable = new RuleTableModel();
+
+    public RewriteTab(RewriteListener listener) {
+        this.listener = listener;
+        this.callbacks = BurpExtender.getCallbacks();
+
+        String saved = this.callbacks.loadExtensionSetting(RULES_SETTING);
+        this.rulesArea.setText(saved == null ? EXAMPLE : saved);
+        this.rulesArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, this.rulesArea.getFont().getSize()));
+        applyRules(false);
+        boolean enabled = "true".equals(this.callbacks.loadExtensionSetting(ENABLED_SETTING));
+        this.enabledBox.setSelected(enabled);
+        this.listener.setEnabled(enabled);
+
+        this.enabledBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                RewriteTab.this.listener.setEnabled(enabledBox.isSelected());
+                callbacks.saveExtensionSetting(ENABLED_SETTING, Boolean.toString(enabledBox.isSelected()));
+            }
+        });
+        JButton applyButton = new JButton("Apply rules");
+        applyButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                applyRules(true);
+            }
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(this.enabledBox);
+        controls.add(applyButton);
+
+        JSplitPane split = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, new JScrollPane(this.rulesArea),
+                new JScrollPane(new JTable(this.ruleTable)));
+        split.setResizeWeight(0.6);
+
+        this.panel.add(controls, BorderLayout.PAGE_START);
+        this.panel.add(split, BorderLayout.CENTER);
+        this.panel.add(this.status, BorderLayout.PAGE_END);
+        this.callbacks.customizeUiComponent(this.panel);
+
+        Utils.refreshWhileShowing(1000, this.panel, new Runnable() {
+            @Override
+            public void run() {
+                ruleTable.fireTableRowsUpdated(0, Math.max(0, ruleTable.getRowCount() - 1));
+                updateStatus();
+            }
+        });
+    }
+
+    @Override
+    public String getTabCaption() {
+        return "Aura Rewrite";
+    }
+
+    @Override
+    public Component getUiComponent() {
+        return this.panel;
+    }
+
+    private void applyRules(boolean save) {
+        RewriteEngine engine = this.listener.getEngine();
+        try {
+            engine.setRules(this.rulesArea.getText());
+        } catch (IllegalArgumentException e) {
+            this.status.setText("Rules not applied. " + e.getMessage());
+            return;
+        }
+        if (save) {
+            this.callbacks.saveExtensionSetting(RULES_SETTING, this.rulesArea.getText());
+        }
+        this.ruleTable.setRules(engine.getRules());
+        updateStatus();
+    }
+
+    private void updateStatus() {
+        RewriteEngine engine = this.listener.getEngine();
+        this.status.setText(engine.getRules().size() + " rules, " + engine.getMessages() + " Aura requests seen, "
+                + engine.getRewritten() + " rewritten, " + engine.getAverageNanos() / 1000 + " us added per request");
+    }
+
+    @SuppressWarnings("serial")
+    private static class RuleTableModel extends AbstractTableModel {
+        private List<RewriteEngine.Rule> rules = Collections.emptyList();
+
+        void setRules(List<RewriteEngine.Rule> rules) {
+            this.rules = rules;
+            fireTableDataChanged();
+        }
+
+        @Override
+        public int getRowCount() {
+            return rules.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return 2;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return column == 0 ? "Rule" : "Hits";
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Long.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            RewriteEngine.Rule rule = rules.get(row);
+            return column == 0 ? rule.text : rule.getHits();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.BorderFactory;
+import javax.swing.BoxLayout;
+import javax.swing.JButton;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSpinner;
+import javax.swing.JTextField;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import aura.ActionLog;
+import aura.JsonPager;
+import aura.JsonPrinter;
+import burp.BurpExtender;
+import burp.IBurpExtenderCallbacks;
+import burp.ITab;
+
+/**
+ * Suite tab with the extension's settings: the {@link JsonPrinter} and
+ * {@link JsonPager} settings that decide how the panels render JSON, and the
+ * {@link ActionLog} store. They are applied when the tab is created and saved
+ * with the extension settings.
+ */
+public class SettingsTab implements ITab {
+    private static final String INDENT_SETTING = "prettyIndent";
+    private static final String MAX_MB_SETTING = "prettyMaxMb";
+    private static final String PAGE_ABOVE_SETTING = "pageAboveKb";
+    private static final String PAGE_KB_SETTING = "pageKb";
+    private static final String STORE_SETTING = "actionLogStore";
+
+    private final IBurpExtenderCallbacks callbacks;
+    private final JPanel panel = new JPanel(new BorderLayout());
+    private final JPanel sections = new JPanel();
+
+    public SettingsTab() {
+        this.callbacks = BurpExtender.getCallbacks();
+        this.sections.setLayout(new BoxLayout(this.sections, BoxLayout.PAGE_AXIS));
+
+        JsonPrinter.setIndent(Utils.loadInt(INDENT_SETTING, JsonPrinter.DEFAULT_INDENT));
+        JsonPrinter.setMaxMb(Utils.loadInt(MAX_MB_SETTING, JsonPrinter.DEFAULT_MAX_MB));
+        final JSpinner indentSpinner = new JSpinner(new SpinnerNumberModel(JsonPrinter.getIndent(), 0, 8, 1));
+        indentSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                JsonPrinter.setIndent((Integer) indentSpinner.getValue());
+                callbacks.saveExtensionSetting(INDENT_SETTING, indentSpinner.getValue().toString());
+            }
+        });
+        final JSpinner maxMbSpinner = new JSpinner(new SpinnerNumberModel(JsonPrinter.getMaxMb(), 1, 1024, 1));
+        maxMbSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                JsonPrinter.setMaxMb((Integer) maxMbSpinner.getValue());
+                callbacks.saveExtensionSetting(MAX_MB_SETTING, maxMbSpinner.getValue().toString());
+            }
+        });
+
+        JsonPager.setThresholdKb(Utils.loadInt(PAGE_ABOVE_SETTING, JsonPager.DEFAULT_THRESHOLD_KB));
+        JsonPager.setPageKb(Utils.loadInt(PAGE_KB_SETTING, JsonPager.DEFAULT_PAGE_KB));
+        final JSpinner pageAboveSpinner = new JSpinner(new SpinnerNumberModel(JsonPager.getThresholdKb(), 16, 64 * 1024, 256));
+        pageAboveSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                JsonPager.setThresholdKb((Integer) pageAboveSpinner.getValue());
+                callbacks.saveExtensionSetting(PAGE_ABOVE_SETTING, pageAboveSpinner.getValue().toString());
+            }
+        });
+        final JSpinner pageKbSpinner = new JSpinner(new SpinnerNumberModel(JsonPager.getPageKb(), 16, 16 * 1024, 64));
+        pageKbSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                JsonPager.setPageKb((Integer) pageKbSpinner.getValue());
+                callbacks.saveExtensionSetting(PAGE_KB_SETTING, pageKbSpinner.getValue().toString());
+            }
+        });
+
+        JPanel rendering = addSection("JSON rendering");
+        rendering.add(new JLabel("Pretty print indent:"));
+        rendering.add(indentSpinner);
+        rendering.add(new JLabel("Text limit (MB):"));
+        rendering.add(maxMbSpinner);
+        rendering.add(new JLabel("Page text above (KB):"));
+        rendering.add(pageAboveSpinner);
+        rendering.add(new JLabel("Page size (KB):"));
+        rendering.add(pageKbSpinner);
+
+        // the extender API can't tell projects apart, so the user names the store
+        final JTextField storeField = new JTextField(getActionLogStore(), 20);
+        storeField.setToolTipText("Projects whose action history must not mix need different stores");
+        final JLabel storeStatus = new JLabel(" ");
+        ActionListener saveStore = new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                callbacks.saveExtensionSetting(STORE_SETTING, storeField.getText().trim());
+                storeStatus.setText("Used from " + ActionLog.getDefaultDirectory(getActionLogStore())
+                        + " when the extension is next loaded");
+            }
+        };
+        storeField.addActionListener(saveStore);
+        JButton storeButton = new JButton("Save");
+        storeButton.addActionListener(saveStore);
+        JPanel log = addSection("Action log");
+        log.add(new JLabel("Store:"));
+        log.add(storeField);
+        log.add(storeButton);
+        log.add(storeStatus);
+
+        this.panel.add(this.sections, BorderLayout.PAGE_START);
+        this.callbacks.customizeUiComponent(this.panel);
+    }
+
+    /**
+     * @return the name of the {@link ActionLog} store picked in the tab
+     */
+    public static String getActionLogStore() {
+        String saved = BurpExtender.getCallbacks().loadExtensionSetting(STORE_SETTING);
+        return saved == null || saved.isEmpty() ? ActionLog.DEFAULT_STORE : saved;
+    }
+
+    @Override
+    public String getTabCaption() {
+        return "Lightning Settings";
+    }
+
+    @Override
+    public Component getUiComponent() {
+        return this.panel;
+    }
+
+    private JPanel addSection(String title) {
+        JPanel section = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        section.setBorder(BorderFactory.createTitledBorder(title));
+        this.sections.add(section);
+        return section;
+    }
+}
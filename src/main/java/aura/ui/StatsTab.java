@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) 2020, salesforce.com, inc.
+ * All rights reserved.
+ * SPDX-License-Identifier: BSD-3-Clause
+ * For full license text, see the LICENSE file in the repo root or https://opensource.org/licenses/BSD-3-Clause
+ */
+package aura.ui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.table.AbstractTableModel;
+
+import com.codemagi.burp.BaseExtender;
+
+import aura.ParseCache;
+import aura.Stats;
+import burp.BurpExtender;
+import burp.IBurpExtenderCallbacks;
+import burp.ITab;
+
+/**
+ * Suite tab showing the {@link Stats} of each instrumented stage, with CSV
+ * export. Whether stats are collected is saved with the extension settings.
+ */
+public class StatsTab implements ITab {
+    private static final String ENABLED_SETTING = "statsEnabled";
+    private static final String[] COLUMNS = { "Stage", "Count", "p50 (us)", "p99 (us)", "Max (us)", "Total (ms)",
+            "Bytes", "Allocated/op" };
+
+    private final IBurpExtenderCallbacks callbacks;
+    private final JPanel panel = new JPanel(new BorderLayout());
+    private final JCheckBox enabledBox = new JCheckBox("Collect stats");
+    private final JLabel status = new JLabel(" ");
+    private final StatsTableModel table = new StatsTableModel();
+
+    public StatsTab() {
+        this.callbacks = BurpExtender.getCallbacks();
+
+        boolean enabled = "true".equals(this.callbacks.loadExtensionSetting(ENABLED_SETTING));
+        Stats.setEnabled(enabled);
+        this.enabledBox.setSelected(enabled);
+        this.enabledBox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Stats.setEnabled(enabledBox.isSelected());
+                callbacks.saveExtensionSetting(ENABLED_SETTING, Boolean.toString(enabledBox.isSelected()));
+            }
+        });
+        JButton resetButton = new JButton("Reset");
+        resetButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                Stats.reset();
+                refresh();
+            }
+        });
+        JButton exportButton = new JButton("Export CSV...");
+        exportButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportCsv();
+            }
+        });
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.add(this.enabledBox);
+        controls.add(resetButton);
+        controls.add(exportButton);
+
+        JTable statsTable = new JTable(this.table);
+        statsTable.getColumnModel().getColumn(0).setPreferredWidth(260);
+
+        this.panel.add(controls, BorderLayout.PAGE_START);
+        this.panel.add(new JScrollPane(statsTable), BorderLayout.CENTER);
+        this.panel.add(this.status, BorderLayout.PAGE_END);
+        this.callbacks.customizeUiComponent(this.panel);
+
+        Utils.refreshWhileShowing(1000, this.panel, new Runnable() {
+            @Override
+            public void run() {
+                refresh();
+            }
+        });
+    }
+
+    @Override
+    public String getTabCaption() {
+        return "Lightning Stats";
+    }
+
+    @Override
+    public Component getUiComponent() {
+        return this.panel;
+    }
+
+    private void refresh() {
+        this.table.refresh();
+        ParseCache cache = ParseCache.getInstance();
+        this.status.setText("Parse cache: " + cache.size() + " entries, " + cache.getRetainedBytes() / 1024 + " KB, "
+                + cache.getHits() + " hits, " + cache.getMisses() + " misses"
+                + (Stats.isAllocationSupported() ? "" : " | allocation estimates not available on this JVM"));
+    }
+
+    private void exportCsv() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File("lightning-stats.csv"));
+        if (chooser.showSaveDialog(this.panel) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(chooser.getSelectedFile());
+            out.write(Stats.toCsv().getBytes(StandardCharsets.UTF_8));
+            this.status.setText("Exported to " + chooser.getSelectedFile());
+        } catch (IOException e) {
+            BaseExtender.printStackTrace(e);
+            this.status.setText("Export failed: " + e.getMessage());
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    BaseExtender.printStackTrace(e);
+                }
+            }
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static class StatsTableModel extends AbstractTableModel {
+        private final Stats.Snapshot[] rows = new Stats.Snapshot[Stats.Metric.values().length];
+
+        StatsTableModel() {
+            refresh();
+        }
+
+        void refresh() {
+            for (Stats.Metric metric : Stats.Metric.values()) {
+                rows[metric.ordinal()] = Stats.snapshot(metric);
+            }
+            fireTableRowsUpdated(0, rows.length - 1);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.length;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return column == 0 ? String.class : Long.class;
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            Stats.Snapshot s = rows[row];
+            switch (column) {
+            case 0:
+                return s.metric.label;
+            case 1:
+                return s.count;
+            case 2:
+                return s.p50Nanos / 1000;
+            case 3:
+                return s.p99Nanos / 1000;
+            case 4:
+                return s.maxNanos / 1000;
+            case 5:
+                return s.totalNanos / 1000000;
+            case 6:
+                return s.bytes;
+            default:
+                return s.count == 0 || s.allocatedBytes < 0 ? null : s.allocatedBytes / s.count;
+            }
+        }
+    }
+}
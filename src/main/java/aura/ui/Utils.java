@@ -6,14 +6,22 @@
  */
 package aura.ui;
 
+import aura.FormBodyCodec;
+import aura.Stats;
 import burp.BurpExtender;
 import burp.IHttpService;
 import burp.IRequestInfo;
+import burp.ITextEditor;
 
-import java.io.UnsupportedEncodingException;
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.net.URL;
-import java.net.URLDecoder;
-import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.Timer;
 
 /**
  * Static utility methods 
@@ -21,6 +29,7 @@ import java.net.URLEncoder;
  * @author adetlefsen
  */
 public class Utils {
+    private static final List<Timer> refreshTimers = new ArrayList<Timer>();
 
     public static URL getRequestUrl(IHttpService service, byte[] content) {
         IRequestInfo request = BurpExtender.getHelpers().analyzeRequest(service, content);
@@ -28,18 +37,63 @@ public class Utils {
     }
 
     public static String urlDecode(String input) {
-        try {
-            return URLDecoder.decode(input, "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            throw new AssertionError("UTF-8 not supported", ex);
-        }
+        byte[] encoded = input.getBytes(StandardCharsets.UTF_8);
+        return new String(FormBodyCodec.decode(encoded, 0, encoded.length), StandardCharsets.UTF_8);
     }
 
     public static String urlEncode(String input) {
+        return new String(FormBodyCodec.encode(input.getBytes(StandardCharsets.UTF_8)), StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * ITextEditor.setText, timed: for large texts it is often the slowest step on the EDT.
+     */
+    public static void setText(ITextEditor editor, byte[] text) {
+        Stats.Timer timer = Stats.start(Stats.Metric.TEXT_EDITOR_SET_TEXT);
+        editor.setText(text);
+        Stats.stop(timer, text.length);
+    }
+
+    /**
+     * @return the saved integer extension setting, or the default if there is none
+     */
+    public static int loadInt(String setting, int defaultValue) {
+        String saved = BurpExtender.getCallbacks().loadExtensionSetting(setting);
         try {
-            return URLEncoder.encode(input, "UTF-8");
-        } catch (UnsupportedEncodingException ex) {
-            throw new AssertionError("UTF-8 not supported", ex);
+            return saved == null ? defaultValue : Integer.parseInt(saved);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Run refresh on the EDT every delay ms while the component is showing,
+     * until {@link #stopRefreshing()}.
+     */
+    public static void refreshWhileShowing(int delay, final Component component, final Runnable refresh) {
+        Timer timer = new Timer(delay, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (component.isShowing()) {
+                    refresh.run();
+                }
+            }
+        });
+        synchronized (refreshTimers) {
+            refreshTimers.add(timer);
+        }
+        timer.start();
+    }
+
+    /**
+     * Stop every refresh timer, when the extension is unloaded.
+     */
+    public static void stopRefreshing() {
+        synchronized (refreshTimers) {
+            for (Timer timer : refreshTimers) {
+                timer.stop();
+            }
+            refreshTimers.clear();
         }
     }
     
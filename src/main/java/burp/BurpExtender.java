@@ -6,8 +6,27 @@
  */
 package burp;
 
+import java.io.IOException;
+
+import aura.ActionCatalog;
+import aura.ActionCorrelation;
+import aura.ActionIndex;
+import aura.ActionLog;
+import aura.RewriteEngine;
+import aura.ui.ActionIndexTab;
+import aura.ui.AuraDiffMenu;
+import aura.ui.AuraInsertionPointProvider;
 import aura.ui.AuraJSONTabFactory;
 import aura.ui.AuraTabFactory;
+import aura.ui.CatalogExtractor;
+import aura.ui.CorrelationListener;
+import aura.ui.ProxyIndexer;
+import aura.ui.ReplayTab;
+import aura.ui.RewriteListener;
+import aura.ui.RewriteTab;
+import aura.ui.SettingsTab;
+import aura.ui.StatsTab;
+import aura.ui.Utils;
 import com.codemagi.burp.BaseExtender;
 
 public class BurpExtender extends BaseExtender {
@@ -24,5 +43,49 @@ public class BurpExtender extends BaseExtender {
 
 		AuraJSONTabFactory auraContextFactory = new AuraJSONTabFactory("aura.context", "Aura Context");
 		callbacks.registerMessageEditorTabFactory(auraContextFactory);
+
+		final ProxyIndexer indexer = new ProxyIndexer(new ActionIndex());
+		callbacks.registerProxyListener(indexer);
+		callbacks.addSuiteTab(new ActionIndexTab(indexer));
+
+		final CatalogExtractor extractor = new CatalogExtractor(ActionCatalog.getInstance());
+		callbacks.registerProxyListener(extractor);
+
+		RewriteListener rewriter = new RewriteListener(new RewriteEngine());
+		callbacks.registerHttpListener(rewriter);
+		callbacks.addSuiteTab(new RewriteTab(rewriter));
+
+		callbacks.registerScannerInsertionPointProvider(new AuraInsertionPointProvider());
+
+		ActionLog actionLog = null;
+		try {
+			actionLog = new ActionLog(ActionLog.getDefaultDirectory(SettingsTab.getActionLogStore()));
+		} catch (IOException e) {
+			// keep going without persistence, e.g. a read-only home directory or
+			// another Burp instance using the same store
+			printStackTrace(e);
+		}
+		final CorrelationListener correlator = new CorrelationListener(ActionCorrelation.getInstance(), actionLog);
+		correlator.load();
+		callbacks.registerHttpListener(correlator);
+
+		final ReplayTab replayTab = new ReplayTab();
+		callbacks.addSuiteTab(replayTab);
+		callbacks.registerContextMenuFactory(replayTab);
+		callbacks.registerContextMenuFactory(new AuraDiffMenu());
+
+		callbacks.addSuiteTab(new StatsTab());
+		callbacks.addSuiteTab(new SettingsTab());
+
+		callbacks.registerExtensionStateListener(new IExtensionStateListener() {
+			@Override
+			public void extensionUnloaded() {
+				indexer.getWorker().shutdown();
+				extractor.getWorker().shutdown();
+				correlator.shutdown();
+				replayTab.getReplay().shutdown();
+				Utils.stopRefreshing();
+			}
+		});
 	}
 }